@@ -0,0 +1,11 @@
+#!/bin/sh
+# Runs the benchmarks and writes the results to results/<commit>.json, so runs of different commits can be
+# compared. Extra arguments go to JMH, e.g. a benchmark name pattern or -prof gc.
+set -e
+cd "$(dirname "$0")"
+commit=$(git rev-parse --short HEAD)
+if ! git diff --quiet HEAD -- ../src; then
+    commit="$commit-dirty"
+fi
+mkdir -p results
+java -jar target/benchmarks.jar -rf json -rff "results/$commit.json" "$@"
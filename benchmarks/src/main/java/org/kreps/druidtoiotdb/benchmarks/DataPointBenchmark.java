@@ -0,0 +1,62 @@
+package org.kreps.druidtoiotdb.benchmarks;
+
+import org.kreps.druidtoiotdb.model.DataPoint;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-point costs paid in the decode, build and write stages: constructing a {@link DataPoint} from a
+ * record, and its device path and timestamp, which are computed on every call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataPointBenchmark {
+    private static final int RECORDS = 1024;
+
+    private List<Map<String, String>> records;
+    private DataPoint[] points;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        records = Payloads.records(RECORDS, 64);
+        points = Payloads.points(RECORDS, 64).toArray(new DataPoint[0]);
+    }
+
+    // Cycle through different records so the JIT cannot fold a constant input
+    private int nextIndex() {
+        next = (next + 1) & (RECORDS - 1);
+        return next;
+    }
+
+    @Benchmark
+    public DataPoint construct() {
+        return new DataPoint(records.get(nextIndex()));
+    }
+
+    @Benchmark
+    public String timeseriesPath() {
+        return points[nextIndex()].getTimeseriesPath();
+    }
+
+    @Benchmark
+    public long timestamp() {
+        return points[nextIndex()].getTimestamp();
+    }
+}
@@ -0,0 +1,66 @@
+package org.kreps.druidtoiotdb.benchmarks;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing a Druid response body into records, as {@code DataFetcher.executeHttpRequest} does. The score is
+ * the time per response; divide by {@code records} for the cost per record.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecodeBenchmark {
+    private static final TypeReference<List<Map<String, String>>> RECORDS_TYPE =
+            new TypeReference<List<Map<String, String>>>() {
+            };
+
+    // Points in one response: a 100 second read_size at one point per second, ten times that, a dense burst
+    @Param({"100", "1000", "50000"})
+    public int records;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private String body;
+    private byte[] bodyBytes;
+
+    @Setup
+    public void setUp() {
+        body = Payloads.json(Payloads.records(records, 1));
+        bodyBytes = body.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The connector reads the entity into a String first.
+     */
+    @Benchmark
+    public List<Map<String, String>> decodeString() throws Exception {
+        return objectMapper.readValue(body, RECORDS_TYPE);
+    }
+
+    /**
+     * Parsing straight from the response bytes, for comparison.
+     */
+    @Benchmark
+    public List<Map<String, String>> decodeBytes() throws Exception {
+        return objectMapper.readValue(bodyBytes, RECORDS_TYPE);
+    }
+}
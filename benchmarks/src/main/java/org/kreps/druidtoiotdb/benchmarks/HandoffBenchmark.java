@@ -0,0 +1,120 @@
+package org.kreps.druidtoiotdb.benchmarks;
+
+import org.kreps.druidtoiotdb.pipeline.StageBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handoff throughput of a {@link StageBuffer} between producer and consumer threads, the way stages use
+ * it: producers put until done and close the buffer, consumers poll until it is drained. Each invocation
+ * moves {@value #ITEMS} items, so the score is items per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandoffBenchmark {
+    static final int ITEMS = 100_000;
+    private static final Object ITEM = new Object();
+    // Shorter than the stages' poll timeout, so noticing the drained buffer does not dominate the score
+    private static final long POLL_TIMEOUT_MS = 1;
+
+    // Fetchers putting into the buffer
+    @Param({"1", "4", "16"})
+    public int producers;
+
+    // Workers of the next stage polling it
+    @Param({"1", "4"})
+    public int consumers;
+
+    // stage_buffer_size default, and a queue_size sized buffer
+    @Param({"64", "10000"})
+    public int capacity;
+
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(producers + consumers, r -> {
+            Thread thread = new Thread(r, "Handoff-Benchmark");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ITEMS)
+    public long handoff() throws Exception {
+        StageBuffer<Object> buffer = new StageBuffer<>("benchmark", capacity);
+        CountDownLatch producersDone = new CountDownLatch(producers);
+        int perProducer = ITEMS / producers;
+        int remainder = ITEMS % producers;
+        for (int p = 0; p < producers; p++) {
+            int items = perProducer + (p < remainder ? 1 : 0);
+            executor.execute(() -> {
+                try {
+                    for (int i = 0; i < items; i++) {
+                        buffer.put(ITEM);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    producersDone.countDown();
+                }
+            });
+        }
+
+        List<Future<Long>> received = new ArrayList<>(consumers);
+        for (int c = 0; c < consumers; c++) {
+            received.add(executor.submit(() -> {
+                long count = 0;
+                while (true) {
+                    Object item = buffer.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    if (item != null) {
+                        count++;
+                    } else if (buffer.isDrained()) {
+                        return count;
+                    }
+                }
+            }));
+        }
+
+        producersDone.await();
+        buffer.close();
+        long total = 0;
+        for (Future<Long> future : received) {
+            total += future.get();
+        }
+        if (total != ITEMS) {
+            throw new IllegalStateException("Received " + total + " of " + ITEMS + " items");
+        }
+        return total;
+    }
+}
@@ -0,0 +1,72 @@
+package org.kreps.druidtoiotdb.benchmarks;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.kreps.druidtoiotdb.model.DataPoint;
+
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Druid records shaped like the responses of the {@code current.do} API, generated from a fixed seed so every
+ * run and every commit measures the same data.
+ */
+final class Payloads {
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    private static final String[] PLANT_CODES = {"P1", "P2", "P3", "P4"};
+    private static final String[] SENSOR_TYPES = {"AI", "DI", "AO"};
+    private static final long SEED = 42;
+
+    private Payloads() {
+    }
+
+    /**
+     * Records spread round-robin over {@code devices} tags, one second apart per tag.
+     */
+    static List<Map<String, String>> records(int count, int devices) {
+        Random random = new Random(SEED);
+        List<Map<String, String>> records = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int device = i % devices;
+            String time = START.plusSeconds(i / devices).format(DATE_FORMAT);
+            Map<String, String> record = new LinkedHashMap<>();
+            record.put("PlantCode", PLANT_CODES[device % PLANT_CODES.length]);
+            // Padded like the tags getTimeseriesPath trims
+            record.put("org_tag", tag(device) + "  ");
+            record.put("OriTime", time);
+            record.put("ColTime", time);
+            record.put("Qual", random.nextInt(10) == 0 ? "0" : "192");
+            record.put("std_tag", "STD-" + device);
+            record.put("SensorType", SENSOR_TYPES[device % SENSOR_TYPES.length]);
+            record.put("Val", String.format("%.4f", random.nextGaussian() * 100));
+            records.add(record);
+        }
+        return records;
+    }
+
+    static String json(List<Map<String, String>> records) {
+        try {
+            return new ObjectMapper().writeValueAsString(records);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static List<DataPoint> points(int count, int devices) {
+        List<DataPoint> points = new ArrayList<>(count);
+        for (Map<String, String> record : records(count, devices)) {
+            points.add(new DataPoint(record));
+        }
+        return points;
+    }
+
+    static String tag(int device) {
+        return String.format("%02dAB CD EF%05d", device % 100, device);
+    }
+}
@@ -0,0 +1,53 @@
+package org.kreps.druidtoiotdb.benchmarks;
+
+import org.kreps.druidtoiotdb.model.DataPoint;
+import org.kreps.druidtoiotdb.writer.TabletBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The build stage on one validated batch: grouping the points by device and creating a tablet per device,
+ * through {@link TabletBuilder#process}. The score is the time per batch.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TabletBuildBenchmark {
+    // Points per batch, i.e. write_size
+    @Param({"500", "5000", "50000"})
+    public int batchSize;
+
+    // Devices the batch is spread over: one tag, a partition of a few tags, many sparse tags
+    @Param({"1", "50", "1000"})
+    public int devices;
+
+    private TabletBuilder builder;
+    private List<DataPoint> batch;
+
+    @Setup
+    public void setUp() {
+        builder = new TabletBuilder(0);
+        batch = Payloads.points(batchSize, devices);
+    }
+
+    @Benchmark
+    public void build(Blackhole blackhole) throws InterruptedException {
+        builder.process(batch, blackhole::consume);
+    }
+}
@@ -0,0 +1,18 @@
+#!/bin/sh
+# Runs the load test over generated datasets of growing tag count and time range, one JVM per run, and
+# collects one row per run in scale/results.csv. TAGS, DAYS and HEAP override the matrix and -Xmx; extra
+# arguments go to every LoadTest run, e.g. --druid-error-rate=0.
+set -e
+cd "$(dirname "$0")/.."
+jar=loadtest/target/loadtest.jar
+results=loadtest/scale/results.csv
+for tags in ${TAGS:-1000 10000 50000}; do
+    for days in ${DAYS:-1 7}; do
+        dir="loadtest/scale/${tags}x${days}d"
+        java -cp "$jar" org.kreps.druidtoiotdb.loadtest.GenerateDataset \
+            --out="$dir" --tags="$tags" --days="$days"
+        java -Xmx"${HEAP:-4g}" -jar "$jar" --config="$dir/config.json" --dataset="$dir/dataset.json" \
+            --results-file="$results" "$@" || true
+    done
+done
+column -s, -t "$results"
@@ -0,0 +1,125 @@
+package org.kreps.druidtoiotdb.loadtest;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Parameters of a synthetic dataset, written by {@link GenerateDataset} to {@code dataset.json}. Together
+ * with the tag list they determine every point, so the mock serves the same data on every run.
+ */
+final class DatasetSpec {
+    @JsonProperty("seed")
+    private long seed = 42;
+
+    @JsonProperty("plant_codes")
+    private int plantCodes = 8;
+
+    // Density of the densest tag; OriTime has second resolution, so at most one point per second
+    @JsonProperty("max_points_per_minute")
+    private double maxPointsPerMinute = 60;
+
+    // Density floor for the long tail of the Zipf distribution
+    @JsonProperty("min_points_per_hour")
+    private double minPointsPerHour = 1;
+
+    // The tag of density rank r has max_points_per_minute / r^zipf_exponent points per minute
+    @JsonProperty("zipf_exponent")
+    private double zipfExponent = 0.8;
+
+    // Fraction of tag-hours without data
+    @JsonProperty("gap_rate")
+    private double gapRate = 0.02;
+
+    // Fraction of tag-hours with a point every second
+    @JsonProperty("burst_rate")
+    private double burstRate = 0.002;
+
+    static DatasetSpec load(String path) throws IOException {
+        DatasetSpec spec = new ObjectMapper().readValue(new File(path), DatasetSpec.class);
+        spec.validate();
+        return spec;
+    }
+
+    void save(File file) throws IOException {
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, this);
+    }
+
+    void validate() {
+        if (plantCodes <= 0) {
+            throw new IllegalArgumentException("'plant_codes' must be greater than 0");
+        }
+        if (maxPointsPerMinute <= 0 || maxPointsPerMinute > 60) {
+            throw new IllegalArgumentException("'max_points_per_minute' must be greater than 0 and at most 60");
+        }
+        if (minPointsPerHour <= 0 || minPointsPerHour > maxPointsPerMinute * 60) {
+            throw new IllegalArgumentException(
+                    "'min_points_per_hour' must be greater than 0 and at most 60 * max_points_per_minute");
+        }
+        if (zipfExponent < 0) {
+            throw new IllegalArgumentException("'zipf_exponent' must be at least 0");
+        }
+        if (gapRate < 0 || burstRate < 0 || gapRate + burstRate > 1) {
+            throw new IllegalArgumentException(
+                    "'gap_rate' and 'burst_rate' must be at least 0 and add up to at most 1");
+        }
+    }
+
+    long getSeed() {
+        return seed;
+    }
+
+    void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    int getPlantCodes() {
+        return plantCodes;
+    }
+
+    void setPlantCodes(int plantCodes) {
+        this.plantCodes = plantCodes;
+    }
+
+    double getMaxPointsPerMinute() {
+        return maxPointsPerMinute;
+    }
+
+    void setMaxPointsPerMinute(double maxPointsPerMinute) {
+        this.maxPointsPerMinute = maxPointsPerMinute;
+    }
+
+    double getMinPointsPerHour() {
+        return minPointsPerHour;
+    }
+
+    void setMinPointsPerHour(double minPointsPerHour) {
+        this.minPointsPerHour = minPointsPerHour;
+    }
+
+    double getZipfExponent() {
+        return zipfExponent;
+    }
+
+    void setZipfExponent(double zipfExponent) {
+        this.zipfExponent = zipfExponent;
+    }
+
+    double getGapRate() {
+        return gapRate;
+    }
+
+    void setGapRate(double gapRate) {
+        this.gapRate = gapRate;
+    }
+
+    double getBurstRate() {
+        return burstRate;
+    }
+
+    void setBurstRate(double burstRate) {
+        this.burstRate = burstRate;
+    }
+}
@@ -0,0 +1,201 @@
+package org.kreps.druidtoiotdb.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.kreps.druidtoiotdb.worker.TagDistributor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates a synthetic dataset for a scaling run into {@code --out}:
+ * <ul>
+ *     <li>{@code tags.csv}: the tag list, in the format of {@code tagList.csv};</li>
+ *     <li>{@code dataset.json}: the {@link DatasetSpec} the mock serves with {@code --dataset};</li>
+ *     <li>{@code config.json}: {@code --base-config} with the tag list, the time range and a report
+ *     directory of this dataset;</li>
+ *     <li>{@code tags_manifest.csv}: plant code, step and expected point count of every tag.</li>
+ * </ul>
+ * The summary shows the skew of the dataset and how unevenly the fetchers' tag partitions will be loaded.
+ */
+public final class GenerateDataset {
+    private static final Logger logger = LoggerFactory.getLogger(GenerateDataset.class);
+    private static final int TAGS_PER_LINE = 10;
+    private static final long LETTER_COMBINATIONS = 308_915_776L;
+    private static final long LETTER_STRIDE = 7919;
+
+    private GenerateDataset() {
+    }
+
+    public static void main(String[] args) {
+        try {
+            generate(new LoadTestOptions(LoadTestOptions.GENERATOR, args));
+        } catch (Exception e) {
+            logger.error("Dataset generation failed: {}", e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void generate(LoadTestOptions options) throws IOException {
+        if (options.getOtherArgs().length > 0) {
+            throw new IllegalArgumentException("Unknown arguments: " + Arrays.toString(options.getOtherArgs()));
+        }
+        if (options.getString("out").isEmpty()) {
+            throw new IllegalArgumentException("--out is required");
+        }
+        int tagCount = (int) options.getLong("tags");
+        if (tagCount <= 0) {
+            throw new IllegalArgumentException("--tags must be greater than 0");
+        }
+        LocalDateTime start = LocalDateTime.parse(options.getString("start"));
+        LocalDateTime end = start.plusDays(options.getLong("days"));
+        if (!end.isAfter(start)) {
+            throw new IllegalArgumentException("--days must be greater than 0");
+        }
+
+        DatasetSpec spec = new DatasetSpec();
+        spec.setSeed(options.getLong("seed"));
+        spec.setPlantCodes((int) options.getLong("plant-codes"));
+        spec.setMaxPointsPerMinute(options.getDouble("max-points-per-minute"));
+        spec.setMinPointsPerHour(options.getDouble("min-points-per-hour"));
+        spec.setZipfExponent(options.getDouble("zipf-exponent"));
+        spec.setGapRate(options.getRate("gap-rate"));
+        spec.setBurstRate(options.getRate("burst-rate"));
+        spec.validate();
+
+        File out = new File(options.getString("out"));
+        if (!out.isDirectory() && !out.mkdirs()) {
+            throw new IOException("Cannot create " + out);
+        }
+        List<String> tags = tagNames(tagCount, spec.getSeed());
+        SyntheticDataset dataset = SyntheticDataset.generated(spec, tags);
+
+        File tagsFile = new File(out, "tags.csv");
+        writeTags(tagsFile, tags);
+        spec.save(new File(out, "dataset.json"));
+        ObjectNode config = writeConfig(new File(options.getString("base-config")), new File(out, "config.json"),
+                tagsFile, new File(out, "reports"), start, end);
+        long[] expected = writeManifest(new File(out, "tags_manifest.csv"), dataset, tags, start, end);
+
+        int fetchers = config.path("processing").path("threads").path("reader_pool_size").asInt(1);
+        summarize(out, tags, dataset, expected, fetchers, start, end);
+    }
+
+    /**
+     * Unique tags shaped like the production ones, e.g. {@code 47DH MW XQ01}: the index is encoded in the
+     * first eight characters, the last two digits are random.
+     */
+    private static List<String> tagNames(int count, long seed) {
+        Random random = new Random(seed);
+        List<String> tags = new ArrayList<>(count);
+        char[] letters = new char[6];
+        for (int i = 0; i < count; i++) {
+            // Multiplying by a prime coprime to 26^6 permutes the letter combinations, so they vary from the start
+            long rest = (i / 100L + 1) * LETTER_STRIDE % LETTER_COMBINATIONS;
+            for (int l = letters.length - 1; l >= 0; l--) {
+                letters[l] = (char) ('A' + rest % 26);
+                rest /= 26;
+            }
+            tags.add(String.format("%02d%c%c %c%c %c%c%02d", i % 100, letters[0], letters[1], letters[2],
+                    letters[3], letters[4], letters[5], random.nextInt(100)));
+        }
+        return tags;
+    }
+
+    private static void writeTags(File file, List<String> tags) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (int i = 0; i < tags.size(); i++) {
+                writer.write(tags.get(i));
+                writer.write(',');
+                if ((i + 1) % TAGS_PER_LINE == 0 || i == tags.size() - 1) {
+                    writer.newLine();
+                }
+            }
+        }
+    }
+
+    private static ObjectNode writeConfig(File baseConfig, File file, File tagsFile, File reportDir,
+                                          LocalDateTime start, LocalDateTime end) throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        ObjectNode config = (ObjectNode) mapper.readTree(baseConfig);
+        ObjectNode source = config.with("source");
+        source.put("tags_file", tagsFile.getPath());
+        source.with("time_range").put("start", start.toString()).put("end", end.toString());
+        config.with("processing").put("report_dir", reportDir.getPath());
+        mapper.writerWithDefaultPrettyPrinter().writeValue(file, config);
+        return config;
+    }
+
+    /**
+     * Writes the manifest and returns the expected point count of every tag, in list order.
+     */
+    private static long[] writeManifest(File file, SyntheticDataset dataset, List<String> tags,
+                                        LocalDateTime start, LocalDateTime end) throws IOException {
+        long[] expected = new long[tags.size()];
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+            writer.println("tag,plant_code,step_seconds,expected_points");
+            for (int i = 0; i < tags.size(); i++) {
+                SyntheticDataset.TagSeries series = dataset.series(tags.get(i));
+                expected[i] = series.count(start, end);
+                writer.printf("%s,%s,%d,%d%n", tags.get(i), series.getPlantCode(), series.getStepSeconds(),
+                        expected[i]);
+            }
+        }
+        return expected;
+    }
+
+    private static void summarize(File out, List<String> tags, SyntheticDataset dataset, long[] expected,
+                                  int fetchers, LocalDateTime start, LocalDateTime end) {
+        long total = 0;
+        long densest = 0;
+        Set<String> plantCodes = new HashSet<>();
+        Map<String, Long> expectedByTag = new HashMap<>(tags.size() * 2);
+        for (int i = 0; i < tags.size(); i++) {
+            expectedByTag.put(tags.get(i), expected[i]);
+            total += expected[i];
+            densest = Math.max(densest, expected[i]);
+            plantCodes.add(dataset.series(tags.get(i)).getPlantCode());
+        }
+        long[] sorted = expected.clone();
+        Arrays.sort(sorted);
+        long topShare = 0;
+        int topCount = Math.max(1, tags.size() / 100);
+        for (int i = 0; i < topCount; i++) {
+            topShare += sorted[sorted.length - 1 - i];
+        }
+
+        // Points per fetcher under the connector's own tag distribution
+        List<List<String>> partitions = TagDistributor.distributeTags(tags, fetchers);
+        long busiest = 0;
+        for (List<String> partition : partitions) {
+            long points = 0;
+            for (String tag : partition) {
+                points += expectedByTag.get(tag);
+            }
+            busiest = Math.max(busiest, points);
+        }
+        double mean = (double) total / partitions.size();
+
+        logger.info("Dataset written to {}: {} tags over {} plant codes from {} to {}, {} points expected; "
+                        + "densest tag {} points, top 1% of tags {}% of the points; busiest of {} fetchers "
+                        + "{}% above the mean",
+                out, tags.size(), plantCodes.size(), start, end, total, densest,
+                total == 0 ? 0 : Math.round(100.0 * topShare / total), partitions.size(),
+                mean == 0 ? 0 : Math.round(100 * (busiest - mean) / mean));
+    }
+}
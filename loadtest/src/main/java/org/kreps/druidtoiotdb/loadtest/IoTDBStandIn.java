@@ -0,0 +1,133 @@
+package org.kreps.druidtoiotdb.loadtest;
+
+import org.apache.iotdb.rpc.IoTDBConnectionException;
+import org.apache.iotdb.tsfile.write.record.Tablet;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The in-process IoTDB server the session pools of the load test share. It records what is inserted and
+ * injects the configured faults: a sampled latency per insert, inserts that time out, and an outage window
+ * during which every call is refused.
+ */
+final class IoTDBStandIn {
+    private final LatencyModel latency;
+    private final double timeoutRate;
+    private final long timeoutMillis;
+    private final long outageAtNanos;
+    private final long outageNanos;
+
+    private final LongAdder tablets = new LongAdder();
+    private final LongAdder points = new LongAdder();
+    private final LongAdder injectedTimeouts = new LongAdder();
+    private final LongAdder refusedCalls = new LongAdder();
+    private final Set<String> devices = ConcurrentHashMap.newKeySet();
+    private final Set<String> templates = ConcurrentHashMap.newKeySet();
+    private final AtomicLong firstInsertAfterOutageNanos = new AtomicLong();
+    private volatile long startedNanos;
+
+    IoTDBStandIn(LoadTestOptions options) {
+        this.latency = new LatencyModel(options.getLong("insert-latency-ms"), options.getLong("insert-latency-p99-ms"));
+        this.timeoutRate = options.getRate("insert-timeout-rate");
+        this.timeoutMillis = options.getLong("insert-timeout-ms");
+        this.outageAtNanos = TimeUnit.SECONDS.toNanos(options.getLong("outage-at-seconds"));
+        this.outageNanos = TimeUnit.SECONDS.toNanos(options.getLong("outage-seconds"));
+    }
+
+    /**
+     * Starts the clock the outage window is measured on.
+     */
+    void start() {
+        startedNanos = System.nanoTime();
+    }
+
+    void insert(Tablet tablet) throws IoTDBConnectionException {
+        checkReachable();
+        try {
+            latency.pause();
+            if (timeoutRate > 0 && ThreadLocalRandom.current().nextDouble() < timeoutRate) {
+                Thread.sleep(timeoutMillis);
+                injectedTimeouts.increment();
+                throw new IoTDBConnectionException("java.net.SocketTimeoutException: Read timed out (injected)");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IoTDBConnectionException("Interrupted while inserting");
+        }
+        tablets.increment();
+        points.add(tablet.rowSize);
+        devices.add(tablet.deviceId);
+        if (hasOutage() && elapsedNanos() >= outageAtNanos + outageNanos) {
+            firstInsertAfterOutageNanos.compareAndSet(0, System.nanoTime());
+        }
+    }
+
+    /**
+     * Refuses the call while the outage window is open.
+     */
+    void checkReachable() throws IoTDBConnectionException {
+        if (isDown()) {
+            refusedCalls.increment();
+            throw new IoTDBConnectionException("Connection refused (injected outage)");
+        }
+    }
+
+    boolean isDown() {
+        long elapsed = elapsedNanos();
+        return hasOutage() && elapsed >= outageAtNanos && elapsed < outageAtNanos + outageNanos;
+    }
+
+    Set<String> getTemplates() {
+        return templates;
+    }
+
+    void addDevices(Iterable<String> paths) {
+        for (String path : paths) {
+            devices.add(path);
+        }
+    }
+
+    long getTablets() {
+        return tablets.sum();
+    }
+
+    long getPoints() {
+        return points.sum();
+    }
+
+    int getDevices() {
+        return devices.size();
+    }
+
+    long getInjectedTimeouts() {
+        return injectedTimeouts.sum();
+    }
+
+    long getRefusedCalls() {
+        return refusedCalls.sum();
+    }
+
+    boolean hasOutage() {
+        return outageNanos > 0;
+    }
+
+    /**
+     * Milliseconds from the end of the outage to the first insert that succeeded after it, or -1 if none has.
+     */
+    long getRecoveryMillis() {
+        long first = firstInsertAfterOutageNanos.get();
+        if (first == 0) {
+            return -1;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(first - (startedNanos + outageAtNanos + outageNanos));
+    }
+
+    private long elapsedNanos() {
+        return System.nanoTime() - startedNanos;
+    }
+}
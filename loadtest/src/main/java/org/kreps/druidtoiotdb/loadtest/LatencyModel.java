@@ -0,0 +1,48 @@
+package org.kreps.druidtoiotdb.loadtest;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Log-normal latency given by its median and 99th percentile, the usual shape of service response times:
+ * most calls near the median and a long tail.
+ */
+final class LatencyModel {
+    // Standard normal quantile at 0.99
+    private static final double Z_99 = 2.3263;
+
+    private final double medianMillis;
+    private final double sigma;
+
+    LatencyModel(long medianMillis, long p99Millis) {
+        if (medianMillis < 0 || p99Millis < medianMillis) {
+            throw new IllegalArgumentException("Latency needs 0 <= median <= p99, got median=" + medianMillis
+                    + " p99=" + p99Millis);
+        }
+        this.medianMillis = medianMillis;
+        this.sigma = medianMillis == 0 || p99Millis == medianMillis
+                ? 0
+                : Math.log((double) p99Millis / medianMillis) / Z_99;
+    }
+
+    long sampleMillis() {
+        if (medianMillis == 0) {
+            return 0;
+        }
+        return Math.round(medianMillis * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian()));
+    }
+
+    /**
+     * Sleeps for one sampled latency.
+     */
+    void pause() throws InterruptedException {
+        long millis = sampleMillis();
+        if (millis > 0) {
+            Thread.sleep(millis);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("median=%.0fms p99=%.0fms", medianMillis, medianMillis * Math.exp(sigma * Z_99));
+    }
+}
@@ -0,0 +1,218 @@
+package org.kreps.druidtoiotdb.loadtest;
+
+import org.kreps.druidtoiotdb.Main;
+import org.kreps.druidtoiotdb.config.AppConfig;
+import org.kreps.druidtoiotdb.config.ConfigLoader;
+import org.kreps.druidtoiotdb.config.DestinationConfig;
+import org.kreps.druidtoiotdb.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the connector end to end against a {@link MockDruidServer} on the configured {@code api_url} and an
+ * {@link IoTDBStandIn} in place of the IoTDB nodes, samples throughput, queue depths and heap while it runs,
+ * and prints a summary when the transfer ends. With {@code --results-file} the summary is also appended to
+ * a CSV file, one row per run, which {@code scale.sh} collects. With a sink other than IoTDB the stand-in
+ * receives nothing and the points written are those the connector counted.
+ */
+public final class LoadTest {
+    private static final Logger logger = LoggerFactory.getLogger(LoadTest.class);
+    private static final long MB = 1024 * 1024;
+
+    private final LoadTestOptions options;
+    private final MockDruidServer druid;
+    private final IoTDBStandIn standIn;
+    private final AppConfig config;
+    private final long expectedPoints;
+
+    private long startedNanos;
+    private long lastSampleNanos;
+    private long lastSamplePoints;
+    private double peakPointsPerSecond;
+    private long peakHeapBytes;
+    private long peakRetainedBytes;
+
+    private LoadTest(LoadTestOptions options) throws Exception {
+        this.options = options;
+        this.config = ConfigLoader.loadConfig(options.getString("config"));
+        if (!options.getString("sink").isEmpty()) {
+            config.getDestinationConfig().setSink(options.getString("sink"));
+            config.validate();
+        }
+        SyntheticDataset dataset = options.getString("dataset").isEmpty()
+                ? SyntheticDataset.uniform(options.getLong("points-per-minute"))
+                : SyntheticDataset.generated(DatasetSpec.load(options.getString("dataset")), config.getTags());
+        this.expectedPoints = dataset.expectedPoints(config.getTags(),
+                config.getSourceConfig().getTimeRange().getStartTime(),
+                config.getSourceConfig().getTimeRange().getEndTime());
+        this.druid = new MockDruidServer(config.getSourceConfig().getDruidSettings().getApiUrl(), dataset, options);
+        this.standIn = new IoTDBStandIn(options);
+    }
+
+    public static void main(String[] args) {
+        int exitCode;
+        try {
+            LoadTestOptions options = new LoadTestOptions(LoadTestOptions.LOAD_TEST, args);
+            logger.info("Load test options: {}", options);
+            exitCode = new LoadTest(options).run();
+        } catch (Exception e) {
+            logger.error("Load test failed: ", e);
+            exitCode = 1;
+        }
+        System.exit(exitCode);
+    }
+
+    private int run() throws Exception {
+        druid.start();
+        ScheduledExecutorService sampler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "LoadTest-Sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long sampleSeconds = Math.max(1, options.getLong("sample-seconds"));
+
+        Exception failure = null;
+        try {
+            standIn.start();
+            startedNanos = System.nanoTime();
+            lastSampleNanos = startedNanos;
+            Main connector = new Main(config, new LoadTestClients(standIn));
+            sampler.scheduleAtFixedRate(this::sample, sampleSeconds, sampleSeconds, TimeUnit.SECONDS);
+            connector.start(options.getOtherArgs());
+        } catch (Exception e) {
+            failure = e;
+        } finally {
+            sampler.shutdownNow();
+            druid.stop();
+        }
+        summarize(failure);
+        return failure == null ? 0 : 1;
+    }
+
+    private long pointsWritten() {
+        return isIoTDBSink() ? standIn.getPoints()
+                : MetricsRegistry.get().getCount(MetricsRegistry.Counter.POINTS_WRITTEN);
+    }
+
+    private boolean isIoTDBSink() {
+        return DestinationConfig.SINK_IOTDB.equals(config.getDestinationConfig().getSink());
+    }
+
+    private synchronized void sample() {
+        long now = System.nanoTime();
+        long points = pointsWritten();
+        double seconds = (now - lastSampleNanos) / 1e9;
+        double pointsPerSecond = seconds > 0 ? (points - lastSamplePoints) / seconds : 0;
+        peakPointsPerSecond = Math.max(peakPointsPerSecond, pointsPerSecond);
+        lastSampleNanos = now;
+        lastSamplePoints = points;
+
+        Runtime runtime = Runtime.getRuntime();
+        long heapBytes = runtime.totalMemory() - runtime.freeMemory();
+        peakHeapBytes = Math.max(peakHeapBytes, heapBytes);
+        peakRetainedBytes = Math.max(peakRetainedBytes, retainedHeapBytes());
+
+        StringBuilder queues = new StringBuilder();
+        for (Map.Entry<String, Long> gauge : MetricsRegistry.get().getGauges().entrySet()) {
+            if (gauge.getKey().startsWith("queue.") && !gauge.getKey().endsWith(".blocked_ms")) {
+                queues.append(' ').append(gauge.getKey().substring("queue.".length()))
+                        .append('=').append(gauge.getValue());
+            }
+        }
+        logger.info("Load: t={}s written={} rate={}/s fetched={} druid_requests={} injected_503={} "
+                        + "injected_timeouts={} refused={}{} heap={}MB queues:{}",
+                TimeUnit.NANOSECONDS.toSeconds(now - startedNanos), points, Math.round(pointsPerSecond),
+                MetricsRegistry.get().getCount(MetricsRegistry.Counter.POINTS_FETCHED), druid.getRequests(),
+                druid.getInjectedErrors(), standIn.getInjectedTimeouts(), standIn.getRefusedCalls(),
+                standIn.isDown() ? " OUTAGE" : "", heapBytes / MB, queues);
+    }
+
+    /**
+     * Heap still in use after the last collection of each pool: what the connector retains, without the
+     * garbage that happens to be uncollected at the time of a sample.
+     */
+    private static long retainedHeapBytes() {
+        long bytes = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage afterGc = pool.getType() == MemoryType.HEAP ? pool.getCollectionUsage() : null;
+            if (afterGc != null) {
+                bytes += afterGc.getUsed();
+            }
+        }
+        return bytes;
+    }
+
+    private synchronized void summarize(Exception failure) {
+        sample();
+        double seconds = Math.max(System.nanoTime() - startedNanos, 1) / 1e9;
+        long points = pointsWritten();
+        StringBuilder sb = new StringBuilder("Load test summary\n");
+        sb.append(String.format("  outcome:              %s%n",
+                failure == null ? "completed" : "aborted: " + failure.getMessage()));
+        sb.append(String.format("  duration:             %.1f s%n", seconds));
+        sb.append(String.format("  tags:                 %d%n", config.getTags().size()));
+        if (isIoTDBSink()) {
+            sb.append(String.format("  points written:       %d of %d expected, in %d tablets to %d devices%n",
+                    points, expectedPoints, standIn.getTablets(), standIn.getDevices()));
+        } else {
+            sb.append(String.format("  points written:       %d of %d expected, to the %s sink%n",
+                    points, expectedPoints, config.getDestinationConfig().getSink()));
+        }
+        sb.append(String.format("  sustained rate:       %.0f points/s%n", points / seconds));
+        sb.append(String.format("  peak sampled rate:    %.0f points/s%n", peakPointsPerSecond));
+        sb.append(String.format("  peak sampled heap:    %d MB, %d MB retained after GC%n",
+                peakHeapBytes / MB, peakRetainedBytes / MB));
+        sb.append(String.format("  druid:                %d requests, %d points, %d MB served, %d injected 503s%n",
+                druid.getRequests(), druid.getPointsServed(), druid.getBytesServed() / MB,
+                druid.getInjectedErrors()));
+        sb.append(String.format("  iotdb:                %d injected timeouts, %d calls refused%n",
+                standIn.getInjectedTimeouts(), standIn.getRefusedCalls()));
+        sb.append(String.format("  retries:              %d%n",
+                MetricsRegistry.get().getCount(MetricsRegistry.Counter.RETRIES)));
+        if (standIn.hasOutage()) {
+            long recovery = standIn.getRecoveryMillis();
+            sb.append(String.format("  outage recovery:      %s%n",
+                    recovery < 0 ? "no insert succeeded after the outage" : recovery + " ms to the first insert"));
+        }
+        logger.info(sb.toString().trim());
+
+        String resultsFile = options.getString("results-file");
+        if (!resultsFile.isEmpty()) {
+            try {
+                appendResults(new File(resultsFile), failure, seconds, points);
+            } catch (IOException e) {
+                logger.error("Failed to append results to {}: {}", resultsFile, e.getMessage());
+            }
+        }
+    }
+
+    private void appendResults(File file, Exception failure, double seconds, long points) throws IOException {
+        boolean header = !file.exists() || file.length() == 0;
+        Duration range = Duration.between(config.getSourceConfig().getTimeRange().getStartTime(),
+                config.getSourceConfig().getTimeRange().getEndTime());
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file, true))) {
+            if (header) {
+                writer.println("tags,range_hours,points_expected,points_written,seconds,points_per_second,"
+                        + "peak_heap_mb,retained_heap_mb,max_heap_mb,outcome,sink");
+            }
+            writer.printf("%d,%d,%d,%d,%.1f,%.0f,%d,%d,%d,%s,%s%n", config.getTags().size(), range.toHours(),
+                    expectedPoints, points, seconds, points / seconds, peakHeapBytes / MB, peakRetainedBytes / MB,
+                    Runtime.getRuntime().maxMemory() / MB, failure == null ? "completed" : "aborted",
+                    config.getDestinationConfig().getSink());
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package org.kreps.druidtoiotdb.loadtest;
+
+import org.apache.iotdb.session.pool.SessionPool;
+import org.kreps.druidtoiotdb.config.IoTDBSettings;
+import org.kreps.druidtoiotdb.iotdb.IoTDBClientFactory;
+
+/**
+ * Clients of the connector's IoTDB nodes that talk to the in-process {@link IoTDBStandIn}. The probe fails
+ * during an injected outage, so an ejected node is re-admitted only once the outage is over.
+ */
+final class LoadTestClients implements IoTDBClientFactory {
+    private final IoTDBStandIn standIn;
+
+    LoadTestClients(IoTDBStandIn standIn) {
+        this.standIn = standIn;
+    }
+
+    @Override
+    public SessionPool createSessionPool(String host, int port, IoTDBSettings settings) {
+        return new RecordingSessionPool(host, port, settings, standIn);
+    }
+
+    @Override
+    public NodeProbe createProbe(String host, int port, IoTDBSettings settings) {
+        return new NodeProbe() {
+            @Override
+            public void check() throws Exception {
+                standIn.checkReachable();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+}
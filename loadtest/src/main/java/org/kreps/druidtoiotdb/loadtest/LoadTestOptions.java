@@ -0,0 +1,111 @@
+package org.kreps.druidtoiotdb.loadtest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Command line options of the load test tools, given as {@code --name=value}. Options a tool does not know,
+ * such as {@code --tail} for {@link LoadTest}, are collected for it to pass on or reject.
+ */
+final class LoadTestOptions {
+    static final Map<String, String> LOAD_TEST = new LinkedHashMap<>();
+    static final Map<String, String> GENERATOR = new LinkedHashMap<>();
+
+    static {
+        LOAD_TEST.put("config", "loadtest/config.json");
+        // Overrides destination.sink, e.g. null for the pipeline-only ceiling
+        LOAD_TEST.put("sink", "");
+        // Mock Druid: a generated dataset, or every tag at points-per-minute
+        LOAD_TEST.put("dataset", "");
+        LOAD_TEST.put("points-per-minute", "60");
+        LOAD_TEST.put("druid-latency-ms", "20");
+        LOAD_TEST.put("druid-latency-p99-ms", "200");
+        LOAD_TEST.put("druid-error-rate", "0.01");
+        LOAD_TEST.put("padding-bytes", "0");
+        // IoTDB stand-in
+        LOAD_TEST.put("insert-latency-ms", "5");
+        LOAD_TEST.put("insert-latency-p99-ms", "50");
+        LOAD_TEST.put("insert-timeout-rate", "0");
+        LOAD_TEST.put("insert-timeout-ms", "1000");
+        LOAD_TEST.put("outage-at-seconds", "0");
+        LOAD_TEST.put("outage-seconds", "0");
+        // Harness
+        LOAD_TEST.put("sample-seconds", "5");
+        LOAD_TEST.put("results-file", "");
+
+        GENERATOR.put("out", "");
+        GENERATOR.put("base-config", "loadtest/config.json");
+        GENERATOR.put("tags", "1000");
+        GENERATOR.put("start", "2024-01-01T00:00:00");
+        GENERATOR.put("days", "1");
+        GENERATOR.put("seed", "42");
+        GENERATOR.put("plant-codes", "8");
+        GENERATOR.put("max-points-per-minute", "60");
+        GENERATOR.put("min-points-per-hour", "1");
+        GENERATOR.put("zipf-exponent", "0.8");
+        GENERATOR.put("gap-rate", "0.02");
+        GENERATOR.put("burst-rate", "0.002");
+    }
+
+    private final Map<String, String> values;
+    private final List<String> otherArgs = new ArrayList<>();
+
+    LoadTestOptions(Map<String, String> defaults, String[] args) {
+        this.values = new LinkedHashMap<>(defaults);
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            String name = arg.startsWith("--") && equals > 0 ? arg.substring(2, equals) : null;
+            if (name != null && defaults.containsKey(name)) {
+                values.put(name, arg.substring(equals + 1));
+            } else {
+                otherArgs.add(arg);
+            }
+        }
+    }
+
+    String getString(String name) {
+        return values.get(name);
+    }
+
+    long getLong(String name) {
+        try {
+            return Long.parseLong(values.get(name));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--" + name + " must be an integer, got " + values.get(name));
+        }
+    }
+
+    double getRate(String name) {
+        double rate = getDouble(name);
+        if (rate < 0 || rate > 1) {
+            throw new IllegalArgumentException("--" + name + " must be between 0 and 1, got " + rate);
+        }
+        return rate;
+    }
+
+    double getDouble(String name) {
+        try {
+            return Double.parseDouble(values.get(name));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("--" + name + " must be a number, got " + values.get(name));
+        }
+    }
+
+    /**
+     * The arguments that are not options of this tool.
+     */
+    String[] getOtherArgs() {
+        return otherArgs.toArray(new String[0]);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            sb.append(sb.length() == 0 ? "" : " ").append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return sb.toString();
+    }
+}
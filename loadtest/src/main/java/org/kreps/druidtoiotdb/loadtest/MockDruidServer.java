@@ -0,0 +1,201 @@
+package org.kreps.druidtoiotdb.loadtest;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Emulates the Druid {@code current.do} API on the host, port and path of the configured {@code api_url},
+ * serving the points of a {@link SyntheticDataset}. Each request waits for a sampled latency and fails with
+ * a 503 at the configured rate.
+ */
+final class MockDruidServer {
+    private static final Logger logger = LoggerFactory.getLogger(MockDruidServer.class);
+    private static final DateTimeFormatter API_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+
+    private final URI apiUrl;
+    private final SyntheticDataset dataset;
+    private final LatencyModel latency;
+    private final double errorRate;
+    private final String padding;
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder injectedErrors = new LongAdder();
+    private final LongAdder pointsServed = new LongAdder();
+    private final LongAdder bytesServed = new LongAdder();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    MockDruidServer(String apiUrl, SyntheticDataset dataset, LoadTestOptions options) {
+        this.apiUrl = URI.create(apiUrl);
+        this.dataset = dataset;
+        this.latency = new LatencyModel(options.getLong("druid-latency-ms"), options.getLong("druid-latency-p99-ms"));
+        this.errorRate = options.getRate("druid-error-rate");
+        char[] pad = new char[(int) options.getLong("padding-bytes")];
+        Arrays.fill(pad, 'x');
+        this.padding = new String(pad);
+    }
+
+    void start() throws IOException {
+        String host = apiUrl.getHost() != null ? apiUrl.getHost() : "127.0.0.1";
+        int port = apiUrl.getPort() > 0 ? apiUrl.getPort() : 80;
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "Mock-Druid");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server = HttpServer.create(new InetSocketAddress(host, port), 1024);
+        server.createContext(apiUrl.getPath(), this::handle);
+        server.setExecutor(executor);
+        server.start();
+        logger.info("Mock Druid listening on {} with latency {}, 503 rate {}, {} padding bytes per record",
+                apiUrl, latency, errorRate, padding.length());
+    }
+
+    void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    long getRequests() {
+        return requests.sum();
+    }
+
+    long getInjectedErrors() {
+        return injectedErrors.sum();
+    }
+
+    long getPointsServed() {
+        return pointsServed.sum();
+    }
+
+    long getBytesServed() {
+        return bytesServed.sum();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            requests.increment();
+            latency.pause();
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                injectedErrors.increment();
+                respond(exchange, 503, "Service Unavailable".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+
+            Map<String, String> params = parseQuery(exchange.getRequestURI().getRawQuery());
+            LocalDateTime start;
+            LocalDateTime end;
+            try {
+                start = LocalDateTime.parse(params.get("stime"), API_DATE_FORMAT);
+                end = LocalDateTime.parse(params.get("etime"), API_DATE_FORMAT);
+            } catch (DateTimeParseException | NullPointerException e) {
+                respond(exchange, 400, ("Invalid stime/etime: " + e.getMessage()).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            String tags = params.get("tags");
+            if (tags == null || tags.isEmpty()) {
+                respond(exchange, 400, "Missing tags".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            respond(exchange, 200, records(tags.split(","), start, end));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            exchange.close();
+        } catch (IOException | RuntimeException e) {
+            logger.debug("Mock Druid request failed: {}", e.getMessage());
+            exchange.close();
+        }
+    }
+
+    /**
+     * The points of each tag in [start, end), shaped like the records of the real API.
+     */
+    private byte[] records(String[] tags, LocalDateTime start, LocalDateTime end) throws IOException {
+        long[] points = new long[1];
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (JsonGenerator json = jsonFactory.createGenerator(body)) {
+            json.writeStartArray();
+            for (String tag : tags) {
+                SyntheticDataset.TagSeries series = dataset.series(tag);
+                if (series == null) {
+                    continue;
+                }
+                series.forEachPoint(start, end, second -> {
+                    String time = LocalDateTime.ofEpochSecond(second, 0, ZoneOffset.UTC).format(API_DATE_FORMAT);
+                    json.writeStartObject();
+                    json.writeStringField("PlantCode", series.getPlantCode());
+                    json.writeStringField("org_tag", tag);
+                    json.writeStringField("OriTime", time);
+                    json.writeStringField("ColTime", time);
+                    json.writeStringField("Qual", "192");
+                    json.writeStringField("std_tag", "STD-" + tag);
+                    json.writeStringField("SensorType", series.getSensorType());
+                    json.writeStringField("Val", series.value(second));
+                    if (!padding.isEmpty()) {
+                        json.writeStringField("Remark", padding);
+                    }
+                    json.writeEndObject();
+                    points[0]++;
+                });
+            }
+            json.writeEndArray();
+        }
+        pointsServed.add(points[0]);
+        return body.toByteArray();
+    }
+
+    private void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type",
+                status == 200 ? "application/json;charset=UTF-8" : "text/plain;charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+        bytesServed.add(body.length);
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) throws UnsupportedEncodingException {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) {
+            return params;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            if (equals > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, equals), "UTF-8"),
+                        URLDecoder.decode(pair.substring(equals + 1), "UTF-8"));
+            }
+        }
+        return params;
+    }
+}
@@ -0,0 +1,73 @@
+package org.kreps.druidtoiotdb.loadtest;
+
+import org.apache.iotdb.isession.pool.SessionDataSetWrapper;
+import org.apache.iotdb.isession.template.Template;
+import org.apache.iotdb.rpc.IoTDBConnectionException;
+import org.apache.iotdb.rpc.StatementExecutionException;
+import org.apache.iotdb.session.pool.SessionPool;
+import org.apache.iotdb.tsfile.write.record.Tablet;
+import org.kreps.druidtoiotdb.config.IoTDBSettings;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A session pool that never connects: it overrides every call the connector makes and serves it from the
+ * shared {@link IoTDBStandIn}. Queries are not supported, so the device registry warm-up and
+ * {@code resume_from_destination} see an empty database.
+ */
+final class RecordingSessionPool extends SessionPool {
+    private final IoTDBStandIn standIn;
+
+    RecordingSessionPool(String host, int port, IoTDBSettings settings, IoTDBStandIn standIn) {
+        // This constructor only stores the settings; sessions would be opened on first use
+        super(host, port, settings.getUsername(), settings.getPassword(), settings.getSessionPoolSize());
+        this.standIn = standIn;
+    }
+
+    @Override
+    public void insertTablet(Tablet tablet) throws IoTDBConnectionException, StatementExecutionException {
+        standIn.insert(tablet);
+    }
+
+    @Override
+    public List<String> showAllTemplates() throws StatementExecutionException, IoTDBConnectionException {
+        standIn.checkReachable();
+        return new ArrayList<>(standIn.getTemplates());
+    }
+
+    @Override
+    public void createSchemaTemplate(Template template) throws IoTDBConnectionException, StatementExecutionException {
+        standIn.checkReachable();
+        standIn.getTemplates().add(template.getName());
+    }
+
+    @Override
+    public void createDatabase(String database) throws IoTDBConnectionException, StatementExecutionException {
+        standIn.checkReachable();
+    }
+
+    @Override
+    public void setSchemaTemplate(String templateName, String prefixPath)
+            throws StatementExecutionException, IoTDBConnectionException {
+        standIn.checkReachable();
+    }
+
+    @Override
+    public void createTimeseriesUsingSchemaTemplate(List<String> devicePathList)
+            throws StatementExecutionException, IoTDBConnectionException {
+        standIn.checkReachable();
+        standIn.addDevices(devicePathList);
+    }
+
+    @Override
+    public SessionDataSetWrapper executeQueryStatement(String sql)
+            throws IoTDBConnectionException, StatementExecutionException {
+        standIn.checkReachable();
+        throw new StatementExecutionException("Queries are not supported by the load test stand-in: " + sql);
+    }
+
+    @Override
+    public void closeResultSet(SessionDataSetWrapper wrapper) {
+    }
+}
@@ -0,0 +1,196 @@
+package org.kreps.druidtoiotdb.loadtest;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The points the mock Druid API serves, computed rather than stored so a dataset of tens of thousands of
+ * tags over months costs no memory or disk. Each tag has a fixed step: its points lie on the epoch seconds
+ * divisible by the step, so adjacent intervals never return the same point. Whole hours of a tag are gaps
+ * without data or bursts with a point every second, decided by a hash of the seed, the tag and the hour.
+ */
+final class SyntheticDataset {
+    private static final int HOUR_SECONDS = 3600;
+    private static final String[] SENSOR_TYPES = {"AI", "DI", "AO"};
+    private static final String[] UNIFORM_PLANT_CODES = {"P1", "P2", "P3", "P4"};
+
+    private final Map<String, TagSeries> series;
+    private final int uniformStepSeconds;
+
+    private SyntheticDataset(Map<String, TagSeries> series, int uniformStepSeconds) {
+        this.series = series;
+        this.uniformStepSeconds = uniformStepSeconds;
+    }
+
+    /**
+     * Every tag requested has a point every {@code 60 / pointsPerMinute} seconds, without gaps or bursts.
+     */
+    static SyntheticDataset uniform(long pointsPerMinute) {
+        if (pointsPerMinute < 1 || pointsPerMinute > 60) {
+            // OriTime has second resolution, so a tag cannot have more than one point per second
+            throw new IllegalArgumentException("--points-per-minute must be between 1 and 60, got "
+                    + pointsPerMinute);
+        }
+        return new SyntheticDataset(new ConcurrentHashMap<>(), (int) Math.round(60.0 / pointsPerMinute));
+    }
+
+    /**
+     * The dataset of {@code spec} over {@code tags}. Density ranks are assigned to the tags in a seeded random
+     * order, so dense tags are spread over the list the way they are in production rather than sorted.
+     * Requests for other tags return no data.
+     */
+    static SyntheticDataset generated(DatasetSpec spec, List<String> tags) {
+        List<Integer> ranks = new ArrayList<>(tags.size());
+        for (int i = 0; i < tags.size(); i++) {
+            ranks.add(i + 1);
+        }
+        Collections.shuffle(ranks, new Random(spec.getSeed()));
+
+        int maxStep = (int) Math.max(1, Math.round(HOUR_SECONDS / spec.getMinPointsPerHour()));
+        Map<String, TagSeries> series = new HashMap<>(tags.size() * 2);
+        for (int i = 0; i < tags.size(); i++) {
+            String tag = tags.get(i);
+            double pointsPerMinute = spec.getMaxPointsPerMinute() / Math.pow(ranks.get(i), spec.getZipfExponent());
+            int step = (int) Math.min(maxStep, Math.max(1, Math.round(60 / pointsPerMinute)));
+            long key = mix(spec.getSeed() ^ tag.hashCode());
+            String plantCode = String.format("P%02d", 1 + Math.floorMod(key, spec.getPlantCodes()));
+            series.put(tag, new TagSeries(tag, plantCode, step, key, spec.getGapRate(), spec.getBurstRate()));
+        }
+        return new SyntheticDataset(series, 0);
+    }
+
+    /**
+     * The series of {@code tag}, or null if the dataset has no data for it.
+     */
+    TagSeries series(String tag) {
+        if (uniformStepSeconds == 0) {
+            return series.get(tag);
+        }
+        return series.computeIfAbsent(tag, t -> {
+            long key = mix(t.hashCode());
+            return new TagSeries(t, UNIFORM_PLANT_CODES[(int) Math.floorMod(key, UNIFORM_PLANT_CODES.length)],
+                    uniformStepSeconds, key, 0, 0);
+        });
+    }
+
+    long expectedPoints(List<String> tags, LocalDateTime start, LocalDateTime end) {
+        long total = 0;
+        for (String tag : tags) {
+            TagSeries tagSeries = series(tag);
+            if (tagSeries != null) {
+                total += tagSeries.count(start, end);
+            }
+        }
+        return total;
+    }
+
+    /**
+     * SplitMix64 finalizer: spreads similar inputs over the whole long range.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    interface PointConsumer {
+        void accept(long epochSecond) throws IOException;
+    }
+
+    static final class TagSeries {
+        private final String tag;
+        private final String plantCode;
+        private final String sensorType;
+        private final int stepSeconds;
+        private final long key;
+        private final double gapRate;
+        private final double burstRate;
+
+        private TagSeries(String tag, String plantCode, int stepSeconds, long key,
+                          double gapRate, double burstRate) {
+            this.tag = tag;
+            this.plantCode = plantCode;
+            this.sensorType = SENSOR_TYPES[(int) Math.floorMod(key >>> 8, SENSOR_TYPES.length)];
+            this.stepSeconds = stepSeconds;
+            this.key = key;
+            this.gapRate = gapRate;
+            this.burstRate = burstRate;
+        }
+
+        String getTag() {
+            return tag;
+        }
+
+        String getPlantCode() {
+            return plantCode;
+        }
+
+        String getSensorType() {
+            return sensorType;
+        }
+
+        int getStepSeconds() {
+            return stepSeconds;
+        }
+
+        String value(long epochSecond) {
+            return String.format("%.4f", 100 * Math.sin(epochSecond / 600.0 + (key & 0xffff)));
+        }
+
+        /**
+         * Calls {@code consumer} with every point in [start, end), in time order.
+         */
+        void forEachPoint(LocalDateTime start, LocalDateTime end, PointConsumer consumer) throws IOException {
+            long startSecond = start.toEpochSecond(ZoneOffset.UTC);
+            long endSecond = end.toEpochSecond(ZoneOffset.UTC);
+            for (long hour = Math.floorDiv(startSecond, HOUR_SECONDS); hour * HOUR_SECONDS < endSecond; hour++) {
+                int step = stepIn(hour);
+                if (step == 0) {
+                    continue;
+                }
+                long from = Math.max(startSecond, hour * HOUR_SECONDS);
+                long to = Math.min(endSecond, (hour + 1) * HOUR_SECONDS);
+                for (long second = Math.floorDiv(from + step - 1, step) * step; second < to; second += step) {
+                    consumer.accept(second);
+                }
+            }
+        }
+
+        long count(LocalDateTime start, LocalDateTime end) {
+            long startSecond = start.toEpochSecond(ZoneOffset.UTC);
+            long endSecond = end.toEpochSecond(ZoneOffset.UTC);
+            long count = 0;
+            for (long hour = Math.floorDiv(startSecond, HOUR_SECONDS); hour * HOUR_SECONDS < endSecond; hour++) {
+                int step = stepIn(hour);
+                long from = Math.max(startSecond, hour * HOUR_SECONDS);
+                long to = Math.min(endSecond, (hour + 1) * HOUR_SECONDS);
+                if (step > 0 && to > from) {
+                    count += Math.floorDiv(to - 1, step) - Math.floorDiv(from - 1, step);
+                }
+            }
+            return count;
+        }
+
+        /**
+         * The step within {@code hour}: 0 for a gap, 1 for a burst, the tag's own step otherwise.
+         */
+        private int stepIn(long hour) {
+            if (gapRate == 0 && burstRate == 0) {
+                return stepSeconds;
+            }
+            double u = (mix(key + hour * 0x9e3779b97f4a7c15L) >>> 11) * 0x1.0p-53;
+            if (u < gapRate) {
+                return 0;
+            }
+            return u < gapRate + burstRate ? 1 : stepSeconds;
+        }
+    }
+}
@@ -1,47 +1,94 @@
 package org.kreps.druidtoiotdb;
 
+import org.kreps.druidtoiotdb.checkpoint.CheckpointStore;
+import org.kreps.druidtoiotdb.checkpoint.LastTimestampScanner;
+import org.kreps.druidtoiotdb.checkpoint.ResumePlan;
 import org.kreps.druidtoiotdb.config.AppConfig;
 import org.kreps.druidtoiotdb.config.ConfigLoader;
 import org.kreps.druidtoiotdb.config.ConfigValidationException;
-import org.kreps.druidtoiotdb.iotdb.IoTDBSessionPool;
-import org.kreps.druidtoiotdb.model.DataPoint;
-import org.kreps.druidtoiotdb.validator.SchemaValidator;
+import org.kreps.druidtoiotdb.control.TransferControl;
+import org.kreps.druidtoiotdb.fetcher.CircuitBreaker;
+import org.kreps.druidtoiotdb.fetcher.FetchPlan;
+import org.kreps.druidtoiotdb.fetcher.RequestHedger;
+import org.kreps.druidtoiotdb.iotdb.IoTDBClientFactory;
+import org.kreps.druidtoiotdb.metrics.MetricsRegistry;
+import org.kreps.druidtoiotdb.metrics.ProgressReporter;
+import org.kreps.druidtoiotdb.metrics.RunReport;
+import org.kreps.druidtoiotdb.metrics.RunStats;
+import org.kreps.druidtoiotdb.replay.FailedLogReplay;
+import org.kreps.druidtoiotdb.sink.IoTDBSink;
+import org.kreps.druidtoiotdb.sink.Sink;
+import org.kreps.druidtoiotdb.tail.TailSync;
 import org.kreps.druidtoiotdb.threading.ThreadPoolManager;
+import org.kreps.druidtoiotdb.utils.FailureJournal;
 import org.kreps.druidtoiotdb.worker.WorkerManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.Arrays;
 import java.util.concurrent.*;
 
 public class Main {
     private static final Logger logger = LoggerFactory.getLogger(Main.class);
-    private final BlockingQueue<DataPoint> dataQueue;
-    private final IoTDBSessionPool iotdbSessionPool;
+    private static final long TAIL_STOP_TIMEOUT_MS = 30000;
+    private static final long JOURNAL_FLUSH_TIMEOUT_MS = 10000;
+    private final Sink sink;
+    private final RequestHedger requestHedger;
+    private final CircuitBreaker circuitBreaker;
+    private final CheckpointStore checkpointStore;
+    private final TransferControl transferControl;
     private final ThreadPoolManager threadPoolManager;
     private final WorkerManager workerManager;
     private final AppConfig config;
+    private final LocalDateTime startedAt = LocalDateTime.now();
+    private String mode = "transfer";
+    private boolean completed;
 
-    public Main(AppConfig config) {
-        this.dataQueue = new LinkedBlockingQueue<>(config.getProcessingConfig().getQueueSize());
-        this.iotdbSessionPool = new IoTDBSessionPool(config);
+    public Main(AppConfig config) throws IOException {
+        this(config, IoTDBClientFactory.DEFAULT);
+    }
 
-        int readerPoolSize = config.getProcessingConfig().getThreads().getReaderPoolSize();
-        int writerPoolSize = config.getProcessingConfig().getThreads().getWriterPoolSize();
+    /**
+     * Uses the given IoTDB clients instead of connecting to the configured server, e.g. for a load test.
+     */
+    public Main(AppConfig config, IoTDBClientFactory clientFactory) throws IOException {
+        this.sink = Sink.create(config, clientFactory);
+        this.requestHedger = new RequestHedger(config.getSourceConfig().getDruidSettings());
+        this.circuitBreaker = new CircuitBreaker(config.getSourceConfig().getDruidSettings());
+        this.checkpointStore = config.getProcessingConfig().isCheckpointEnabled()
+                ? new CheckpointStore(config.getProcessingConfig().getCheckpointDir(),
+                        config.getSourceConfig().getTimeRange().getStartTime())
+                : null;
 
-        this.threadPoolManager = new ThreadPoolManager(readerPoolSize, writerPoolSize);
+        this.transferControl = new TransferControl(config);
+        this.threadPoolManager = new ThreadPoolManager(config.getProcessingConfig().getThreads());
         this.workerManager = new WorkerManager(
                 config,
-                dataQueue,
                 threadPoolManager,
-                iotdbSessionPool);
+                sink,
+                requestHedger,
+                circuitBreaker,
+                transferControl);
         this.config = config;
+        transferControl.registerMBean();
+
+        MetricsRegistry metrics = MetricsRegistry.get();
+        metrics.registerGauge("failure_journal.pending", FailureJournal.get()::getPendingCount);
+        if (checkpointStore != null) {
+            metrics.registerGauge("checkpoint.tags_with_gaps", checkpointStore::getTagsWithGaps);
+        }
+        metrics.start(config.getProcessingConfig().getMetricsLogIntervalSeconds());
+        RunStats.get().setTopN(config.getProcessingConfig().getReportTopN());
+        ProgressReporter.get().start(config.getProcessingConfig().getProgressIntervalSeconds());
     }
 
     public static void main(String[] args) {
         try {
             AppConfig config = ConfigLoader.loadConfig();
-            Main app = new Main(config);
-            app.run();
+            new Main(config).start(args);
         } catch (ConfigValidationException e) {
             logger.error("Configuration error: {}", e.getMessage());
             System.exit(1);
@@ -51,31 +98,149 @@ public class Main {
         }
     }
 
+    /**
+     * Runs the mode the arguments select: {@code --replay}, {@code --tail}, or a regular transfer.
+     */
+    public void start(String[] args) throws Exception {
+        if (Arrays.asList(args).contains("--replay")) {
+            replay();
+        } else if (Arrays.asList(args).contains("--tail")) {
+            tail();
+        } else {
+            run();
+        }
+    }
+
     private void run() throws Exception {
         try {
-            validateSchema();
-            workerManager.startWorkers();
-            threadPoolManager.waitForFetchers();
-            workerManager.sendPoisonPills();
-            threadPoolManager.waitForWriters();
+            sink.open();
+            transfer(FetchPlan.fullRange(config, planResume()));
+            if (transferControl.isStopping()) {
+                logger.info("Transfer drained and stopped on operator request; the next run resumes from "
+                        + "the checkpoints");
+            }
+            completed = true;
+        } finally {
+            cleanup();
+        }
+    }
+
+    /**
+     * Transfers only the ranges recorded in the failed request and failed write files, then leaves in those
+     * files only what failed again.
+     */
+    private void replay() throws Exception {
+        mode = "replay";
+        try {
+            FailedLogReplay replay = FailedLogReplay.prepare();
+            if (replay.isEmpty()) {
+                logger.info("Nothing to replay");
+                replay.complete();
+                completed = true;
+                return;
+            }
+            try {
+                sink.open();
+                transfer(replay.toFetchPlan(config.getProcessingConfig().getBatch().getReadSize()));
+            } catch (Exception e) {
+                replay.restore();
+                throw e;
+            }
+            if (transferControl.isStopping()) {
+                // Part of the ranges was never fetched, so keep all of them for the next replay
+                replay.restore();
+                completed = true;
+                return;
+            }
+            replay.complete();
+            completed = true;
+        } finally {
+            cleanup();
+        }
+    }
+
+    /**
+     * Keeps polling Druid for new data until the process is stopped. Watermarks are kept in the checkpoint
+     * store, or only in memory when checkpoints are disabled.
+     */
+    private void tail() throws Exception {
+        mode = "tail";
+        try {
+            sink.open();
+            CheckpointStore watermarks = checkpointStore != null ? checkpointStore
+                    : CheckpointStore.inMemory(config.getSourceConfig().getTimeRange().getStartTime());
+            TailSync tailSync = new TailSync(config, workerManager, watermarks, planResume());
+            transferControl.addStopListener(tailSync::stop);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                tailSync.stop();
+                try {
+                    tailSync.awaitStopped(TAIL_STOP_TIMEOUT_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "Tail-Shutdown"));
+            tailSync.run();
+            completed = true;
         } finally {
             cleanup();
         }
     }
 
-    private void validateSchema() throws Exception {
-        logger.info("Validating IoTDB schema...");
-        SchemaValidator validator = new SchemaValidator(
-            iotdbSessionPool.getSessionPool(),
-            config.getRetryConfig()
-        );
-        validator.initializeSchema();
-        logger.info("Schema validation completed");
+    private void transfer(FetchPlan fetchPlan) throws Exception {
+        ProgressReporter.get().plan(fetchPlan.countUnits());
+        CompletableFuture<Void> completion = workerManager.startPipeline(fetchPlan);
+        try {
+            completion.get();
+        } catch (ExecutionException e) {
+            throw new Exception("Transfer aborted: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private ResumePlan planResume() throws Exception {
+        if (!config.getProcessingConfig().isResumeFromDestination()) {
+            return ResumePlan.fromCheckpoints(checkpointStore);
+        }
+        logger.info("Querying IoTDB for the last written timestamp of every tag...");
+        // The configuration only allows resume_from_destination with the IoTDB sink
+        LastTimestampScanner scanner = new LastTimestampScanner(((IoTDBSink) sink).getSessionPool(),
+                config.getRetryConfig());
+        return ResumePlan.fromDestination(checkpointStore, scanner.scan(config.getTags()));
     }
 
     private void cleanup() {
+        logger.info("Druid requests: {}; circuit breaker opened {} times",
+                requestHedger.summary(), circuitBreaker.getTimesOpened());
         threadPoolManager.close();
-        iotdbSessionPool.close();
+        // Before the checkpoint store closes, since a sink may settle its last points here
+        sink.close();
+        requestHedger.close();
+        ProgressReporter.get().close();
+        writeReport();
+        transferControl.unregisterMBean();
+        MetricsRegistry.get().close();
+        try {
+            if (!FailureJournal.get().flush(JOURNAL_FLUSH_TIMEOUT_MS)) {
+                logger.warn("{} failure records were not written before shutdown",
+                        FailureJournal.get().getPendingCount());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (checkpointStore != null) {
+            checkpointStore.close();
+        }
         logger.info("Application completed successfully");
     }
+
+    private void writeReport() {
+        if (!config.getProcessingConfig().isReportEnabled()) {
+            return;
+        }
+        String outcome = !completed ? "failed" : transferControl.isStopping() ? "stopped" : "completed";
+        RunReport report = new RunReport(mode, sink.getName(), startedAt, config.getProcessingConfig().getReportTopN());
+        Path file = report.write(config.getProcessingConfig().getReportDir(), outcome);
+        if (file != null) {
+            logger.info("Run report written to {}", file);
+        }
+    }
 }
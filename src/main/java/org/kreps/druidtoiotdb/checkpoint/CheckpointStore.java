@@ -0,0 +1,357 @@
+package org.kreps.druidtoiotdb.checkpoint;
+
+import org.kreps.druidtoiotdb.model.WorkUnit;
+import org.kreps.druidtoiotdb.utils.FailureJournal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persists, per tag, the end of the longest run of intervals that is fully committed to IoTDB, so an
+ * interrupted migration can resume where it stopped.
+ *
+ * Progress is kept in an append-only log of {@code tag|committedUntil} lines. Writer threads only record an
+ * advance in memory; a background flusher appends the advances of the last interval and forces the log
+ * once, and only then reports them through {@link #getCommittedUntil(String)}. On startup the log is
+ * replayed, the last valid line per tag wins, and the log is rewritten with one line per tag. The flusher
+ * rewrites it the same way whenever it has grown to several lines per tag, so a long tail run does not
+ * grow it without bound. A line torn by a crash is skipped, which at worst re-fetches one interval.
+ *
+ * A unit also completes when points or requests that failed for good were recorded in the failure journal
+ * instead. Before it writes or reports any advance, the flusher waits until the journal has forced every
+ * record queued so far, so a checkpoint never moves past a failure that a replay could not find. The
+ * in-memory store used for tail watermarks without checkpoints waits the same way.
+ *
+ * Units complete out of order, so a tag only advances once every interval before the completed one has
+ * completed too; completed units ahead of that point are held in memory until the gap closes.
+ */
+public class CheckpointStore implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(CheckpointStore.class);
+
+    private static final String LOG_FILE = "progress.log";
+    private static final char SEPARATOR = '|';
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+    private static final long JOURNAL_FLUSH_TIMEOUT_MS = 5000;
+    private static final long FLUSH_INTERVAL_MS = 1000;
+    // The log is compacted once it holds this many lines per tag, and at least MIN_COMPACT_LINES lines
+    private static final int COMPACT_LINES_PER_TAG = 4;
+    private static final int MIN_COMPACT_LINES = 1000;
+
+    private final Path logPath;
+    private final LocalDateTime rangeStart;
+    // Written to the log, or seeded from what the destination already holds
+    private final Map<String, LocalDateTime> committed = new HashMap<>();
+    // Reached by completed units; ahead of committed until the flusher has written it
+    private final Map<String, LocalDateTime> advanced = new HashMap<>();
+    private final Map<String, TreeMap<LocalDateTime, LocalDateTime>> completedAhead = new HashMap<>();
+    private Map<String, LocalDateTime> unflushed = new HashMap<>();
+    // Guards the log; never held together with the store lock while waiting on the disk
+    private final Object logLock = new Object();
+    private FileChannel log;
+    private long logLines;
+    private boolean closed;
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Checkpoint-Flusher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * @param rangeStart start of the configured time range; a tag without progress starts there
+     */
+    public CheckpointStore(String directory, LocalDateTime rangeStart) throws IOException {
+        Path dir = Paths.get(directory);
+        Files.createDirectories(dir);
+        this.logPath = dir.resolve(LOG_FILE);
+        this.rangeStart = rangeStart;
+        load();
+        compact(committed);
+        advanced.putAll(committed);
+        openLog();
+        startFlusher();
+        logger.info("Loaded checkpoints for {} tags from {}", committed.size(), logPath);
+    }
+
+    private CheckpointStore(LocalDateTime rangeStart) {
+        this.logPath = null;
+        this.rangeStart = rangeStart;
+        startFlusher();
+    }
+
+    private void startFlusher() {
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * A store that tracks progress for the lifetime of the process only.
+     */
+    public static CheckpointStore inMemory(LocalDateTime rangeStart) {
+        return new CheckpointStore(rangeStart);
+    }
+
+    private void load() throws IOException {
+        if (!Files.exists(logPath)) {
+            return;
+        }
+        int skipped = 0;
+        try (BufferedReader reader = Files.newBufferedReader(logPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.lastIndexOf(SEPARATOR);
+                if (separator <= 0) {
+                    skipped++;
+                    continue;
+                }
+                try {
+                    committed.merge(line.substring(0, separator),
+                            LocalDateTime.parse(line.substring(separator + 1), TIME_FORMAT),
+                            CheckpointStore::later);
+                } catch (DateTimeParseException e) {
+                    skipped++;
+                }
+            }
+        }
+        if (skipped > 0) {
+            logger.warn("Skipped {} unreadable checkpoint lines in {}", skipped, logPath);
+        }
+    }
+
+    private void compact(Map<String, LocalDateTime> progress) throws IOException {
+        Path temp = logPath.resolveSibling(LOG_FILE + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, LocalDateTime> entry : progress.entrySet()) {
+                writer.write(format(entry.getKey(), entry.getValue()));
+            }
+        }
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, logPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logLines = progress.size();
+    }
+
+    private void openLog() throws IOException {
+        this.log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+    }
+
+    /**
+     * Rewrites the log with one line per tag once appends have made it several times that long. Called by
+     * the flusher with the log lock held.
+     */
+    private void compactIfGrown() {
+        Map<String, LocalDateTime> progress;
+        synchronized (this) {
+            if (logLines < Math.max(MIN_COMPACT_LINES, (long) committed.size() * COMPACT_LINES_PER_TAG)) {
+                return;
+            }
+            progress = new HashMap<>(committed);
+        }
+        long startTime = System.currentTimeMillis();
+        long lines = logLines;
+        try {
+            log.close();
+            compact(progress);
+            logger.debug("Compacted checkpoint log from {} to {} lines in {}ms",
+                    lines, progress.size(), System.currentTimeMillis() - startTime);
+        } catch (IOException e) {
+            logger.warn("Failed to compact checkpoint log {}: {}", logPath, e.getMessage());
+        }
+        try {
+            openLog();
+        } catch (IOException e) {
+            // The next flush tries again and keeps its advances queued until it succeeds
+            logger.error("Failed to reopen checkpoint log {}: {}", logPath, e.getMessage());
+            log = null;
+        }
+    }
+
+    private static String format(String tag, LocalDateTime committedUntil) {
+        return tag + SEPARATOR + committedUntil.format(TIME_FORMAT) + "\n";
+    }
+
+    /**
+     * End of the committed intervals of a tag, or {@code null} if nothing has been committed for it yet.
+     * Advances become visible here once the flusher has written them.
+     */
+    public synchronized LocalDateTime getCommittedUntil(String tag) {
+        return committed.get(tag);
+    }
+
+    /**
+     * Records that every point of the unit has been settled and advances the tag as far as the completed
+     * intervals reach without a gap.
+     */
+    public synchronized void markCompleted(WorkUnit unit) {
+        String tag = unit.getTag();
+        LocalDateTime recorded = advanced.get(tag);
+        LocalDateTime until = recorded == null || recorded.isBefore(rangeStart) ? rangeStart : recorded;
+        if (!unit.getEnd().isAfter(until)) {
+            return;
+        }
+
+        TreeMap<LocalDateTime, LocalDateTime> ahead = completedAhead.computeIfAbsent(tag, t -> new TreeMap<>());
+        ahead.merge(unit.getStart(), unit.getEnd(), CheckpointStore::later);
+        while (!ahead.isEmpty() && !ahead.firstKey().isAfter(until)) {
+            LocalDateTime end = ahead.pollFirstEntry().getValue();
+            if (end.isAfter(until)) {
+                until = end;
+            }
+        }
+        if (ahead.isEmpty()) {
+            completedAhead.remove(tag);
+        }
+
+        if (recorded == null || until.isAfter(recorded)) {
+            advanced.put(tag, until);
+            unflushed.put(tag, until);
+        }
+    }
+
+    /**
+     * Appends the advances recorded since the last flush and forces the log once. Advances that cannot be
+     * written, or that wait for the failure journal, stay queued for the next flush and are not reported as
+     * committed.
+     */
+    private void flush() {
+        synchronized (logLock) {
+            if (closed) {
+                return;
+            }
+            Map<String, LocalDateTime> batch;
+            synchronized (this) {
+                if (unflushed.isEmpty()) {
+                    return;
+                }
+                batch = unflushed;
+                unflushed = new HashMap<>();
+            }
+            try {
+                // A unit may count as complete because its failures were journaled; make sure they are on
+                // disk before the checkpoint moves past them
+                if (FailureJournal.get().getPendingCount() > 0
+                        && !FailureJournal.get().flush(JOURNAL_FLUSH_TIMEOUT_MS)) {
+                    logger.warn("Failure journal is behind, checkpoints for {} tags not advanced yet", batch.size());
+                    requeue(batch);
+                    return;
+                }
+                if (logPath != null) {
+                    if (log == null) {
+                        openLog();
+                    }
+                    appendAndForce(batch);
+                    logLines += batch.size();
+                }
+            } catch (IOException e) {
+                logger.error("Failed to write checkpoints for {} tags: {}", batch.size(), e.getMessage());
+                requeue(batch);
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                requeue(batch);
+                return;
+            }
+            synchronized (this) {
+                batch.forEach((tag, until) -> committed.merge(tag, until, CheckpointStore::later));
+            }
+            if (logPath != null) {
+                compactIfGrown();
+            }
+        }
+    }
+
+    private void appendAndForce(Map<String, LocalDateTime> batch) throws IOException {
+        StringBuilder lines = new StringBuilder();
+        for (Map.Entry<String, LocalDateTime> entry : batch.entrySet()) {
+            lines.append(format(entry.getKey(), entry.getValue()));
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            log.write(buffer);
+        }
+        log.force(false);
+    }
+
+    private synchronized void requeue(Map<String, LocalDateTime> batch) {
+        batch.forEach((tag, until) -> unflushed.merge(tag, until, CheckpointStore::later));
+    }
+
+    private static LocalDateTime later(LocalDateTime a, LocalDateTime b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    /**
+     * Treats everything of the tag up to {@code until} as committed, e.g. because the destination already
+     * holds it. Does nothing if the tag has already advanced further. The seed counts as committed right
+     * away, since losing its log line only means seeding it again on the next run.
+     */
+    public synchronized void seed(String tag, LocalDateTime until) {
+        LocalDateTime recorded = advanced.get(tag);
+        if (recorded == null || until.isAfter(recorded)) {
+            advanced.put(tag, until);
+            committed.merge(tag, until, CheckpointStore::later);
+            if (logPath != null) {
+                unflushed.put(tag, until);
+            }
+        }
+    }
+
+    /**
+     * Number of tags whose completed intervals are waiting for an earlier interval to complete.
+     */
+    public synchronized int getTagsWithGaps() {
+        return completedAhead.size();
+    }
+
+    @Override
+    public void close() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(JOURNAL_FLUSH_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        synchronized (logLock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (log == null) {
+                return;
+            }
+            try {
+                log.close();
+            } catch (IOException e) {
+                logger.warn("Error while closing checkpoint log: {}", e.getMessage());
+            }
+            log = null;
+        }
+        synchronized (this) {
+            if (!unflushed.isEmpty()) {
+                logger.warn("Checkpoints of {} tags were not written before shutdown", unflushed.size());
+            }
+            logger.info("Checkpoints saved for {} tags to {}", committed.size(), logPath);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package org.kreps.druidtoiotdb.checkpoint;
+
+import org.apache.iotdb.isession.pool.SessionDataSetWrapper;
+import org.apache.iotdb.rpc.IoTDBConnectionException;
+import org.apache.iotdb.rpc.StatementExecutionException;
+import org.apache.iotdb.session.pool.SessionPool;
+import org.apache.iotdb.tsfile.read.common.RowRecord;
+import org.kreps.druidtoiotdb.config.RetryConfig;
+import org.kreps.druidtoiotdb.iotdb.IoTDBSessionPool;
+import org.kreps.druidtoiotdb.iotdb.PoolStage;
+import org.kreps.druidtoiotdb.utils.RetryUtils;
+import org.kreps.druidtoiotdb.validator.DeviceRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Asks IoTDB for the last timestamp written for each tag, so a run can resume from what the destination
+ * already holds rather than from local state.
+ *
+ * The devices under the root database are listed once; devices of configured tags are then queried with
+ * {@code SELECT LAST} in batches, several batches at a time. A tag written under more than one plant
+ * resumes after the earliest of its devices, since resuming after a later one would skip the range the
+ * lagging plant is missing; points before a device's own last timestamp are simply written again.
+ */
+public class LastTimestampScanner {
+    private static final Logger logger = LoggerFactory.getLogger(LastTimestampScanner.class);
+    private static final String ROOT_DATABASE = "root.cepco";
+    private static final String RESUME_MEASUREMENT = "Val";
+    private static final int QUERY_BATCH_SIZE = 200;
+    private static final int QUERY_PARALLELISM = 4;
+
+    private final IoTDBSessionPool iotdbSessionPool;
+    private final RetryConfig retryConfig;
+
+    public LastTimestampScanner(IoTDBSessionPool iotdbSessionPool, RetryConfig retryConfig) {
+        this.iotdbSessionPool = iotdbSessionPool;
+        this.retryConfig = retryConfig;
+    }
+
+    /**
+     * Returns the last written timestamp, in epoch milliseconds, of every given tag that has data in IoTDB.
+     */
+    public Map<String, Long> scan(Collection<String> tags) throws Exception {
+        long startTime = System.currentTimeMillis();
+        // Device paths carry the trimmed tag, see DataPoint#getTimeseriesPath
+        Map<String, List<String>> tagsByOrgTag = new HashMap<>();
+        for (String tag : tags) {
+            tagsByOrgTag.computeIfAbsent(tag.trim(), t -> new ArrayList<>()).add(tag);
+        }
+
+        List<String> devices = RetryUtils.executeWithRetry(
+                () -> iotdbSessionPool.execute(PoolStage.RESUME, sessionPool -> listDevices(sessionPool, tagsByOrgTag)),
+                retryConfig, "List devices for resume");
+        List<List<String>> batches = new ArrayList<>();
+        for (int i = 0; i < devices.size(); i += QUERY_BATCH_SIZE) {
+            batches.add(devices.subList(i, Math.min(devices.size(), i + QUERY_BATCH_SIZE)));
+        }
+
+        Map<String, Long> lastByOrgTag = new ConcurrentHashMap<>();
+        if (!batches.isEmpty()) {
+            ExecutorService executor = Executors.newFixedThreadPool(Math.min(QUERY_PARALLELISM, batches.size()),
+                    r -> {
+                        Thread thread = new Thread(r, "Resume-Scan");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            try {
+                List<CompletableFuture<Void>> queries = new ArrayList<>();
+                for (List<String> batch : batches) {
+                    queries.add(CompletableFuture.runAsync(() -> queryBatch(batch, lastByOrgTag), executor));
+                }
+                CompletableFuture.allOf(queries.toArray(new CompletableFuture<?>[0])).join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                throw cause instanceof Exception ? (Exception) cause : e;
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        Map<String, Long> lastByTag = new HashMap<>();
+        for (Map.Entry<String, Long> entry : lastByOrgTag.entrySet()) {
+            for (String tag : tagsByOrgTag.get(entry.getKey())) {
+                lastByTag.put(tag, entry.getValue());
+            }
+        }
+        logger.info("Found data in IoTDB for {} of {} tags across {} devices in {}ms ({} queries)",
+                lastByTag.size(), tags.size(), devices.size(), System.currentTimeMillis() - startTime,
+                batches.size());
+        return lastByTag;
+    }
+
+    private List<String> listDevices(SessionPool sessionPool, Map<String, List<String>> tagsByOrgTag)
+            throws IoTDBConnectionException, StatementExecutionException {
+        List<String> devices = new ArrayList<>();
+        SessionDataSetWrapper dataSet = sessionPool.executeQueryStatement("show devices " + ROOT_DATABASE + ".**");
+        try {
+            while (dataSet.hasNext()) {
+                RowRecord record = dataSet.next();
+                List<String> nodes = DeviceRegistry.splitPath(record.getFields().get(0).getStringValue());
+                if (nodes.size() == 4 && tagsByOrgTag.containsKey(nodes.get(3))) {
+                    devices.add(String.format("%s.`%s`.`%s`", ROOT_DATABASE, nodes.get(2), nodes.get(3)));
+                }
+            }
+        } finally {
+            sessionPool.closeResultSet(dataSet);
+        }
+        return devices;
+    }
+
+    private void queryBatch(List<String> devices, Map<String, Long> lastByOrgTag) {
+        String sql = "select last " + RESUME_MEASUREMENT + " from " + String.join(", ", devices);
+        try {
+            RetryUtils.executeWithRetry(() -> iotdbSessionPool.execute(PoolStage.RESUME, sessionPool -> {
+                SessionDataSetWrapper dataSet = sessionPool.executeQueryStatement(sql);
+                try {
+                    while (dataSet.hasNext()) {
+                        RowRecord record = dataSet.next();
+                        // Last query rows are (time, timeseries, value, data type)
+                        List<String> nodes = DeviceRegistry.splitPath(record.getFields().get(0).getStringValue());
+                        if (nodes.size() == 5) {
+                            lastByOrgTag.merge(nodes.get(3), record.getTimestamp(), Math::min);
+                        }
+                    }
+                } finally {
+                    sessionPool.closeResultSet(dataSet);
+                }
+                return null;
+            }), retryConfig, "Query last timestamps");
+        } catch (Exception e) {
+            throw new CompletionException(e);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.kreps.druidtoiotdb.checkpoint;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Where each tag resumes: from its local checkpoint, or from the last timestamp IoTDB already holds for it,
+ * whichever is later.
+ *
+ * A tag resumed from IoTDB is fetched again from the start of the second holding its last point, since
+ * Druid ranges have second precision; points at or before the last written timestamp are dropped by the
+ * decoder so the overlap is not written twice.
+ */
+public class ResumePlan {
+    private static final Logger logger = LoggerFactory.getLogger(ResumePlan.class);
+
+    private final CheckpointStore checkpointStore;
+    private final Map<String, LocalDateTime> destinationResume;
+    private final Map<String, Long> lastWrittenMillis;
+
+    private ResumePlan(CheckpointStore checkpointStore, Map<String, LocalDateTime> destinationResume,
+            Map<String, Long> lastWrittenMillis) {
+        this.checkpointStore = checkpointStore;
+        this.destinationResume = destinationResume;
+        this.lastWrittenMillis = lastWrittenMillis;
+    }
+
+    /**
+     * @param checkpointStore local checkpoints, or {@code null} when they are disabled
+     */
+    public static ResumePlan fromCheckpoints(CheckpointStore checkpointStore) {
+        return new ResumePlan(checkpointStore, Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    /**
+     * Resumes every tag after its last written timestamp unless its local checkpoint is already further.
+     * Tags taken from IoTDB are also recorded in the checkpoint store, so their later intervals advance it.
+     */
+    public static ResumePlan fromDestination(CheckpointStore checkpointStore, Map<String, Long> lastWritten) {
+        Map<String, LocalDateTime> destinationResume = new HashMap<>();
+        Map<String, Long> lastWrittenMillis = new HashMap<>();
+        for (Map.Entry<String, Long> entry : lastWritten.entrySet()) {
+            String tag = entry.getKey();
+            LocalDateTime resumeFrom = LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.getValue()),
+                    ZoneId.systemDefault()).truncatedTo(ChronoUnit.SECONDS);
+            LocalDateTime committed = checkpointStore == null ? null : checkpointStore.getCommittedUntil(tag);
+            if (committed != null && !resumeFrom.isAfter(committed)) {
+                continue;
+            }
+            destinationResume.put(tag, resumeFrom);
+            lastWrittenMillis.put(tag, entry.getValue());
+            if (checkpointStore != null) {
+                checkpointStore.seed(tag, resumeFrom);
+            }
+        }
+        logger.info("Resuming {} tags from the last timestamp written to IoTDB", destinationResume.size());
+        return new ResumePlan(checkpointStore, destinationResume, lastWrittenMillis);
+    }
+
+    /**
+     * Time from which the tag still has to be fetched, or {@code null} to fetch the whole time range.
+     */
+    public LocalDateTime getResumeFrom(String tag) {
+        LocalDateTime committed = checkpointStore == null ? null : checkpointStore.getCommittedUntil(tag);
+        return committed != null ? committed : destinationResume.get(tag);
+    }
+
+    /**
+     * Last timestamp already in IoTDB for a tag resumed from the destination, or {@code Long.MIN_VALUE}.
+     */
+    public long getLastWrittenMillis(String tag) {
+        Long last = lastWrittenMillis.get(tag);
+        return last != null ? last : Long.MIN_VALUE;
+    }
+
+    public CheckpointStore getCheckpointStore() {
+        return checkpointStore;
+    }
+}
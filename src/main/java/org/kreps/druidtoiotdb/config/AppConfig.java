@@ -59,5 +59,10 @@ public class AppConfig {
         destinationConfig.validate();
         processingConfig.validate();
         retryConfig.validate();
+        if (processingConfig.isResumeFromDestination()
+                && !DestinationConfig.SINK_IOTDB.equals(destinationConfig.getSink())) {
+            throw new ConfigValidationException(
+                    "'processing.resume_from_destination' requires 'destination.sink' to be iotdb");
+        }
     }
 }
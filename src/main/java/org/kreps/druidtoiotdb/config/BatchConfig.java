@@ -2,12 +2,20 @@ package org.kreps.druidtoiotdb.config;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+/**
+ * Batch sizes. The fields are volatile because they can be changed at runtime through
+ * {@link org.kreps.druidtoiotdb.control.TransferControl}; readers pick up a new value at their next batch.
+ */
 public class BatchConfig {
     @JsonProperty("read_size")
-    private int readSize;
+    private volatile int readSize;
 
     @JsonProperty("write_size")
-    private int writeSize;
+    private volatile int writeSize;
+
+    // How long a partial write batch may wait for more points; 0 sends it as soon as no point arrives
+    @JsonProperty("linger_ms")
+    private volatile long lingerMs = 0;
 
     // Getters
     public int getReadSize() {
@@ -18,6 +26,22 @@ public class BatchConfig {
         return writeSize;
     }
 
+    public long getLingerMs() {
+        return lingerMs;
+    }
+
+    public void setReadSize(int readSize) {
+        this.readSize = readSize;
+    }
+
+    public void setWriteSize(int writeSize) {
+        this.writeSize = writeSize;
+    }
+
+    public void setLingerMs(long lingerMs) {
+        this.lingerMs = lingerMs;
+    }
+
     public void validate() throws ConfigValidationException {
         if (readSize <= 0) {
             throw new ConfigValidationException("'processing.batch.read_size' must be greater than 0");
@@ -25,5 +49,8 @@ public class BatchConfig {
         if (writeSize <= 0) {
             throw new ConfigValidationException("'processing.batch.write_size' must be greater than 0");
         }
+        if (lingerMs < 0) {
+            throw new ConfigValidationException("'processing.batch.linger_ms' must not be negative");
+        }
     }
 }
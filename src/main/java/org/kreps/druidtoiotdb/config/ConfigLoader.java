@@ -12,11 +12,15 @@ public class ConfigLoader {
     private static final String CONFIG_FILE_PATH = "config.json";
 
     public static AppConfig loadConfig() throws IOException, ConfigValidationException {
+        return loadConfig(CONFIG_FILE_PATH);
+    }
+
+    public static AppConfig loadConfig(String configFilePath) throws IOException, ConfigValidationException {
         ObjectMapper objectMapper = new ObjectMapper();
-        File configFile = new File(CONFIG_FILE_PATH);
+        File configFile = new File(configFilePath);
 
         if (!configFile.exists()) {
-            throw new ConfigValidationException("Config file not found: " + CONFIG_FILE_PATH);
+            throw new ConfigValidationException("Config file not found: " + configFilePath);
         }
 
         AppConfig config = objectMapper.readValue(configFile, AppConfig.class);
@@ -2,18 +2,53 @@ package org.kreps.druidtoiotdb.config;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.Arrays;
+import java.util.List;
+
 public class DestinationConfig {
+    public static final String SINK_IOTDB = "iotdb";
+    public static final String SINK_FILE = "file";
+    public static final String SINK_NULL = "null";
+    private static final List<String> SINKS = Arrays.asList(SINK_IOTDB, SINK_FILE, SINK_NULL);
+
+    // Where the write stage sends the tablets: IoTDB, local TsFiles, or nowhere
+    @JsonProperty("sink")
+    private String sink = SINK_IOTDB;
+
     @JsonProperty("iotdb")
     private IoTDBSettings iotdbSettings;
 
+    @JsonProperty("file")
+    private FileSinkConfig fileSink = new FileSinkConfig();
+
+    public String getSink() {
+        return sink;
+    }
+
+    public void setSink(String sink) {
+        this.sink = sink;
+    }
+
     public IoTDBSettings getIotdbSettings() {
         return iotdbSettings;
     }
 
+    public FileSinkConfig getFileSink() {
+        return fileSink != null ? fileSink : new FileSinkConfig();
+    }
+
     public void validate() throws ConfigValidationException {
-        if (iotdbSettings == null) {
-            throw new ConfigValidationException("'destination.iotdb' section is missing");
+        if (!SINKS.contains(sink)) {
+            throw new ConfigValidationException("'destination.sink' must be one of " + SINKS);
+        }
+        if (SINK_IOTDB.equals(sink)) {
+            if (iotdbSettings == null) {
+                throw new ConfigValidationException("'destination.iotdb' section is missing");
+            }
+            iotdbSettings.validate();
+        }
+        if (SINK_FILE.equals(sink)) {
+            getFileSink().validate();
         }
-        iotdbSettings.validate();
     }
 }
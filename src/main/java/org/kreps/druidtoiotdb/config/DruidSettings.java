@@ -10,6 +10,29 @@ public class DruidSettings {
     @JsonProperty("user_key")
     private String userKey;
 
+    // Send a duplicate request when the first one is slower than the observed hedge_percentile latency
+    @JsonProperty("hedge_requests")
+    private boolean hedgeRequests = false;
+
+    @JsonProperty("hedge_percentile")
+    private double hedgePercentile = 0.95;
+
+    // Maximum share of requests, in percent, that may be duplicated
+    @JsonProperty("hedge_budget_percent")
+    private double hedgeBudgetPercent = 5.0;
+
+    // Lower bound for the hedge delay, so fast responses are never duplicated
+    @JsonProperty("hedge_min_delay_ms")
+    private long hedgeMinDelayMs = 50;
+
+    // Consecutive server-side failures that open the circuit breaker
+    @JsonProperty("circuit_breaker_failure_threshold")
+    private int circuitBreakerFailureThreshold = 5;
+
+    // How long an open circuit breaker rejects calls before letting a probe through
+    @JsonProperty("circuit_breaker_open_ms")
+    private long circuitBreakerOpenMs = 30000;
+
     // Getters and setters
     public String getApiUrl() {
         return apiUrl;
@@ -27,6 +50,30 @@ public class DruidSettings {
         this.userKey = userKey;
     }
 
+    public boolean isHedgeRequests() {
+        return hedgeRequests;
+    }
+
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public double getHedgeBudgetPercent() {
+        return hedgeBudgetPercent;
+    }
+
+    public long getHedgeMinDelayMs() {
+        return hedgeMinDelayMs;
+    }
+
+    public int getCircuitBreakerFailureThreshold() {
+        return circuitBreakerFailureThreshold;
+    }
+
+    public long getCircuitBreakerOpenMs() {
+        return circuitBreakerOpenMs;
+    }
+
     public void validate() throws ConfigValidationException {
         if (apiUrl == null || apiUrl.isEmpty()) {
             throw new ConfigValidationException("'druid_settings.api_url' is missing or empty");
@@ -34,5 +81,21 @@ public class DruidSettings {
         if (userKey == null || userKey.isEmpty()) {
             throw new ConfigValidationException("'druid_settings.user_key' is missing or empty");
         }
+        if (hedgePercentile <= 0 || hedgePercentile >= 1) {
+            throw new ConfigValidationException("'druid_settings.hedge_percentile' must be between 0 and 1");
+        }
+        if (hedgeBudgetPercent < 0 || hedgeBudgetPercent > 100) {
+            throw new ConfigValidationException("'druid_settings.hedge_budget_percent' must be between 0 and 100");
+        }
+        if (hedgeMinDelayMs < 0) {
+            throw new ConfigValidationException("'druid_settings.hedge_min_delay_ms' must not be negative");
+        }
+        if (circuitBreakerFailureThreshold <= 0) {
+            throw new ConfigValidationException(
+                    "'druid_settings.circuit_breaker_failure_threshold' must be greater than 0");
+        }
+        if (circuitBreakerOpenMs <= 0) {
+            throw new ConfigValidationException("'druid_settings.circuit_breaker_open_ms' must be greater than 0");
+        }
     }
 }
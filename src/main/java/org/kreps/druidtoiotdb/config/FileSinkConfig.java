@@ -0,0 +1,31 @@
+package org.kreps.druidtoiotdb.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class FileSinkConfig {
+    // Directory the TsFiles are written to
+    @JsonProperty("dir")
+    private String dir = "staging";
+
+    // A writer starts a new file once its current one holds this many points
+    @JsonProperty("max_points_per_file")
+    private long maxPointsPerFile = 10_000_000;
+
+    // Getters
+    public String getDir() {
+        return dir;
+    }
+
+    public long getMaxPointsPerFile() {
+        return maxPointsPerFile;
+    }
+
+    public void validate() throws ConfigValidationException {
+        if (dir == null || dir.isEmpty()) {
+            throw new ConfigValidationException("'destination.file.dir' is missing or empty");
+        }
+        if (maxPointsPerFile <= 0) {
+            throw new ConfigValidationException("'destination.file.max_points_per_file' must be greater than 0");
+        }
+    }
+}
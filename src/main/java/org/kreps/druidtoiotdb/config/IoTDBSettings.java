@@ -1,6 +1,8 @@
 package org.kreps.druidtoiotdb.config;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
+import java.util.Collections;
+import java.util.List;
 
 public class IoTDBSettings {
     @JsonProperty("host")
@@ -9,6 +11,13 @@ public class IoTDBSettings {
     @JsonProperty("port")
     private int port;
 
+    // Optional list of "host:port" DataNode endpoints; overrides host and port when present
+    @JsonProperty("node_urls")
+    private List<String> nodeUrls;
+
+    @JsonProperty("enable_redirection")
+    private boolean enableRedirection = true;
+
     @JsonProperty("username")
     private String username;
 
@@ -18,6 +27,10 @@ public class IoTDBSettings {
     @JsonProperty("session_pool_size")
     private int sessionPoolSize;
 
+    // Lower bound for the adaptive checkout limit; session_pool_size is the upper bound
+    @JsonProperty("min_session_pool_size")
+    private int minSessionPoolSize;
+
     // Getters and setters
     public String getHost() {
         return host;
@@ -35,6 +48,25 @@ public class IoTDBSettings {
         this.port = port;
     }
 
+    public List<String> getNodeUrls() {
+        if (nodeUrls != null && !nodeUrls.isEmpty()) {
+            return nodeUrls;
+        }
+        return Collections.singletonList(host + ":" + port);
+    }
+
+    public void setNodeUrls(List<String> nodeUrls) {
+        this.nodeUrls = nodeUrls;
+    }
+
+    public boolean isEnableRedirection() {
+        return enableRedirection;
+    }
+
+    public void setEnableRedirection(boolean enableRedirection) {
+        this.enableRedirection = enableRedirection;
+    }
+
     public String getUsername() {
         return username;
     }
@@ -59,12 +91,26 @@ public class IoTDBSettings {
         this.sessionPoolSize = sessionPoolSize;
     }
 
+    public int getMinSessionPoolSize() {
+        return minSessionPoolSize > 0 ? minSessionPoolSize : Math.max(1, sessionPoolSize / 4);
+    }
+
+    public void setMinSessionPoolSize(int minSessionPoolSize) {
+        this.minSessionPoolSize = minSessionPoolSize;
+    }
+
     public void validate() throws ConfigValidationException {
-        if (host == null || host.isEmpty()) {
-            throw new ConfigValidationException("'iotdb_settings.host' is missing or empty");
-        }
-        if (port <= 0 || port > 65535) {
-            throw new ConfigValidationException("'iotdb_settings.port' is invalid. It must be between 1 and 65535");
+        if (nodeUrls != null && !nodeUrls.isEmpty()) {
+            for (String nodeUrl : nodeUrls) {
+                validateNodeUrl(nodeUrl);
+            }
+        } else {
+            if (host == null || host.isEmpty()) {
+                throw new ConfigValidationException("'iotdb_settings.host' is missing or empty");
+            }
+            if (port <= 0 || port > 65535) {
+                throw new ConfigValidationException("'iotdb_settings.port' is invalid. It must be between 1 and 65535");
+            }
         }
         if (username == null || username.isEmpty()) {
             throw new ConfigValidationException("'iotdb_settings.username' is missing or empty");
@@ -76,5 +122,26 @@ public class IoTDBSettings {
             throw new ConfigValidationException(
                     "'iotdb_settings.session_pool_size' is invalid. It must be greater than 0");
         }
+        if (minSessionPoolSize < 0 || minSessionPoolSize > sessionPoolSize) {
+            throw new ConfigValidationException(
+                    "'iotdb_settings.min_session_pool_size' is invalid. It must be between 1 and session_pool_size");
+        }
+    }
+
+    private void validateNodeUrl(String nodeUrl) throws ConfigValidationException {
+        int separator = nodeUrl == null ? -1 : nodeUrl.lastIndexOf(':');
+        if (separator <= 0) {
+            throw new ConfigValidationException(
+                    "'iotdb_settings.node_urls' entry '" + nodeUrl + "' is invalid. Use host:port");
+        }
+        try {
+            int nodePort = Integer.parseInt(nodeUrl.substring(separator + 1));
+            if (nodePort <= 0 || nodePort > 65535) {
+                throw new NumberFormatException();
+            }
+        } catch (NumberFormatException e) {
+            throw new ConfigValidationException(
+                    "'iotdb_settings.node_urls' entry '" + nodeUrl + "' has an invalid port");
+        }
     }
 }
@@ -9,9 +9,43 @@ public class ProcessingConfig {
     @JsonProperty("batch")
     private BatchConfig batch;
 
+    @JsonProperty("tail")
+    private TailConfig tail = new TailConfig();
+
     @JsonProperty("queue_size")
     private int queueSize;
 
+    // Capacity, in batches, of the buffers between pipeline stages other than decode -> validate
+    @JsonProperty("stage_buffer_size")
+    private int stageBufferSize = 64;
+
+    // Resume from the per-tag progress recorded in checkpoint_dir and keep recording it
+    @JsonProperty("checkpoint_enabled")
+    private boolean checkpointEnabled = true;
+
+    @JsonProperty("checkpoint_dir")
+    private String checkpointDir = "checkpoints";
+
+    // Resume every tag after the last timestamp IoTDB already holds for it
+    @JsonProperty("resume_from_destination")
+    private boolean resumeFromDestination = false;
+
+    // Seconds between metrics summaries in the DEBUG log; 0 disables them, JMX is always available
+    @JsonProperty("metrics_log_interval_seconds")
+    private int metricsLogIntervalSeconds = 60;
+
+    // Seconds between progress status lines; 0 disables them
+    @JsonProperty("progress_interval_seconds")
+    private int progressIntervalSeconds = 30;
+
+    // Directory for the end-of-run report; empty disables the report
+    @JsonProperty("report_dir")
+    private String reportDir = "reports";
+
+    // Entries in the slowest tags and densest intervals lists of the report
+    @JsonProperty("report_top_n")
+    private int reportTopN = 20;
+
     // Getters
     public ThreadConfig getThreads() {
         return threads;
@@ -21,10 +55,50 @@ public class ProcessingConfig {
         return batch;
     }
 
+    public TailConfig getTail() {
+        return tail != null ? tail : new TailConfig();
+    }
+
     public int getQueueSize() {
         return queueSize;
     }
 
+    public int getStageBufferSize() {
+        return stageBufferSize;
+    }
+
+    public boolean isCheckpointEnabled() {
+        return checkpointEnabled;
+    }
+
+    public String getCheckpointDir() {
+        return checkpointDir;
+    }
+
+    public boolean isResumeFromDestination() {
+        return resumeFromDestination;
+    }
+
+    public int getMetricsLogIntervalSeconds() {
+        return metricsLogIntervalSeconds;
+    }
+
+    public int getProgressIntervalSeconds() {
+        return progressIntervalSeconds;
+    }
+
+    public String getReportDir() {
+        return reportDir;
+    }
+
+    public boolean isReportEnabled() {
+        return reportDir != null && !reportDir.trim().isEmpty();
+    }
+
+    public int getReportTopN() {
+        return reportTopN;
+    }
+
     public void validate() throws ConfigValidationException {
         if (threads == null) {
             throw new ConfigValidationException("'processing.threads' section is missing");
@@ -35,8 +109,26 @@ public class ProcessingConfig {
         if (queueSize <= 0) {
             throw new ConfigValidationException("'processing.queue_size' must be greater than 0");
         }
+        if (stageBufferSize <= 0) {
+            throw new ConfigValidationException("'processing.stage_buffer_size' must be greater than 0");
+        }
+        if (metricsLogIntervalSeconds < 0) {
+            throw new ConfigValidationException("'processing.metrics_log_interval_seconds' must not be negative");
+        }
+        if (progressIntervalSeconds < 0) {
+            throw new ConfigValidationException("'processing.progress_interval_seconds' must not be negative");
+        }
+        if (reportTopN <= 0) {
+            throw new ConfigValidationException("'processing.report_top_n' must be greater than 0");
+        }
+        if (checkpointEnabled && (checkpointDir == null || checkpointDir.trim().isEmpty())) {
+            throw new ConfigValidationException("'processing.checkpoint_dir' must not be empty");
+        }
 
         threads.validate();
         batch.validate();
+        if (tail != null) {
+            tail.validate();
+        }
     }
 }
@@ -2,18 +2,30 @@ package org.kreps.druidtoiotdb.config;
 
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+/**
+ * Retry parameters. Delays and attempts are volatile because they can be changed at runtime through
+ * {@link org.kreps.druidtoiotdb.control.TransferControl}; they apply from the next retry decision.
+ */
 public class RetryConfig {
     @JsonProperty("initial_delay_ms")
-    private long initialDelayMs;
+    private volatile long initialDelayMs;
 
     @JsonProperty("max_delay_ms")
-    private long maxDelayMs;
+    private volatile long maxDelayMs;
 
     @JsonProperty("max_attempts")
-    private int maxAttempts;
+    private volatile int maxAttempts;
 
     @JsonProperty("backoff_multiplier")
-    private double backoffMultiplier;
+    private volatile double backoffMultiplier;
+
+    // Retries allowed per first attempt, shared by all fetchers and writers
+    @JsonProperty("retry_budget_ratio")
+    private double retryBudgetRatio = 0.2;
+
+    // Maximum burst of retries the budget can absorb
+    @JsonProperty("retry_budget_capacity")
+    private int retryBudgetCapacity = 50;
 
     public long getInitialDelayMs() {
         return initialDelayMs;
@@ -31,6 +43,30 @@ public class RetryConfig {
         return backoffMultiplier;
     }
 
+    public double getRetryBudgetRatio() {
+        return retryBudgetRatio;
+    }
+
+    public int getRetryBudgetCapacity() {
+        return retryBudgetCapacity;
+    }
+
+    public void setInitialDelayMs(long initialDelayMs) {
+        this.initialDelayMs = initialDelayMs;
+    }
+
+    public void setMaxDelayMs(long maxDelayMs) {
+        this.maxDelayMs = maxDelayMs;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    public void setBackoffMultiplier(double backoffMultiplier) {
+        this.backoffMultiplier = backoffMultiplier;
+    }
+
     public void validate() throws ConfigValidationException {
         if (initialDelayMs <= 0) {
             throw new ConfigValidationException("initial_delay_ms must be positive");
@@ -44,5 +80,11 @@ public class RetryConfig {
         if (backoffMultiplier <= 1.0) {
             throw new ConfigValidationException("backoff_multiplier must be greater than 1.0");
         }
+        if (retryBudgetRatio < 0) {
+            throw new ConfigValidationException("retry_budget_ratio must not be negative");
+        }
+        if (retryBudgetCapacity <= 0) {
+            throw new ConfigValidationException("retry_budget_capacity must be positive");
+        }
     }
 }
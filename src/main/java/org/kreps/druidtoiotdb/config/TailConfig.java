@@ -0,0 +1,42 @@
+package org.kreps.druidtoiotdb.config;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public class TailConfig {
+    // How often Druid is polled for new data
+    @JsonProperty("poll_interval_ms")
+    private long pollIntervalMs = 10000;
+
+    // Data newer than this is left for a later poll, giving Druid time to ingest it
+    @JsonProperty("lag_seconds")
+    private long lagSeconds = 60;
+
+    // Every poll fetches this much before the watermark again to pick up late records
+    @JsonProperty("late_data_seconds")
+    private long lateDataSeconds = 0;
+
+    // Getters
+    public long getPollIntervalMs() {
+        return pollIntervalMs;
+    }
+
+    public long getLagSeconds() {
+        return lagSeconds;
+    }
+
+    public long getLateDataSeconds() {
+        return lateDataSeconds;
+    }
+
+    public void validate() throws ConfigValidationException {
+        if (pollIntervalMs <= 0) {
+            throw new ConfigValidationException("'processing.tail.poll_interval_ms' must be greater than 0");
+        }
+        if (lagSeconds < 0) {
+            throw new ConfigValidationException("'processing.tail.lag_seconds' must not be negative");
+        }
+        if (lateDataSeconds < 0) {
+            throw new ConfigValidationException("'processing.tail.late_data_seconds' must not be negative");
+        }
+    }
+}
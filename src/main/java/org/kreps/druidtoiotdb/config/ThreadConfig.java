@@ -9,6 +9,42 @@ public class ThreadConfig {
     @JsonProperty("writer_pool_size")
     private int writerPoolSize;
 
+    @JsonProperty("decode_pool_size")
+    private int decodePoolSize = 1;
+
+    @JsonProperty("validate_pool_size")
+    private int validatePoolSize = 2;
+
+    @JsonProperty("build_pool_size")
+    private int buildPoolSize = 2;
+
+    // Run each (tag, interval) fetch on its own virtual thread when the JVM supports it (Java 21+)
+    @JsonProperty("virtual_threads")
+    private boolean virtualThreads = false;
+
+    // Upper bound on fetch work units in flight across all fetchers in virtual thread mode
+    @JsonProperty("max_outstanding_fetches")
+    private int maxOutstandingFetches = 1000;
+
+    // Let the autoscaler add and retire fetchers and writers within the bounds below
+    @JsonProperty("autoscale")
+    private boolean autoscale = false;
+
+    @JsonProperty("autoscale_interval_ms")
+    private long autoscaleIntervalMs = 10000;
+
+    @JsonProperty("min_reader_pool_size")
+    private Integer minReaderPoolSize;
+
+    @JsonProperty("max_reader_pool_size")
+    private Integer maxReaderPoolSize;
+
+    @JsonProperty("min_writer_pool_size")
+    private Integer minWriterPoolSize;
+
+    @JsonProperty("max_writer_pool_size")
+    private Integer maxWriterPoolSize;
+
     // Getters
     public int getReaderPoolSize() {
         return readerPoolSize;
@@ -18,6 +54,50 @@ public class ThreadConfig {
         return writerPoolSize;
     }
 
+    public int getDecodePoolSize() {
+        return decodePoolSize;
+    }
+
+    public int getValidatePoolSize() {
+        return validatePoolSize;
+    }
+
+    public int getBuildPoolSize() {
+        return buildPoolSize;
+    }
+
+    public boolean isAutoscale() {
+        return autoscale;
+    }
+
+    public long getAutoscaleIntervalMs() {
+        return autoscaleIntervalMs;
+    }
+
+    public int getMinReaderPoolSize() {
+        return minReaderPoolSize != null ? minReaderPoolSize : 1;
+    }
+
+    public int getMaxReaderPoolSize() {
+        return maxReaderPoolSize != null ? maxReaderPoolSize : readerPoolSize;
+    }
+
+    public int getMinWriterPoolSize() {
+        return minWriterPoolSize != null ? minWriterPoolSize : 1;
+    }
+
+    public int getMaxWriterPoolSize() {
+        return maxWriterPoolSize != null ? maxWriterPoolSize : writerPoolSize;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    public int getMaxOutstandingFetches() {
+        return maxOutstandingFetches;
+    }
+
     public void validate() throws ConfigValidationException {
         if (readerPoolSize <= 0) {
             throw new ConfigValidationException("'processing.threads.reader_pool_size' must be greater than 0");
@@ -25,5 +105,35 @@ public class ThreadConfig {
         if (writerPoolSize <= 0) {
             throw new ConfigValidationException("'processing.threads.writer_pool_size' must be greater than 0");
         }
+        if (decodePoolSize <= 0) {
+            throw new ConfigValidationException("'processing.threads.decode_pool_size' must be greater than 0");
+        }
+        if (validatePoolSize <= 0) {
+            throw new ConfigValidationException("'processing.threads.validate_pool_size' must be greater than 0");
+        }
+        if (buildPoolSize <= 0) {
+            throw new ConfigValidationException("'processing.threads.build_pool_size' must be greater than 0");
+        }
+        validateBounds("reader", getMinReaderPoolSize(), readerPoolSize, getMaxReaderPoolSize());
+        validateBounds("writer", getMinWriterPoolSize(), writerPoolSize, getMaxWriterPoolSize());
+        if (autoscaleIntervalMs <= 0) {
+            throw new ConfigValidationException("'processing.threads.autoscale_interval_ms' must be greater than 0");
+        }
+        if (maxOutstandingFetches <= 0) {
+            throw new ConfigValidationException(
+                    "'processing.threads.max_outstanding_fetches' must be greater than 0");
+        }
+    }
+
+    private static void validateBounds(String pool, int min, int initial, int max) throws ConfigValidationException {
+        if (min <= 0) {
+            throw new ConfigValidationException(
+                    String.format("'processing.threads.min_%s_pool_size' must be greater than 0", pool));
+        }
+        if (min > initial || initial > max) {
+            throw new ConfigValidationException(String.format(
+                    "'processing.threads.%s_pool_size' must be between min_%s_pool_size and max_%s_pool_size",
+                    pool, pool, pool));
+        }
     }
 }
@@ -0,0 +1,274 @@
+package org.kreps.druidtoiotdb.control;
+
+import org.kreps.druidtoiotdb.config.AppConfig;
+import org.kreps.druidtoiotdb.config.BatchConfig;
+import org.kreps.druidtoiotdb.config.RetryConfig;
+import org.kreps.druidtoiotdb.pipeline.Stage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Live tuning of a running transfer, exposed over JMX.
+ *
+ * Batch and retry settings are written into the loaded configuration, whose fields are volatile, so each
+ * component sees a change at its next batch or retry decision: write batches at the next flush, read
+ * intervals from the next tag a fetcher starts, retries from the next failed attempt. Invalid values are
+ * rejected before anything changes, with the message configuration validation would give.
+ *
+ * Pausing stops fetchers from starting new units; units in flight complete. Draining stops fetchers from
+ * taking any more work, lets everything already fetched be written, and then lets the run end normally,
+ * so with checkpoints enabled the next run resumes where this one stopped.
+ */
+public class TransferControl implements TransferControlMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(TransferControl.class);
+    private static final String MBEAN_NAME = "org.kreps.druidtoiotdb:type=TransferControl";
+
+    private final BatchConfig batch;
+    private final RetryConfig retry;
+    private final List<Runnable> stopListeners = new CopyOnWriteArrayList<>();
+    private volatile Stage<?, ?> fetchStage;
+    private volatile int maxUnitsPerFetcher;
+    private volatile boolean fetchingPaused;
+    private volatile boolean stopping;
+
+    public TransferControl(AppConfig config) {
+        this.batch = config.getProcessingConfig().getBatch();
+        this.retry = config.getRetryConfig();
+    }
+
+    /**
+     * Fetch stage whose workers {@link #setFetcherCount(int)} adjusts.
+     */
+    public void attachFetchStage(Stage<?, ?> fetchStage) {
+        this.fetchStage = fetchStage;
+    }
+
+    /**
+     * Runs the listener when {@link #drainAndStop()} is called, e.g. to end tail rounds.
+     */
+    public void addStopListener(Runnable listener) {
+        stopListeners.add(listener);
+    }
+
+    /**
+     * Units a fetcher may have in flight, given its built-in limit.
+     */
+    public int limitUnits(int builtInLimit) {
+        int cap = maxUnitsPerFetcher;
+        return cap > 0 ? Math.min(cap, builtInLimit) : builtInLimit;
+    }
+
+    @Override
+    public int getReadSize() {
+        return batch.getReadSize();
+    }
+
+    @Override
+    public synchronized void setReadSize(int readSize) {
+        require(readSize > 0, "'processing.batch.read_size' must be greater than 0");
+        int previous = batch.getReadSize();
+        batch.setReadSize(readSize);
+        logger.info("read_size changed from {} to {}", previous, readSize);
+    }
+
+    @Override
+    public int getWriteSize() {
+        return batch.getWriteSize();
+    }
+
+    @Override
+    public synchronized void setWriteSize(int writeSize) {
+        require(writeSize > 0, "'processing.batch.write_size' must be greater than 0");
+        int previous = batch.getWriteSize();
+        batch.setWriteSize(writeSize);
+        logger.info("write_size changed from {} to {}", previous, writeSize);
+    }
+
+    @Override
+    public long getLingerMs() {
+        return batch.getLingerMs();
+    }
+
+    @Override
+    public synchronized void setLingerMs(long lingerMs) {
+        require(lingerMs >= 0, "'processing.batch.linger_ms' must not be negative");
+        long previous = batch.getLingerMs();
+        batch.setLingerMs(lingerMs);
+        logger.info("linger_ms changed from {} to {}", previous, lingerMs);
+    }
+
+    @Override
+    public int getFetcherCount() {
+        Stage<?, ?> stage = fetchStage;
+        return stage == null ? 0 : stage.getWorkerCount();
+    }
+
+    @Override
+    public int getMaxFetcherCount() {
+        Stage<?, ?> stage = fetchStage;
+        return stage == null ? 0 : stage.getMaxParallelism();
+    }
+
+    /**
+     * Adds or retires fetchers until the target is reached. With autoscaling enabled the autoscaler keeps
+     * adjusting the count afterwards.
+     */
+    @Override
+    public synchronized void setFetcherCount(int fetcherCount) {
+        Stage<?, ?> stage = fetchStage;
+        if (stage == null) {
+            throw new IllegalArgumentException("No transfer is running");
+        }
+        require(fetcherCount >= 1 && fetcherCount <= stage.getMaxParallelism(),
+                "Fetcher count must be between 1 and " + stage.getMaxParallelism());
+        int previous = stage.getWorkerCount();
+        while (stage.getWorkerCount() < fetcherCount && stage.addWorker()) {
+            // added one
+        }
+        while (stage.getWorkerCount() > fetcherCount && stage.retireWorker(fetcherCount)) {
+            // retired one
+        }
+        logger.info("Fetchers changed from {} to {}", previous, stage.getWorkerCount());
+    }
+
+    @Override
+    public int getMaxUnitsPerFetcher() {
+        return maxUnitsPerFetcher;
+    }
+
+    @Override
+    public void setMaxUnitsPerFetcher(int maxUnitsPerFetcher) {
+        require(maxUnitsPerFetcher >= 0, "Max units per fetcher must not be negative");
+        logger.info("Max units per fetcher changed from {} to {}", this.maxUnitsPerFetcher, maxUnitsPerFetcher);
+        this.maxUnitsPerFetcher = maxUnitsPerFetcher;
+    }
+
+    @Override
+    public int getRetryMaxAttempts() {
+        return retry.getMaxAttempts();
+    }
+
+    @Override
+    public synchronized void setRetryMaxAttempts(int maxAttempts) {
+        require(maxAttempts > 0, "max_attempts must be positive");
+        int previous = retry.getMaxAttempts();
+        retry.setMaxAttempts(maxAttempts);
+        logger.info("max_attempts changed from {} to {}", previous, maxAttempts);
+    }
+
+    @Override
+    public long getRetryInitialDelayMs() {
+        return retry.getInitialDelayMs();
+    }
+
+    @Override
+    public synchronized void setRetryInitialDelayMs(long initialDelayMs) {
+        require(initialDelayMs > 0, "initial_delay_ms must be positive");
+        require(initialDelayMs <= retry.getMaxDelayMs(),
+                "max_delay_ms must be greater than or equal to initial_delay_ms");
+        long previous = retry.getInitialDelayMs();
+        retry.setInitialDelayMs(initialDelayMs);
+        logger.info("initial_delay_ms changed from {} to {}", previous, initialDelayMs);
+    }
+
+    @Override
+    public long getRetryMaxDelayMs() {
+        return retry.getMaxDelayMs();
+    }
+
+    @Override
+    public synchronized void setRetryMaxDelayMs(long maxDelayMs) {
+        require(maxDelayMs >= retry.getInitialDelayMs(),
+                "max_delay_ms must be greater than or equal to initial_delay_ms");
+        long previous = retry.getMaxDelayMs();
+        retry.setMaxDelayMs(maxDelayMs);
+        logger.info("max_delay_ms changed from {} to {}", previous, maxDelayMs);
+    }
+
+    @Override
+    public double getRetryBackoffMultiplier() {
+        return retry.getBackoffMultiplier();
+    }
+
+    @Override
+    public synchronized void setRetryBackoffMultiplier(double backoffMultiplier) {
+        require(backoffMultiplier > 1.0, "backoff_multiplier must be greater than 1.0");
+        double previous = retry.getBackoffMultiplier();
+        retry.setBackoffMultiplier(backoffMultiplier);
+        logger.info("backoff_multiplier changed from {} to {}", previous, backoffMultiplier);
+    }
+
+    @Override
+    public boolean isFetchingPaused() {
+        return fetchingPaused;
+    }
+
+    @Override
+    public boolean isStopping() {
+        return stopping;
+    }
+
+    @Override
+    public void pauseFetching() {
+        if (!fetchingPaused) {
+            fetchingPaused = true;
+            logger.info("Fetching paused by operator");
+        }
+    }
+
+    @Override
+    public void resumeFetching() {
+        if (fetchingPaused) {
+            fetchingPaused = false;
+            logger.info("Fetching resumed by operator");
+        }
+    }
+
+    @Override
+    public synchronized void drainAndStop() {
+        if (stopping) {
+            return;
+        }
+        stopping = true;
+        logger.info("Drain and stop requested: no new intervals are fetched, buffered data is still written");
+        for (Runnable listener : stopListeners) {
+            listener.run();
+        }
+    }
+
+    public void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to register transfer control MBean: {}", e.getMessage());
+        }
+    }
+
+    public void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            logger.debug("Failed to unregister transfer control MBean: {}", e.getMessage());
+        }
+    }
+
+    private static void require(boolean valid, String message) {
+        if (!valid) {
+            throw new IllegalArgumentException(message);
+        }
+    }
+}
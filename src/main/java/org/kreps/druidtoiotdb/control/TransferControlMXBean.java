@@ -0,0 +1,56 @@
+package org.kreps.druidtoiotdb.control;
+
+/**
+ * JMX attributes and operations for tuning a running transfer. Setters reject invalid values with an
+ * {@link IllegalArgumentException} and leave the previous value in place.
+ */
+public interface TransferControlMXBean {
+    int getReadSize();
+
+    void setReadSize(int readSize);
+
+    int getWriteSize();
+
+    void setWriteSize(int writeSize);
+
+    long getLingerMs();
+
+    void setLingerMs(long lingerMs);
+
+    int getFetcherCount();
+
+    void setFetcherCount(int fetcherCount);
+
+    int getMaxFetcherCount();
+
+    // Cap on units in flight per fetcher; 0 means the built-in limit
+    int getMaxUnitsPerFetcher();
+
+    void setMaxUnitsPerFetcher(int maxUnitsPerFetcher);
+
+    int getRetryMaxAttempts();
+
+    void setRetryMaxAttempts(int maxAttempts);
+
+    long getRetryInitialDelayMs();
+
+    void setRetryInitialDelayMs(long initialDelayMs);
+
+    long getRetryMaxDelayMs();
+
+    void setRetryMaxDelayMs(long maxDelayMs);
+
+    double getRetryBackoffMultiplier();
+
+    void setRetryBackoffMultiplier(double backoffMultiplier);
+
+    boolean isFetchingPaused();
+
+    boolean isStopping();
+
+    void pauseFetching();
+
+    void resumeFetching();
+
+    void drainAndStop();
+}
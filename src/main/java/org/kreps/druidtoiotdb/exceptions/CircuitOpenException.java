@@ -0,0 +1,14 @@
+package org.kreps.druidtoiotdb.exceptions;
+
+public class CircuitOpenException extends Exception {
+    private final long remainingMillis;
+
+    public CircuitOpenException(String message, long remainingMillis) {
+        super(message);
+        this.remainingMillis = remainingMillis;
+    }
+
+    public long getRemainingMillis() {
+        return remainingMillis;
+    }
+}
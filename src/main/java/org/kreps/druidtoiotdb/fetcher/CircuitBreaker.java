@@ -0,0 +1,128 @@
+package org.kreps.druidtoiotdb.fetcher;
+
+import org.kreps.druidtoiotdb.config.DruidSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Circuit breaker around the Druid source, shared by all fetchers.
+ *
+ * The breaker opens after {@code circuit_breaker_failure_threshold} consecutive server-side failures and
+ * rejects every call for {@code circuit_breaker_open_ms}. After that a single probe call is let through
+ * (half-open): if it succeeds the breaker closes and all fetchers resume, otherwise it opens again.
+ * Client errors are answers from a healthy server and count as successes.
+ */
+public class CircuitBreaker {
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicLong timesOpened = new AtomicLong();
+    private volatile State state = State.CLOSED;
+    private volatile long openUntilNanos;
+    private boolean probeInFlight;
+
+    public CircuitBreaker(DruidSettings settings) {
+        this.failureThreshold = settings.getCircuitBreakerFailureThreshold();
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(settings.getCircuitBreakerOpenMs());
+    }
+
+    /**
+     * Returns whether a call would currently be let through, without claiming the half-open probe.
+     * Fetchers use this to decide whether to start new work.
+     */
+    public boolean isCallPermitted() {
+        State current = state;
+        if (current == State.CLOSED) {
+            return true;
+        }
+        synchronized (this) {
+            if (state == State.OPEN) {
+                return System.nanoTime() - openUntilNanos >= 0;
+            }
+            return state == State.CLOSED || !probeInFlight;
+        }
+    }
+
+    /**
+     * Claims permission for one call. In the half-open state only one caller at a time gets permission.
+     */
+    public boolean tryAcquirePermission() {
+        if (state == State.CLOSED) {
+            return true;
+        }
+        synchronized (this) {
+            if (state == State.OPEN && System.nanoTime() - openUntilNanos >= 0) {
+                state = State.HALF_OPEN;
+                probeInFlight = false;
+                logger.info("Druid circuit breaker half-open, sending a probe request");
+            }
+            if (state == State.HALF_OPEN && !probeInFlight) {
+                probeInFlight = true;
+                return true;
+            }
+            return state == State.CLOSED;
+        }
+    }
+
+    public void recordSuccess() {
+        consecutiveFailures.set(0);
+        if (state == State.CLOSED) {
+            return;
+        }
+        synchronized (this) {
+            if (state == State.HALF_OPEN) {
+                state = State.CLOSED;
+                probeInFlight = false;
+                logger.info("Druid circuit breaker closed, resuming full throughput");
+            }
+        }
+    }
+
+    public void recordFailure() {
+        int failures = consecutiveFailures.incrementAndGet();
+        synchronized (this) {
+            if (state == State.HALF_OPEN) {
+                open("probe request failed");
+            } else if (state == State.CLOSED && failures >= failureThreshold) {
+                open(failures + " consecutive failures");
+            }
+        }
+    }
+
+    private void open(String reason) {
+        state = State.OPEN;
+        probeInFlight = false;
+        openUntilNanos = System.nanoTime() + openNanos;
+        timesOpened.incrementAndGet();
+        logger.warn("Druid circuit breaker opened after {}, pausing fetchers for {}ms",
+                reason, TimeUnit.NANOSECONDS.toMillis(openNanos));
+    }
+
+    /**
+     * Milliseconds until the open breaker lets a probe through, or zero if calls are permitted.
+     */
+    public long getRemainingOpenMillis() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        return Math.max(0, TimeUnit.NANOSECONDS.toMillis(openUntilNanos - System.nanoTime()));
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getTimesOpened() {
+        return timesOpened.get();
+    }
+}
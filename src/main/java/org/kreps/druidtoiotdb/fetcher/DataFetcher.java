@@ -1,14 +1,25 @@
 package org.kreps.druidtoiotdb.fetcher;
 
 import org.kreps.druidtoiotdb.config.AppConfig;
-import org.kreps.druidtoiotdb.model.DataPoint;
+import org.kreps.druidtoiotdb.control.TransferControl;
+import org.kreps.druidtoiotdb.metrics.MetricsRegistry;
+import org.kreps.druidtoiotdb.metrics.ProgressReporter;
+import org.kreps.druidtoiotdb.metrics.RunStats;
+import org.kreps.druidtoiotdb.metrics.StageEvents;
 import org.kreps.druidtoiotdb.model.FailedRequest;
+import org.kreps.druidtoiotdb.model.FetchedBatch;
+import org.kreps.druidtoiotdb.model.TimeInterval;
+import org.kreps.druidtoiotdb.model.UnitProgress;
+import org.kreps.druidtoiotdb.model.WorkUnit;
+import org.kreps.druidtoiotdb.pipeline.Emitter;
+import org.kreps.druidtoiotdb.pipeline.StageHandler;
+import org.kreps.druidtoiotdb.threading.VirtualThreadUnitExecutor;
 import org.kreps.druidtoiotdb.utils.FailedRequestLogger;
 import org.kreps.druidtoiotdb.utils.RetryUtils;
-import org.kreps.druidtoiotdb.worker.WorkerManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.kreps.druidtoiotdb.exceptions.ServerErrorException;
+import org.kreps.druidtoiotdb.exceptions.CircuitOpenException;
 import org.kreps.druidtoiotdb.exceptions.ClientErrorException;
 
 import java.io.IOException;
@@ -16,6 +27,11 @@ import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.apache.http.client.methods.CloseableHttpResponse;
@@ -24,121 +40,280 @@ import org.apache.http.client.utils.URIBuilder;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClients;
 import org.apache.http.util.EntityUtils;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
-public class DataFetcher implements Runnable, AutoCloseable {
+/**
+ * Fetch stage: fetches every (tag, interval) work unit of a partition of the tags from Druid and emits the
+ * raw records of each unit.
+ */
+public class DataFetcher implements StageHandler<List<String>, FetchedBatch> {
     private final Logger logger = LoggerFactory.getLogger(DataFetcher.class);
     private final String logPrefix;
 
     private final AppConfig config;
-    private final BlockingQueue<DataPoint> dataQueue;
-    private final List<String> assignedTags;
     private volatile boolean running = true;
+    private volatile Emitter<FetchedBatch> out;
     private static final DateTimeFormatter API_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
     private static final String PWCM_CD = "ST";
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final CloseableHttpClient httpClient = HttpClients.createDefault();
-    private final CountDownLatch fetcherCompletionLatch;
-    private final WorkerManager workerManager;
-    private volatile Thread fetcherThread;
-
-    public DataFetcher(AppConfig config, BlockingQueue<DataPoint> dataQueue, List<String> assignedTags,
-            int fetcherId, CountDownLatch fetcherCompletionLatch, WorkerManager workerManager) {
+    private final CloseableHttpClient httpClient;
+    private final RequestHedger requestHedger;
+    private final CircuitBreaker circuitBreaker;
+    private final VirtualThreadUnitExecutor unitExecutor;
+    private final FetchPlan fetchPlan;
+    private final TransferControl transferControl;
+    private final Consumer<WorkUnit> completionListener;
+
+    // Units started but not yet finished, including those waiting for a scheduled retry
+    private static final int MAX_OUTSTANDING_UNITS = 4;
+    private static final Runnable WAKE_UP = () -> {
+    };
+    private final int maxOutstandingUnits;
+    private final AtomicInteger outstandingUnits = new AtomicInteger();
+    private final BlockingQueue<Runnable> retryTasks = new LinkedBlockingQueue<>();
+
+    // Units set aside while the circuit breaker was open, and units that failed every retry in the first pass
+    private final Queue<WorkUnit> parkedUnits = new ConcurrentLinkedQueue<>();
+    private final Queue<WorkUnit> deferredUnits = new ConcurrentLinkedQueue<>();
+
+    public DataFetcher(AppConfig config, int fetcherId, RequestHedger requestHedger, CircuitBreaker circuitBreaker,
+            VirtualThreadUnitExecutor unitExecutor, FetchPlan fetchPlan, TransferControl transferControl) {
         this.config = config;
-        this.dataQueue = dataQueue;
-        this.assignedTags = assignedTags;
         this.logPrefix = String.format("Fetcher-%d", fetcherId);
-        this.fetcherCompletionLatch = fetcherCompletionLatch;
-        this.workerManager = workerManager;
+        this.requestHedger = requestHedger;
+        this.circuitBreaker = circuitBreaker;
+        this.unitExecutor = unitExecutor;
+        this.fetchPlan = fetchPlan;
+        this.transferControl = transferControl;
+        this.completionListener = fetchPlan.getCompletionListener();
+        if (unitExecutor == null) {
+            this.maxOutstandingUnits = MAX_OUTSTANDING_UNITS;
+            this.httpClient = HttpClients.createDefault();
+        } else {
+            // Each unit may hold a connection for its request and another one for a hedge
+            this.maxOutstandingUnits = unitExecutor.getMaxOutstanding();
+            int maxConnections = unitExecutor.getMaxOutstanding() * 2;
+            this.httpClient = HttpClients.custom()
+                    .setMaxConnPerRoute(maxConnections)
+                    .setMaxConnTotal(maxConnections)
+                    .build();
+        }
     }
 
     @Override
-    public void run() {
-        fetcherThread = Thread.currentThread();
+    public void process(List<String> assignedTags, Emitter<FetchedBatch> out) throws InterruptedException {
+        this.out = out;
         try {
             logger.info("{} started with {} tags", logPrefix, assignedTags.size());
-            processAssignedTags();
-        } catch (Exception e) {
-            logger.error("{} encountered error: ", logPrefix, e);
-        } finally {
-            fetcherCompletionLatch.countDown();
-            logger.info("{} stopped", logPrefix);
+            processAssignedTags(assignedTags);
+        } catch (InterruptedException e) {
+            logger.info("{} interrupted, stopping", logPrefix);
+            running = false;
+            throw e;
         }
     }
 
-    private void processAssignedTags() {
-        LocalDateTime globalStart = config.getSourceConfig().getTimeRange().getStartTime();
-        LocalDateTime globalEnd = config.getSourceConfig().getTimeRange().getEndTime();
-        int batchSize = config.getProcessingConfig().getBatch().getReadSize();
-
-        List<TimeInterval> intervals = calculateTimeIntervals(globalStart, globalEnd, batchSize);
-        logger.info("{} created {} time intervals", logPrefix, intervals.size());
-
-        for (String tag : assignedTags) {
-            if (!running) {
-                return;
-            }
+    private void processAssignedTags(List<String> assignedTags) throws InterruptedException {
+        WorkUnitIterator units = new WorkUnitIterator(assignedTags, fetchPlan);
+        runUnits(units);
+        // Intervals are skipped as the iterator reaches each tag, so the count is only complete now
+        if (units.getSkippedUnits() > 0) {
+            logger.info("{} skipped {} intervals already written by an earlier run",
+                    logPrefix, units.getSkippedUnits());
+        }
 
-            processTagIntervals(tag, intervals);
+        if (running && !transferControl.isStopping() && !deferredUnits.isEmpty()) {
+            List<WorkUnit> deferred = new ArrayList<>(deferredUnits);
+            deferredUnits.clear();
+            logger.info("{} retrying {} deferred intervals", logPrefix, deferred.size());
+            runUnits(deferred.iterator());
+        }
+        if (running && transferControl.isStopping()) {
+            logger.info("{} stopped taking new intervals on operator request", logPrefix);
+        } else if (running) {
+            logger.info("{} completed processing all assigned tags", logPrefix);
         }
-        logger.info("{} completed processing all assigned tags", logPrefix);
     }
 
-    private void processTagIntervals(String tag, List<TimeInterval> intervals) {
-        for (TimeInterval interval : intervals) {
-            if (!running) {
-                return;
+    private void runUnits(Iterator<WorkUnit> units) throws InterruptedException {
+        boolean paused = false;
+        while (running) {
+            Runnable retry = retryTasks.poll();
+            if (retry != null) {
+                retry.run();
+                continue;
             }
-            try {
-                processDataPoints(tag, interval.start, interval.end);
-            } catch (Exception e) {
-                handleFetchError(e, tag, interval.start, interval.end);
+            // Once a drain is requested, units not started yet are left to the next run
+            boolean hasWork = !transferControl.isStopping() && (!parkedUnits.isEmpty() || units.hasNext());
+            if (!hasWork && outstandingUnits.get() == 0) {
+                break;
             }
-        }
-    }
 
-    private List<Map<String, String>> fetchDataWithRetry(String tag, LocalDateTime start, LocalDateTime end)
-            throws Exception {
-        return RetryUtils.executeWithRetry(() -> {
-            URIBuilder builder = buildApiRequest(tag, start, end);
-            return executeHttpRequest(builder);
-        }, config.getRetryConfig(), String.format("Fetch data for tag %s", tag));
-    }
-
-    private void queueDataPointsWithBackpressure(List<Map<String, String>> dataPoints,
-            String tag, LocalDateTime start, LocalDateTime end) throws InterruptedException {
-        for (Map<String, String> point : dataPoints) {
-            while (running) {
-                if (dataQueue.offer(new DataPoint(point), 30, TimeUnit.SECONDS)) {
-                    break;
+            boolean operatorPaused = transferControl.isFetchingPaused();
+            boolean permitted = !operatorPaused && circuitBreaker.isCallPermitted();
+            if (hasWork && permitted && outstandingUnits.get() < transferControl.limitUnits(maxOutstandingUnits)) {
+                if (paused) {
+                    logger.info("{} resuming with {} parked units", logPrefix, parkedUnits.size());
+                    paused = false;
                 }
-                logger.warn("{} queue is full (size: {}), waiting before retry. Tag: {}, Interval: [{} - {}]",
-                        logPrefix, dataQueue.size(), tag, start, end);
-                Thread.sleep(5000);
+                WorkUnit parked = parkedUnits.poll();
+                startUnit(parked != null ? parked : units.next());
+                continue;
             }
-            if (!running) {
-                throw new InterruptedException("Fetcher stopped while queueing data");
+            if (!permitted && !paused) {
+                logger.info("{} pausing {}", logPrefix,
+                        operatorPaused ? "on operator request" : "while the Druid circuit breaker is open");
+                paused = true;
+            }
+
+            // Wait for a scheduled retry, or for the circuit breaker to let calls through again
+            long waitMs = permitted || operatorPaused ? 1000
+                    : Math.max(100, Math.min(1000, circuitBreaker.getRemainingOpenMillis()));
+            retry = retryTasks.poll(waitMs, TimeUnit.MILLISECONDS);
+            if (retry != null) {
+                retry.run();
             }
         }
     }
 
-    private void processDataPoints(String tag, LocalDateTime start, LocalDateTime end) throws Exception {
-        List<Map<String, String>> dataPoints = fetchDataWithRetry(tag, start, end);
-        if (dataPoints.isEmpty()) {
+    /**
+     * Starts fetching one work unit. Without a unit executor the first attempt runs right away on this thread;
+     * if it fails, the retry is scheduled on the shared retry timer and handed back to this fetcher through
+     * {@link #retryTasks}, so the fetcher can move on to other units while the backoff elapses. With a unit
+     * executor every attempt runs on its own virtual thread, and this thread only hands out units.
+     */
+    private void startUnit(WorkUnit unit) throws InterruptedException {
+        if (unitExecutor == null) {
+            outstandingUnits.incrementAndGet();
+            fetchWithRetry(unit, retryTasks::add);
             return;
         }
 
-        queueDataPointsWithBackpressure(dataPoints, tag, start, end);
-        logger.info("{} processed {} points for tag {} in interval [{} - {}]",
-                logPrefix, dataPoints.size(), tag, start, end);
+        unitExecutor.acquire();
+        outstandingUnits.incrementAndGet();
+        try {
+            unitExecutor.execute(() -> fetchWithRetry(unit, unitExecutor));
+        } catch (RuntimeException e) {
+            unitExecutor.release();
+            outstandingUnits.decrementAndGet();
+            throw e;
+        }
+    }
+
+    private void fetchWithRetry(WorkUnit unit, Executor retryExecutor) {
+        // A deferred unit was already attempted earlier in the run, so even its first attempt here is a retry
+        AtomicInteger attempts = new AtomicInteger(unit.getAttempt());
+        RetryUtils.executeWithRetryAsync(
+                () -> fetchUnit(unit, attempts.getAndIncrement() > 0),
+                config.getRetryConfig(),
+                String.format("Fetch data for tag %s", unit.getTag()),
+                retryExecutor)
+                .whenComplete((dataPoints, error) -> {
+                    try {
+                        if (error == null) {
+                            processDataPoints(unit, dataPoints);
+                        } else if (unwrap(error) instanceof CircuitOpenException) {
+                            logger.debug("{} parking {} while the Druid circuit breaker is open", logPrefix, unit);
+                            parkedUnits.add(unit);
+                        } else {
+                            handleFetchError(unwrap(error), unit);
+                        }
+                    } catch (InterruptedException e) {
+                        logger.info("{} interrupted while queueing data for {}", logPrefix, unit);
+                        running = false;
+                    } finally {
+                        outstandingUnits.decrementAndGet();
+                        if (unitExecutor != null) {
+                            unitExecutor.release();
+                            // Let the fetcher thread hand out the freed slot without waiting for its poll timeout
+                            retryTasks.offer(WAKE_UP);
+                        }
+                    }
+                });
     }
 
-    private void handleFetchError(Exception e, String tag, LocalDateTime start, LocalDateTime end) {
+    private List<Map<String, String>> fetchUnit(WorkUnit unit, boolean retry) throws Exception {
+        if (!circuitBreaker.tryAcquirePermission()) {
+            throw new CircuitOpenException("Druid circuit breaker is open", circuitBreaker.getRemainingOpenMillis());
+        }
+        RunStats.TagStats stats = RunStats.get().tag(unit.getTag());
+        if (retry) {
+            stats.recordRetry();
+        }
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        AtomicLong bytes = new AtomicLong();
+        try {
+            List<Map<String, String>> dataPoints = requestHedger.execute(
+                    buildApiRequest(unit.getTag(), unit.getStart(), unit.getEnd()).build(),
+                    request -> executeHttpRequest(request, unit, bytes));
+            circuitBreaker.recordSuccess();
+            success = true;
+            return dataPoints;
+        } catch (ClientErrorException e) {
+            // Druid answered, so the source itself is healthy
+            circuitBreaker.recordSuccess();
+            throw e;
+        } catch (Exception e) {
+            circuitBreaker.recordFailure();
+            throw e;
+        } finally {
+            stats.recordRequest(System.nanoTime() - startNanos, bytes.get(), success);
+        }
+    }
+
+    private static Exception unwrap(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof Exception ? (Exception) cause : new Exception(cause);
+    }
+
+    private void processDataPoints(WorkUnit unit, List<Map<String, String>> dataPoints) throws InterruptedException {
+        if (!running) {
+            throw new InterruptedException("Fetcher stopped while emitting data");
+        }
+        // The unit counts as committed once the writers have settled every one of its points
+        UnitProgress progress = completionListener == null ? null
+                : UnitProgress.start(unit, dataPoints.size(), completionListener);
+        ProgressReporter.get().unitCompleted();
+        if (dataPoints.isEmpty()) {
+            return;
+        }
+        MetricsRegistry.get().add(MetricsRegistry.Counter.POINTS_FETCHED, dataPoints.size());
+        RunStats.TagStats stats = RunStats.get().tag(unit.getTag());
+        stats.recordFetched(dataPoints.size());
+        RunStats.get().recordInterval(unit.getTag(), unit.getStart(), unit.getEnd(), dataPoints.size());
+        long emitStart = System.nanoTime();
+        out.emit(new FetchedBatch(unit, dataPoints, progress));
+        stats.addBlockedNanos(System.nanoTime() - emitStart);
+        logger.debug("{} processed {} points for tag {} in interval [{} - {}]",
+                logPrefix, dataPoints.size(), unit.getTag(), unit.getStart(), unit.getEnd());
+    }
+
+    private void handleFetchError(Exception e, WorkUnit unit) {
         if (e instanceof ClientErrorException) {
-            logClientError(tag, start, end, (ClientErrorException) e);
-        } else if (e instanceof ServerErrorException) {
-            handleServerError(tag, start, end, (ServerErrorException) e);
+            logClientError(unit.getTag(), unit.getStart(), unit.getEnd(), (ClientErrorException) e);
+            markLogged(unit);
+        } else if (e instanceof InterruptedException) {
+            return;
+        } else if (unit.getAttempt() == 0) {
+            logger.warn("{} all retries failed for {}, deferring it to the end of the run: {}",
+                    logPrefix, unit, e.getMessage());
+            deferredUnits.add(unit.nextAttempt());
+        } else {
+            logFinalFailure(unit, e);
+            markLogged(unit);
+        }
+    }
+
+    /**
+     * A unit recorded in {@code failed_requests/} is left to a replay and no longer holds back its tag. The
+     * checkpoint store only moves past it once the record has been forced to disk.
+     */
+    private void markLogged(WorkUnit unit) {
+        if (completionListener != null) {
+            completionListener.accept(unit);
         }
     }
 
@@ -148,12 +323,17 @@ public class DataFetcher implements Runnable, AutoCloseable {
                 new FailedRequest(tag, start, end, e.getMessage(), e.getStatusCode(), true));
     }
 
-    private void handleServerError(String tag, LocalDateTime start, LocalDateTime end, ServerErrorException e) {
-        logger.error("{} Server error - all retries failed for tag {}: {}", logPrefix, tag, e.getMessage());
-        FailedRequestLogger.logFailedRequest(
-                new FailedRequest(tag, start, end, e.getMessage(), e.getStatusCode()));
-        workerManager.initiateShutdown();
-        logger.error("{} Maximum retry attempts reached, initiated shutdown.", logPrefix);
+    private void logFinalFailure(WorkUnit unit, Exception e) {
+        if (e instanceof ServerErrorException) {
+            logger.error("{} Server error - all retries failed for tag {}: {}", logPrefix, unit.getTag(), e.getMessage());
+            FailedRequestLogger.logFailedRequest(new FailedRequest(unit.getTag(), unit.getStart(), unit.getEnd(),
+                    e.getMessage(), ((ServerErrorException) e).getStatusCode()));
+        } else {
+            logger.error("{} Fetch failed for tag {} in interval [{} - {}]: {}",
+                    logPrefix, unit.getTag(), unit.getStart(), unit.getEnd(), e.getMessage());
+            FailedRequestLogger.logFailedRequest(
+                    new FailedRequest(unit.getTag(), unit.getStart(), unit.getEnd(), e.getMessage(), 0, true));
+        }
     }
 
     private URIBuilder buildApiRequest(String tag, LocalDateTime start, LocalDateTime end) throws Exception {
@@ -168,17 +348,33 @@ public class DataFetcher implements Runnable, AutoCloseable {
                 .addParameter("USER_KEY", userKey);
     }
 
-    private List<Map<String, String>> executeHttpRequest(URIBuilder builder) throws Exception {
-        HttpGet request = new HttpGet(builder.build());
+    /**
+     * Sends one request and parses its response. The response size is added to {@code bytesRead}, which
+     * hedged requests for the same unit share.
+     */
+    private List<Map<String, String>> executeHttpRequest(HttpGet request, WorkUnit unit, AtomicLong bytesRead)
+            throws Exception {
         String requestUrl = java.net.URLDecoder.decode(request.getURI().toString(), "UTF-8");
 
+        Object event = StageEvents.get().beginFetch();
+        int points = 0;
+        long bytes = 0;
         try (CloseableHttpResponse response = httpClient.execute(request)) {
             int statusCode = response.getStatusLine().getStatusCode();
             handleHttpStatusCode(statusCode, response, requestUrl);
 
             String jsonResponse = EntityUtils.toString(response.getEntity());
-            return objectMapper.readValue(jsonResponse, new TypeReference<List<Map<String, String>>>() {
-            });
+            long contentLength = response.getEntity().getContentLength();
+            bytes = contentLength >= 0 ? contentLength : jsonResponse.length();
+            MetricsRegistry.get().add(MetricsRegistry.Counter.DRUID_BYTES, bytes);
+            bytesRead.addAndGet(bytes);
+            List<Map<String, String>> records = objectMapper.readValue(jsonResponse,
+                    new TypeReference<List<Map<String, String>>>() {
+                    });
+            points = records.size();
+            return records;
+        } finally {
+            StageEvents.get().endFetch(event, unit.getTag(), unit.getStart(), unit.getEnd(), points, bytes);
         }
     }
 
@@ -195,56 +391,77 @@ public class DataFetcher implements Runnable, AutoCloseable {
         }
     }
 
-    private List<TimeInterval> calculateTimeIntervals(LocalDateTime start, LocalDateTime end, int batchSize) {
-        List<TimeInterval> intervals = new ArrayList<>();
-        long intervalSeconds = batchSize;
+    /**
+     * Walks the intervals of every tag in order, starting each tag where the resume plan says it still has
+     * data to transfer. The first interval of a resumed tag is cut to start at the resume point.
+     */
+    private static class WorkUnitIterator implements Iterator<WorkUnit> {
+        private final List<String> tags;
+        private final FetchPlan fetchPlan;
+        private int tagIndex = -1;
+        private List<TimeInterval> intervals;
+        private int intervalIndex;
+        private LocalDateTime resumeFrom;
+        private long skippedUnits;
+
+        WorkUnitIterator(List<String> tags, FetchPlan fetchPlan) {
+            this.tags = tags;
+            this.fetchPlan = fetchPlan;
+            nextTag();
+        }
 
-        LocalDateTime currentStart = start;
-        while (currentStart.isBefore(end)) {
-            LocalDateTime currentEnd = currentStart.plusSeconds(intervalSeconds);
-            if (currentEnd.isAfter(end)) {
-                currentEnd = end;
+        private void nextTag() {
+            while (++tagIndex < tags.size()) {
+                String tag = tags.get(tagIndex);
+                intervals = fetchPlan.getIntervals(tag);
+                resumeFrom = fetchPlan.getResumePlan().getResumeFrom(tag);
+                intervalIndex = 0;
+                while (resumeFrom != null && intervalIndex < intervals.size()
+                        && !intervals.get(intervalIndex).getEnd().isAfter(resumeFrom)) {
+                    intervalIndex++;
+                }
+                skippedUnits += intervalIndex;
+                if (intervalIndex < intervals.size()) {
+                    return;
+                }
             }
-
-            intervals.add(new TimeInterval(currentStart, currentEnd));
-            currentStart = currentEnd;
         }
 
-        return intervals;
-    }
-
-    private static class TimeInterval {
-        final LocalDateTime start;
-        final LocalDateTime end;
-
-        TimeInterval(LocalDateTime start, LocalDateTime end) {
-            this.start = start;
-            this.end = end;
+        long getSkippedUnits() {
+            return skippedUnits;
         }
 
         @Override
-        public String toString() {
-            return String.format("[%s - %s]", start, end);
+        public boolean hasNext() {
+            return tagIndex < tags.size();
         }
-    }
 
-    public void stop() {
-        running = false;
-        Thread thread = fetcherThread;
-        if (thread != null) {
-            thread.interrupt();
+        @Override
+        public WorkUnit next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            TimeInterval interval = intervals.get(intervalIndex);
+            LocalDateTime start = interval.getStart();
+            if (resumeFrom != null && resumeFrom.isAfter(start)) {
+                start = resumeFrom;
+            }
+            WorkUnit unit = new WorkUnit(tags.get(tagIndex), start, interval.getEnd());
+            if (++intervalIndex == intervals.size()) {
+                nextTag();
+            }
+            return unit;
         }
-        fetcherCompletionLatch.countDown();
-        logger.info("{} stopped", logPrefix);
     }
 
     @Override
     public void close() {
+        running = false;
         try {
-            stop();
             httpClient.close();
         } catch (IOException e) {
             logger.error("{} Error closing HTTP client: ", logPrefix, e);
         }
+        logger.info("{} stopped", logPrefix);
     }
 }
@@ -0,0 +1,165 @@
+package org.kreps.druidtoiotdb.fetcher;
+
+import org.kreps.druidtoiotdb.checkpoint.CheckpointStore;
+import org.kreps.druidtoiotdb.checkpoint.ResumePlan;
+import org.kreps.druidtoiotdb.config.AppConfig;
+import org.kreps.druidtoiotdb.config.BatchConfig;
+import org.kreps.druidtoiotdb.model.TimeInterval;
+import org.kreps.druidtoiotdb.model.WorkUnit;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The tags a run transfers and the time intervals fetched for each of them. A regular run fetches the
+ * configured time range of every configured tag; a replay fetches only the ranges that failed before.
+ * Subclasses may compute the intervals of a tag each time its partition is fetched.
+ */
+public class FetchPlan {
+    private final List<String> tags;
+    private final List<TimeInterval> intervals;
+    private final Map<String, List<TimeInterval>> tagIntervals;
+    private final ResumePlan resumePlan;
+
+    protected FetchPlan(List<String> tags, List<TimeInterval> intervals, Map<String, List<TimeInterval>> tagIntervals,
+            ResumePlan resumePlan) {
+        this.tags = tags;
+        this.intervals = intervals;
+        this.tagIntervals = tagIntervals;
+        this.resumePlan = resumePlan;
+    }
+
+    /**
+     * Every configured tag over the configured time range, split into {@code read_size} intervals. A
+     * {@code read_size} changed at runtime applies from the next tag a fetcher starts.
+     */
+    public static FetchPlan fullRange(AppConfig config, ResumePlan resumePlan) {
+        return new FullRangePlan(config.getTags(), config.getSourceConfig().getTimeRange().getStartTime(),
+                config.getSourceConfig().getTimeRange().getEndTime(), config.getProcessingConfig().getBatch(),
+                resumePlan);
+    }
+
+    /**
+     * Only the given intervals of the given tags, ignoring checkpoints.
+     */
+    public static FetchPlan ofIntervals(Map<String, List<TimeInterval>> tagIntervals) {
+        return new FetchPlan(new ArrayList<>(tagIntervals.keySet()), Collections.emptyList(), tagIntervals,
+                ResumePlan.fromCheckpoints(null));
+    }
+
+    /**
+     * Splits a time range into consecutive intervals of at most {@code intervalSeconds}.
+     */
+    public static List<TimeInterval> splitIntervals(LocalDateTime start, LocalDateTime end, long intervalSeconds) {
+        List<TimeInterval> intervals = new ArrayList<>();
+
+        LocalDateTime currentStart = start;
+        while (currentStart.isBefore(end)) {
+            LocalDateTime currentEnd = currentStart.plusSeconds(intervalSeconds);
+            if (currentEnd.isAfter(end)) {
+                currentEnd = end;
+            }
+
+            intervals.add(new TimeInterval(currentStart, currentEnd));
+            currentStart = currentEnd;
+        }
+
+        return intervals;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    /**
+     * Intervals of a tag in time order.
+     */
+    public List<TimeInterval> getIntervals(String tag) {
+        List<TimeInterval> replayed = tagIntervals.get(tag);
+        return replayed != null ? replayed : intervals;
+    }
+
+    /**
+     * Number of units left to fetch, skipping the intervals the resume plan says are already written.
+     */
+    public long countUnits() {
+        long units = 0;
+        for (String tag : tags) {
+            List<TimeInterval> tagUnits = getIntervals(tag);
+            LocalDateTime resumeFrom = resumePlan.getResumeFrom(tag);
+            units += tagUnits.size() - (resumeFrom == null ? 0 : countEndingBy(tagUnits, resumeFrom));
+        }
+        return units;
+    }
+
+    // Intervals are in time order, so those ending at or before the time form a prefix
+    private static int countEndingBy(List<TimeInterval> intervals, LocalDateTime time) {
+        int low = 0;
+        int high = intervals.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (intervals.get(mid).getEnd().isAfter(time)) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    public ResumePlan getResumePlan() {
+        return resumePlan;
+    }
+
+    /**
+     * Called once every point of a unit has been settled, or the unit was logged as failed; {@code null} when
+     * nothing tracks progress.
+     */
+    public Consumer<WorkUnit> getCompletionListener() {
+        CheckpointStore checkpointStore = resumePlan.getCheckpointStore();
+        return checkpointStore == null ? null : checkpointStore::markCompleted;
+    }
+
+    /**
+     * Splits the range once per {@code read_size} and shares the intervals between all tags.
+     */
+    private static class FullRangePlan extends FetchPlan {
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+        private final BatchConfig batchConfig;
+        private volatile Split split;
+
+        FullRangePlan(List<String> tags, LocalDateTime start, LocalDateTime end, BatchConfig batchConfig,
+                ResumePlan resumePlan) {
+            super(tags, Collections.emptyList(), Collections.emptyMap(), resumePlan);
+            this.start = start;
+            this.end = end;
+            this.batchConfig = batchConfig;
+        }
+
+        @Override
+        public List<TimeInterval> getIntervals(String tag) {
+            int readSize = batchConfig.getReadSize();
+            Split current = split;
+            if (current == null || current.readSize != readSize) {
+                current = new Split(readSize, Collections.unmodifiableList(splitIntervals(start, end, readSize)));
+                split = current;
+            }
+            return current.intervals;
+        }
+    }
+
+    private static final class Split {
+        final int readSize;
+        final List<TimeInterval> intervals;
+
+        Split(int readSize, List<TimeInterval> intervals) {
+            this.readSize = readSize;
+            this.intervals = intervals;
+        }
+    }
+}
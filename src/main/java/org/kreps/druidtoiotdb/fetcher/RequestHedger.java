@@ -0,0 +1,299 @@
+package org.kreps.druidtoiotdb.fetcher;
+
+import org.apache.http.client.methods.HttpGet;
+import org.kreps.druidtoiotdb.config.DruidSettings;
+import org.kreps.druidtoiotdb.metrics.LatencyHistogram;
+import org.kreps.druidtoiotdb.metrics.MetricsRegistry;
+import org.kreps.druidtoiotdb.utils.RetryBudget;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hedges slow Druid requests for all fetchers.
+ *
+ * A request that has not answered by the observed {@code hedge_percentile} latency gets a duplicate; whichever
+ * answers first wins and the other one is aborted. Duplicates draw from a token bucket that is refilled by
+ * {@code hedge_budget_percent} of every request, so hedging never adds more than that share of extra load on
+ * Druid. The hedge delay is re-estimated from every window of successful request latencies. When a hedge
+ * wins, the window gets the primary's elapsed time at that moment as a censored sample, so the slow requests
+ * that hedging cuts short still pull the percentile up instead of only the fast duplicates being counted.
+ */
+public class RequestHedger implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(RequestHedger.class);
+
+    private static final int MIN_SAMPLES = 50;
+    private static final int WINDOW_SIZE = 1000;
+    private static final int BUDGET_CAPACITY = 10;
+
+    @FunctionalInterface
+    public interface HttpCall<T> {
+        T execute(HttpGet request) throws Exception;
+    }
+
+    private final boolean enabled;
+    private final double percentile;
+    private final long minDelayMicros;
+    private final RetryBudget budget;
+    private final ScheduledExecutorService hedgeTimer;
+    private final ExecutorService hedgePool;
+
+    // Latencies of successful requests in the current window and the delay derived from the last full window
+    private final LatencyHistogram window = new LatencyHistogram();
+    private volatile long hedgeDelayMicros = -1;
+
+    private final LatencyHistogram requestLatency = MetricsRegistry.get().timer(MetricsRegistry.Timer.DRUID_REQUEST);
+    private final LatencyHistogram hedgedLatency = new LatencyHistogram();
+    // Per won hedge: how long the primary had been running minus how long the winning duplicate took
+    private final LatencyHistogram savedLatency = new LatencyHistogram();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedgesSent = new LongAdder();
+    private final LongAdder hedgesWon = new LongAdder();
+    private final LongAdder hedgesSkipped = new LongAdder();
+
+    public RequestHedger(DruidSettings settings) {
+        this.enabled = settings.isHedgeRequests();
+        this.percentile = settings.getHedgePercentile();
+        this.minDelayMicros = TimeUnit.MILLISECONDS.toMicros(settings.getHedgeMinDelayMs());
+        this.budget = new RetryBudget(settings.getHedgeBudgetPercent() / 100, BUDGET_CAPACITY);
+        if (enabled) {
+            this.hedgeTimer = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "Hedge-Timer"));
+            this.hedgePool = Executors.newCachedThreadPool(r -> daemon(r, "Druid-Hedge"));
+            logger.info("Druid request hedging enabled at p{} with a {}% budget",
+                    Math.round(percentile * 100), settings.getHedgeBudgetPercent());
+        } else {
+            this.hedgeTimer = null;
+            this.hedgePool = null;
+        }
+    }
+
+    private static Thread daemon(Runnable r, String name) {
+        Thread thread = new Thread(r, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    /**
+     * Runs the request on the calling thread and, if it is still outstanding after the hedge delay, races
+     * a duplicate against it on a separate thread.
+     */
+    public <T> T execute(URI uri, HttpCall<T> call) throws Exception {
+        long startNanos = System.nanoTime();
+        requests.increment();
+        MetricsRegistry.get().increment(MetricsRegistry.Counter.DRUID_REQUESTS);
+        HttpGet primary = new HttpGet(uri);
+        long delayMicros = enabled ? currentDelayMicros() : -1;
+        if (delayMicros < 0) {
+            T result = call.execute(primary);
+            if (enabled) {
+                recordSample(System.nanoTime() - startNanos);
+            }
+            requestLatency.recordNanos(System.nanoTime() - startNanos);
+            return result;
+        }
+
+        budget.recordRequest();
+        HedgedCall<T> hedged = new HedgedCall<>(uri, call, primary, startNanos);
+        ScheduledFuture<?> hedgeTask = hedgeTimer.schedule(hedged::launchHedge, delayMicros, TimeUnit.MICROSECONDS);
+        try {
+            return hedged.runPrimary();
+        } finally {
+            hedgeTask.cancel(false);
+            long elapsedNanos = System.nanoTime() - startNanos;
+            requestLatency.recordNanos(elapsedNanos);
+            if (hedged.wasHedged()) {
+                hedgedLatency.recordNanos(elapsedNanos);
+            }
+        }
+    }
+
+    private long currentDelayMicros() {
+        long published = hedgeDelayMicros;
+        if (published >= 0) {
+            return published;
+        }
+        return window.getCount() >= MIN_SAMPLES ? delayFrom(window) : -1;
+    }
+
+    private long delayFrom(LatencyHistogram histogram) {
+        return Math.max(minDelayMicros, (long) (histogram.getPercentileMillis(percentile) * 1000));
+    }
+
+    private void recordSample(long elapsedNanos) {
+        window.recordNanos(elapsedNanos);
+        if (window.getCount() >= WINDOW_SIZE) {
+            synchronized (window) {
+                if (window.getCount() >= WINDOW_SIZE) {
+                    hedgeDelayMicros = delayFrom(window);
+                    window.reset();
+                }
+            }
+        }
+    }
+
+    public LatencyHistogram getRequestLatency() {
+        return requestLatency;
+    }
+
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    public long getHedgesSent() {
+        return hedgesSent.sum();
+    }
+
+    public long getHedgesWon() {
+        return hedgesWon.sum();
+    }
+
+    public long getHedgesSkipped() {
+        return hedgesSkipped.sum();
+    }
+
+    public String summary() {
+        long total = requests.sum();
+        long sent = hedgesSent.sum();
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("requests %d, latency p50/p95/p99 %.1f/%.1f/%.1fms",
+                total, requestLatency.getPercentileMillis(0.50), requestLatency.getPercentileMillis(0.95),
+                requestLatency.getPercentileMillis(0.99)));
+        if (enabled) {
+            long delay = currentDelayMicros();
+            builder.append(String.format(
+                    "; hedged %d (%.1f%%), hedge won %d, skipped by budget %d, hedge delay %s"
+                            + ", hedged requests p50/p99 %.1f/%.1fms, saved by won hedges p50/p99 %.1f/%.1fms",
+                    sent, total == 0 ? 0.0 : sent * 100.0 / total, hedgesWon.sum(), hedgesSkipped.sum(),
+                    delay < 0 ? "warming up" : String.format("%.1fms", delay / 1000.0),
+                    hedgedLatency.getPercentileMillis(0.50), hedgedLatency.getPercentileMillis(0.99),
+                    savedLatency.getPercentileMillis(0.50), savedLatency.getPercentileMillis(0.99)));
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public void close() {
+        if (enabled) {
+            hedgeTimer.shutdownNow();
+            hedgePool.shutdownNow();
+        }
+    }
+
+    /**
+     * One request and its optional duplicate. The primary runs on the fetcher thread; the hedge runs on the
+     * hedge pool and aborts the primary if it answers first, which unblocks the fetcher thread immediately.
+     */
+    private final class HedgedCall<T> {
+        private final URI uri;
+        private final HttpCall<T> call;
+        private final HttpGet primary;
+        private final long primaryStartNanos;
+        private final CompletableFuture<T> winner = new CompletableFuture<>();
+        private final CompletableFuture<T> hedgeOutcome = new CompletableFuture<>();
+        private HttpGet hedge;
+
+        HedgedCall(URI uri, HttpCall<T> call, HttpGet primary, long primaryStartNanos) {
+            this.uri = uri;
+            this.call = call;
+            this.primary = primary;
+            this.primaryStartNanos = primaryStartNanos;
+        }
+
+        synchronized boolean wasHedged() {
+            return hedge != null;
+        }
+
+        synchronized void launchHedge() {
+            if (winner.isDone()) {
+                return;
+            }
+            if (!budget.tryAcquire()) {
+                hedgesSkipped.increment();
+                return;
+            }
+            HttpGet request = new HttpGet(uri);
+            try {
+                hedgePool.execute(() -> runHedge(request));
+            } catch (RejectedExecutionException e) {
+                return;
+            }
+            hedge = request;
+            hedgesSent.increment();
+        }
+
+        private void runHedge(HttpGet request) {
+            long startNanos = System.nanoTime();
+            try {
+                T result = call.execute(request);
+                long endNanos = System.nanoTime();
+                boolean won;
+                synchronized (this) {
+                    won = winner.complete(result);
+                }
+                if (won) {
+                    hedgesWon.increment();
+                    primary.abort();
+                    // The primary would have taken at least this long; a lost hedge is aborted and not sampled
+                    long primaryElapsedNanos = endNanos - primaryStartNanos;
+                    recordSample(primaryElapsedNanos);
+                    savedLatency.recordNanos(primaryElapsedNanos - (endNanos - startNanos));
+                }
+                hedgeOutcome.complete(result);
+            } catch (Exception e) {
+                hedgeOutcome.completeExceptionally(e);
+            }
+        }
+
+        T runPrimary() throws Exception {
+            long startNanos = System.nanoTime();
+            HttpGet launched;
+            try {
+                T result = call.execute(primary);
+                boolean won;
+                synchronized (this) {
+                    won = winner.complete(result);
+                    launched = hedge;
+                }
+                if (!won) {
+                    // The hedge answered first and is about to abort this request; use its answer
+                    return winner.join();
+                }
+                recordSample(System.nanoTime() - startNanos);
+                if (launched != null) {
+                    launched.abort();
+                }
+                return result;
+            } catch (Exception e) {
+                synchronized (this) {
+                    launched = hedge;
+                    if (launched == null) {
+                        winner.completeExceptionally(e);
+                    }
+                }
+                if (launched == null) {
+                    throw e;
+                }
+                // Either the hedge won and aborted this request, or this request failed on its own and the
+                // hedge still has a chance to answer
+                try {
+                    return hedgeOutcome.get();
+                } catch (ExecutionException hedgeError) {
+                    throw e;
+                } catch (InterruptedException ie) {
+                    launched.abort();
+                    throw ie;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.kreps.druidtoiotdb.iotdb;
+
+import org.apache.iotdb.session.pool.SessionPool;
+import org.kreps.druidtoiotdb.config.IoTDBSettings;
+
+/**
+ * Creates the clients a node talks to its server through: the session pool every operation runs on, and
+ * the probe the connection monitor checks the server with. {@link #DEFAULT} connects to the configured
+ * server; a load test can supply in-process stand-ins instead.
+ */
+public interface IoTDBClientFactory {
+    IoTDBClientFactory DEFAULT = new SessionClientFactory();
+
+    SessionPool createSessionPool(String host, int port, IoTDBSettings settings);
+
+    NodeProbe createProbe(String host, int port, IoTDBSettings settings);
+
+    /**
+     * Checks a server outside its session pool. Creating a probe must not connect yet.
+     */
+    interface NodeProbe {
+        /**
+         * Throws if the server cannot be reached or does not answer.
+         */
+        void check() throws Exception;
+
+        /**
+         * Drops any connection, so the next check reconnects.
+         */
+        void close();
+    }
+}
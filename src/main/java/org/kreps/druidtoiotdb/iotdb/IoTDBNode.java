@@ -0,0 +1,268 @@
+package org.kreps.druidtoiotdb.iotdb;
+
+import org.apache.iotdb.rpc.IoTDBConnectionException;
+import org.apache.iotdb.session.pool.SessionPool;
+import org.kreps.druidtoiotdb.config.IoTDBSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * One IoTDB DataNode endpoint: its session pool, in-flight count, latency estimate and health.
+ *
+ * A node is ejected after repeated connection failures on real operations and re-admitted by the
+ * connection monitor once a probe through its dedicated session succeeds, at which point its pool is
+ * replaced by a fresh generation.
+ */
+class IoTDBNode {
+    private static final Logger logger = LoggerFactory.getLogger(IoTDBNode.class);
+
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    private final String host;
+    private final int port;
+    private final IoTDBSettings settings;
+    private final IoTDBClientFactory clientFactory;
+    private final IoTDBClientFactory.NodeProbe probe;
+    private final AtomicReference<PoolGeneration> current = new AtomicReference<>();
+    private final AtomicInteger generationCounter = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private volatile double latencyMicros;
+    private volatile long lastSuccessNanos = System.nanoTime();
+    private volatile boolean healthy = true;
+    private volatile boolean closed = false;
+
+    IoTDBNode(String nodeUrl, IoTDBSettings settings, IoTDBClientFactory clientFactory) {
+        int separator = nodeUrl.lastIndexOf(':');
+        this.host = nodeUrl.substring(0, separator);
+        this.port = Integer.parseInt(nodeUrl.substring(separator + 1));
+        this.settings = settings;
+        this.clientFactory = clientFactory;
+        this.probe = clientFactory.createProbe(host, port, settings);
+        current.set(createGeneration());
+    }
+
+    String getUrl() {
+        return host + ":" + port;
+    }
+
+    boolean isHealthy() {
+        return healthy;
+    }
+
+    int getInFlight() {
+        return inFlight.get();
+    }
+
+    double getLatencyMillis() {
+        return latencyMicros / 1000;
+    }
+
+    private PoolGeneration createGeneration() {
+        SessionPool sessionPool = clientFactory.createSessionPool(host, port, settings);
+        return new PoolGeneration(sessionPool, generationCounter.incrementAndGet());
+    }
+
+    <T> T execute(IoTDBSessionPool.PoolOperation<T> operation) throws Exception {
+        PoolGeneration generation = lease();
+        inFlight.incrementAndGet();
+        long startNanos = System.nanoTime();
+        try {
+            T result = operation.apply(generation.sessionPool);
+            recordSuccess(System.nanoTime() - startNanos);
+            return result;
+        } catch (Exception e) {
+            recordFailure(e);
+            throw e;
+        } finally {
+            inFlight.decrementAndGet();
+            generation.release();
+        }
+    }
+
+    private PoolGeneration lease() throws IoTDBConnectionException {
+        while (true) {
+            PoolGeneration generation = current.get();
+            if (generation.tryAcquire()) {
+                return generation;
+            }
+            // A retired generation is only left in place once the node itself is closed
+            if (closed) {
+                throw new IoTDBConnectionException("IoTDB SessionPool for " + getUrl() + " is closed");
+            }
+        }
+    }
+
+    private void recordSuccess(long elapsedNanos) {
+        double micros = elapsedNanos / 1000.0;
+        double previous = latencyMicros;
+        latencyMicros = previous == 0 ? micros : previous + LATENCY_SMOOTHING * (micros - previous);
+        lastSuccessNanos = System.nanoTime();
+        consecutiveFailures.set(0);
+        if (!healthy) {
+            logger.info("IoTDB node {} connection restored", getUrl());
+            healthy = true;
+        }
+    }
+
+    private void recordFailure(Exception e) {
+        // Statement errors and pool checkout timeouts say nothing about the server connection
+        if (!isConnectionFailure(e)) {
+            return;
+        }
+        int failures = consecutiveFailures.incrementAndGet();
+        if (failures >= FAILURE_THRESHOLD && healthy) {
+            logger.error("Ejecting IoTDB node {} after {} consecutive connection failures: {}",
+                    getUrl(), failures, e.getMessage());
+            healthy = false;
+        }
+    }
+
+    private static boolean isConnectionFailure(Throwable e) {
+        while (e != null) {
+            if (e instanceof IoTDBConnectionException && !isCheckoutTimeout(e)) {
+                return true;
+            }
+            e = e.getCause();
+        }
+        return false;
+    }
+
+    private static boolean isCheckoutTimeout(Throwable e) {
+        return e.getMessage() != null && e.getMessage().contains("timeout to get a connection");
+    }
+
+    /**
+     * Called periodically by the connection monitor. Healthy nodes are probed only after being idle;
+     * ejected nodes are probed every time and re-admitted with a fresh pool once the probe succeeds.
+     */
+    void checkConnection(long idleProbeAfterMs) {
+        if (healthy) {
+            long idleMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastSuccessNanos);
+            if (idleMs < idleProbeAfterMs) {
+                return;
+            }
+            if (probe()) {
+                lastSuccessNanos = System.nanoTime();
+                return;
+            }
+            logger.error("Ejecting IoTDB node {}: idle probe failed", getUrl());
+            healthy = false;
+            return;
+        }
+
+        if (probe()) {
+            swapSessionPool();
+            consecutiveFailures.set(0);
+            lastSuccessNanos = System.nanoTime();
+            healthy = true;
+            logger.info("IoTDB node {} re-admitted", getUrl());
+        } else {
+            logger.error("IoTDB node {} is not available", getUrl());
+        }
+    }
+
+    /**
+     * Checks the server through the dedicated probe, never through the shared pool.
+     */
+    private boolean probe() {
+        try {
+            probe.check();
+            return true;
+        } catch (Exception e) {
+            logger.warn("IoTDB probe of {} failed: {}", getUrl(), e.getMessage());
+            closeProbeSession();
+            return false;
+        }
+    }
+
+    void closeProbeSession() {
+        probe.close();
+    }
+
+    /**
+     * Replaces the current pool with a fresh one. The old generation stops handing out leases immediately
+     * and is closed by whichever caller releases its last lease.
+     */
+    private void swapSessionPool() {
+        logger.info("Replacing IoTDB SessionPool for {}...", getUrl());
+        PoolGeneration replacement;
+        try {
+            replacement = createGeneration();
+        } catch (RuntimeException e) {
+            logger.error("Failed to replace IoTDB SessionPool for {}: {}", getUrl(), e.getMessage());
+            return;
+        }
+        PoolGeneration old = current.getAndSet(replacement);
+        old.retire();
+        logger.info("IoTDB SessionPool for {} generation {} replaced generation {} ({} leases draining)",
+                getUrl(), replacement.id, old.id, old.activeLeases());
+    }
+
+    void close() {
+        closed = true;
+        current.get().retire();
+    }
+
+    /**
+     * One pool instance plus the number of callers currently using it. The lease count is shifted left by
+     * one bit and the low bit marks the generation as retired, so acquiring a lease and retiring the pool
+     * can never race.
+     */
+    private static final class PoolGeneration {
+        private final SessionPool sessionPool;
+        private final int id;
+        private final AtomicInteger state = new AtomicInteger();
+        private final AtomicBoolean closed = new AtomicBoolean(false);
+
+        PoolGeneration(SessionPool sessionPool, int id) {
+            this.sessionPool = sessionPool;
+            this.id = id;
+        }
+
+        boolean tryAcquire() {
+            while (true) {
+                int value = state.get();
+                if ((value & 1) != 0) {
+                    return false;
+                }
+                if (state.compareAndSet(value, value + 2)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (state.addAndGet(-2) == 1) {
+                closePool();
+            }
+        }
+
+        void retire() {
+            if (state.getAndUpdate(value -> value | 1) == 0) {
+                closePool();
+            }
+        }
+
+        int activeLeases() {
+            return state.get() >>> 1;
+        }
+
+        private void closePool() {
+            if (closed.compareAndSet(false, true)) {
+                try {
+                    sessionPool.close();
+                    logger.info("Closed drained IoTDB SessionPool generation {}", id);
+                } catch (Exception e) {
+                    logger.warn("Error while closing old session pool: {}", e.getMessage());
+                }
+            }
+        }
+    }
+}
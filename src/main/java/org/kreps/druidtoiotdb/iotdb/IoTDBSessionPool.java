@@ -1,118 +1,201 @@
 package org.kreps.druidtoiotdb.iotdb;
 
+import org.apache.iotdb.rpc.IoTDBConnectionException;
 import org.apache.iotdb.session.pool.SessionPool;
 import org.kreps.druidtoiotdb.config.AppConfig;
 import org.kreps.druidtoiotdb.config.IoTDBSettings;
-import org.kreps.druidtoiotdb.utils.RetryUtils;
+import org.kreps.druidtoiotdb.metrics.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Owns the IoTDB session pools used by all writers, one per configured DataNode.
+ *
+ * Each operation run through {@link #execute(PoolStage, PoolOperation)} goes to the healthy node with the
+ * fewest in-flight calls, preferring the lower observed latency on ties. Node health is inferred from the
+ * outcome of real operations; a dedicated probe session outside the pool is only used when a node has been
+ * idle or has been ejected, so a saturated pool can no longer fail its own health check. A broken pool is
+ * replaced by atomically swapping in a new generation; the old pool is closed only after every lease on it
+ * has been released, so no caller ever sees its pool closed in the middle of an RPC.
+ *
+ * Every checkout also passes through a {@link SessionCheckoutLimiter}, which attributes wait and hold
+ * time to the calling {@link PoolStage} and adapts the effective concurrency. Its bounds scale with the
+ * number of healthy nodes, so every added node contributes its pool's worth of concurrency. With
+ * redirection enabled the client routes each tablet to the node leading the device's region, falling back
+ * to the chosen node.
+ */
 public class IoTDBSessionPool implements AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(IoTDBSessionPool.class);
 
-    private SessionPool sessionPool;
-
     private static final int CONNECTION_CHECK_INTERVAL_MS = 5000;
-    private volatile boolean isAvailable = true;
+    private static final long IDLE_PROBE_AFTER_MS = 30000;
+    private static final int ADJUST_EVERY_CHECKS = 2;
+    private static final int STATS_LOG_EVERY_CHECKS = 6;
+    private static final String MBEAN_NAME = "org.kreps.druidtoiotdb:type=SessionPool";
+
+    @FunctionalInterface
+    public interface PoolOperation<T> {
+        T apply(SessionPool sessionPool) throws Exception;
+    }
+
+    private final List<IoTDBNode> nodes;
+    private final SessionCheckoutLimiter checkoutLimiter;
     private final AtomicBoolean shutdownInitiated = new AtomicBoolean(false);
     private Thread connectionMonitorThread;
-    private final AppConfig config;
 
     public IoTDBSessionPool(AppConfig config) {
-        logger.info("Initializing IoTDB SessionPool with pool size: {}",
-                config.getDestinationConfig().getIotdbSettings().getSessionPoolSize());
-        this.config = config;
-        initializeSessionPool(config.getDestinationConfig().getIotdbSettings());
+        this(config, IoTDBClientFactory.DEFAULT);
+    }
+
+    public IoTDBSessionPool(AppConfig config, IoTDBClientFactory clientFactory) {
+        IoTDBSettings settings = config.getDestinationConfig().getIotdbSettings();
+        logger.info("Initializing IoTDB SessionPool with pool size: {} for nodes {}",
+                settings.getSessionPoolSize(), settings.getNodeUrls());
+        this.checkoutLimiter = new SessionCheckoutLimiter(
+                settings.getMinSessionPoolSize(), settings.getSessionPoolSize());
+        this.nodes = Collections.unmodifiableList(createNodes(settings, clientFactory));
+        checkoutLimiter.setNodeCount(nodes.size());
+        logger.info("IoTDB SessionPool initialized successfully");
+        registerMBean();
         startConnectionMonitor();
     }
 
-    private void initializeSessionPool(IoTDBSettings settings) {
+    private List<IoTDBNode> createNodes(IoTDBSettings settings, IoTDBClientFactory clientFactory) {
+        List<IoTDBNode> created = new ArrayList<>();
         try {
-            this.sessionPool = new SessionPool.Builder()
-                    .host(settings.getHost())
-                    .port(settings.getPort())
-                    .user(settings.getUsername())
-                    .password(settings.getPassword())
-                    .maxSize(settings.getSessionPoolSize())
-                    .build();
-            isAvailable = true;
-            logger.info("IoTDB SessionPool initialized successfully");
+            for (String nodeUrl : settings.getNodeUrls()) {
+                created.add(new IoTDBNode(nodeUrl, settings, clientFactory));
+            }
+            return created;
         } catch (Exception e) {
-            isAvailable = false;
             logger.error("Failed to initialize IoTDB SessionPool: {}", e.getMessage());
+            created.forEach(IoTDBNode::close);
             throw new RuntimeException(e);
         }
     }
 
-    private synchronized void reinitializeSessionPool() {
-        logger.info("Reinitializing IoTDB SessionPool...");
-        if (sessionPool != null) {
-            try {
-                sessionPool.close();
-            } catch (Exception e) {
-                logger.warn("Error while closing old session pool: {}", e.getMessage());
+    /**
+     * Runs an operation on a leased pool of the least loaded healthy node and records its outcome as a
+     * health signal for that node. The lease keeps the pool open for the duration of the call even if a
+     * replacement is swapped in concurrently.
+     */
+    public <T> T execute(PoolStage stage, PoolOperation<T> operation) throws Exception {
+        long acquiredNanos = checkoutLimiter.acquire(stage, System.nanoTime());
+        try {
+            return selectNode().execute(operation);
+        } finally {
+            long releasedNanos = System.nanoTime();
+            checkoutLimiter.release(stage, acquiredNanos, releasedNanos);
+            recordCall(stage, releasedNanos - acquiredNanos);
+        }
+    }
+
+    private static void recordCall(PoolStage stage, long elapsedNanos) {
+        if (stage == PoolStage.WRITER) {
+            MetricsRegistry.get().recordNanos(MetricsRegistry.Timer.IOTDB_INSERT, elapsedNanos);
+        } else if (stage == PoolStage.SCHEMA) {
+            MetricsRegistry.get().increment(MetricsRegistry.Counter.SCHEMA_CALLS);
+            MetricsRegistry.get().recordNanos(MetricsRegistry.Timer.SCHEMA_CALL, elapsedNanos);
+        }
+    }
+
+    private IoTDBNode selectNode() throws IoTDBConnectionException {
+        if (shutdownInitiated.get()) {
+            throw new IoTDBConnectionException("IoTDB SessionPool is closed");
+        }
+        IoTDBNode selected = null;
+        for (IoTDBNode node : nodes) {
+            if (!node.isHealthy()) {
+                continue;
             }
+            if (selected == null
+                    || node.getInFlight() < selected.getInFlight()
+                    || (node.getInFlight() == selected.getInFlight()
+                            && node.getLatencyMillis() < selected.getLatencyMillis())) {
+                selected = node;
+            }
+        }
+        if (selected == null) {
+            throw new IoTDBConnectionException("No IoTDB node is available");
         }
+        return selected;
+    }
 
-        IoTDBSettings settings = config.getDestinationConfig().getIotdbSettings();
-        try {
-            this.sessionPool = new SessionPool.Builder()
-                    .host(settings.getHost())
-                    .port(settings.getPort())
-                    .user(settings.getUsername())
-                    .password(settings.getPassword())
-                    .maxSize(settings.getSessionPoolSize())
-                    .build();
-            isAvailable = true;
-            logger.info("IoTDB SessionPool reinitialized successfully");
-        } catch (Exception e) {
-            isAvailable = false;
-            logger.error("Failed to reinitialize IoTDB SessionPool: {}", e.getMessage());
+    public boolean isAvailable() {
+        for (IoTDBNode node : nodes) {
+            if (node.isHealthy()) {
+                return true;
+            }
         }
+        return false;
     }
 
-    public SessionPool getSessionPool() {
-        return sessionPool;
+    public SessionCheckoutLimiter getCheckoutLimiter() {
+        return checkoutLimiter;
     }
 
-    public boolean checkConnection() {
+    private String nodeSummary() {
+        StringBuilder builder = new StringBuilder();
+        for (IoTDBNode node : nodes) {
+            if (builder.length() > 0) {
+                builder.append(", ");
+            }
+            builder.append(String.format("%s %s in-flight %d latency %.1fms",
+                    node.getUrl(), node.isHealthy() ? "up" : "ejected", node.getInFlight(), node.getLatencyMillis()));
+        }
+        return builder.toString();
+    }
+
+    private void registerMBean() {
         try {
-            return RetryUtils.executeWithRetry(() -> {
-                try {
-                    sessionPool.executeQueryStatement("show databases");
-                    if (!isAvailable) {
-                        logger.info("IoTDB connection restored");
-                        isAvailable = true;
-                    }
-                    return true;
-                } catch (Exception e) {
-                    if (e.getMessage().contains("timeout to get a connection")) {
-                        logger.warn("Connection pool timeout, attempting to reinitialize...");
-                        reinitializeSessionPool();
-                        throw e; // Let retry mechanism handle it
-                    }
-                    throw e;
-                }
-            }, config.getRetryConfig(), "IoTDB connection check");
-        } catch (Exception e) {
-            if (isAvailable) {
-                logger.error("IoTDB connection lost: {}", e.getMessage());
-                isAvailable = false;
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(checkoutLimiter, name);
             }
-            return false;
+        } catch (Exception e) {
+            logger.warn("Failed to register session pool MBean: {}", e.getMessage());
         }
     }
 
-    public boolean isAvailable() {
-        return isAvailable;
+    private void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            logger.debug("Failed to unregister session pool MBean: {}", e.getMessage());
+        }
     }
 
     private void startConnectionMonitor() {
         connectionMonitorThread = new Thread(() -> {
+            long checks = 0;
             while (!shutdownInitiated.get()) {
-                if (!checkConnection()) {
-                    logger.error("IoTDB connection is not available");
+                int healthy = 0;
+                for (IoTDBNode node : nodes) {
+                    node.checkConnection(IDLE_PROBE_AFTER_MS);
+                    if (node.isHealthy()) {
+                        healthy++;
+                    }
+                }
+                checkoutLimiter.setNodeCount(healthy);
+                checks++;
+                if (checks % ADJUST_EVERY_CHECKS == 0) {
+                    checkoutLimiter.adjust();
+                }
+                if (checks % STATS_LOG_EVERY_CHECKS == 0) {
+                    logger.info("Session pool: {}; nodes: {}", checkoutLimiter.summary(), nodeSummary());
                 }
                 try {
                     Thread.sleep(CONNECTION_CHECK_INTERVAL_MS);
@@ -121,6 +204,7 @@ public class IoTDBSessionPool implements AutoCloseable {
                     break;
                 }
             }
+            nodes.forEach(IoTDBNode::closeProbeSession);
         }, "IoTDB-Connection-Monitor");
         connectionMonitorThread.setDaemon(true);
         connectionMonitorThread.start();
@@ -132,10 +216,9 @@ public class IoTDBSessionPool implements AutoCloseable {
         if (connectionMonitorThread != null) {
             connectionMonitorThread.interrupt();
         }
-        if (sessionPool != null) {
-            logger.info("Closing IoTDB SessionPool");
-            sessionPool.close();
-            logger.info("IoTDB SessionPool closed successfully");
-        }
+        logger.info("Closing IoTDB SessionPool. Final checkout stats: {}", checkoutLimiter.summary());
+        unregisterMBean();
+        nodes.forEach(IoTDBNode::close);
+        logger.info("IoTDB SessionPool closed successfully");
     }
 }
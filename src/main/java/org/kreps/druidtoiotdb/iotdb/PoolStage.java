@@ -0,0 +1,10 @@
+package org.kreps.druidtoiotdb.iotdb;
+
+/**
+ * Component on whose behalf a session is checked out of the pool, used to attribute wait and hold time.
+ */
+public enum PoolStage {
+    WRITER,
+    SCHEMA,
+    RESUME
+}
@@ -0,0 +1,254 @@
+package org.kreps.druidtoiotdb.iotdb;
+
+import org.kreps.druidtoiotdb.metrics.LatencyHistogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Gate in front of the session pool that records how long callers wait for a session and how long they
+ * hold it, per {@link PoolStage}, and adapts the number of concurrent checkouts between configured bounds.
+ *
+ * The limit grows while callers spend a large share of their time waiting for a permit compared to the
+ * time the server takes to answer, and shrinks when server-side latency climbs well above its baseline.
+ * The bounds are given per DataNode and scale with the number of healthy nodes, since every node has its
+ * own pool sized at the per-node upper bound; a caller holding a permit therefore never waits inside a pool.
+ */
+public class SessionCheckoutLimiter implements SessionPoolMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(SessionCheckoutLimiter.class);
+
+    private static final int MIN_WINDOW_SAMPLES = 20;
+    private static final double LATENCY_INCREASE_FACTOR = 2.0;
+    private static final double WAIT_TO_HOLD_RATIO = 0.5;
+    private static final double DECREASE_FACTOR = 0.75;
+
+    private final ResizableSemaphore permits;
+    private final int minPerNode;
+    private final int maxPerNode;
+    private volatile int nodeCount = 1;
+    private volatile int minConcurrency;
+    private volatile int maxConcurrency;
+    private volatile int concurrencyLimit;
+
+    private final AtomicInteger inUse = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final Map<PoolStage, LatencyHistogram> waitHistograms = new EnumMap<>(PoolStage.class);
+    private final Map<PoolStage, LatencyHistogram> holdHistograms = new EnumMap<>(PoolStage.class);
+
+    // Sums for the current adjustment window
+    private final LongAdder windowCount = new LongAdder();
+    private final LongAdder windowWaitMicros = new LongAdder();
+    private final LongAdder windowHoldMicros = new LongAdder();
+    private double baselineHoldMicros;
+
+    /**
+     * @param minConcurrency lower bound of concurrent checkouts per healthy node
+     * @param maxConcurrency upper bound of concurrent checkouts per healthy node, the size of each node's pool
+     */
+    public SessionCheckoutLimiter(int minConcurrency, int maxConcurrency) {
+        this.minPerNode = Math.max(1, Math.min(minConcurrency, maxConcurrency));
+        this.maxPerNode = maxConcurrency;
+        this.minConcurrency = minPerNode;
+        this.maxConcurrency = maxConcurrency;
+        this.concurrencyLimit = maxConcurrency;
+        this.permits = new ResizableSemaphore(maxConcurrency);
+        for (PoolStage stage : PoolStage.values()) {
+            waitHistograms.put(stage, new LatencyHistogram());
+            holdHistograms.put(stage, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Blocks until a permit is available and returns the acquisition timestamp to pass to
+     * {@link #release(PoolStage, long, long)}.
+     */
+    public long acquire(PoolStage stage, long requestedNanos) throws InterruptedException {
+        waiting.incrementAndGet();
+        try {
+            permits.acquire();
+        } finally {
+            waiting.decrementAndGet();
+        }
+        long acquiredNanos = System.nanoTime();
+        long waitNanos = acquiredNanos - requestedNanos;
+        waitHistograms.get(stage).recordNanos(waitNanos);
+        windowWaitMicros.add(waitNanos / 1000);
+        inUse.incrementAndGet();
+        return acquiredNanos;
+    }
+
+    public void release(PoolStage stage, long acquiredNanos, long releasedNanos) {
+        long holdNanos = releasedNanos - acquiredNanos;
+        holdHistograms.get(stage).recordNanos(holdNanos);
+        windowHoldMicros.add(holdNanos / 1000);
+        windowCount.increment();
+        inUse.decrementAndGet();
+        permits.release();
+    }
+
+    /**
+     * Re-evaluates the concurrency limit from the checkouts observed since the previous call. Called
+     * periodically from a single thread.
+     */
+    public void adjust() {
+        long samples = windowCount.sumThenReset();
+        long waitMicros = windowWaitMicros.sumThenReset();
+        long holdMicros = windowHoldMicros.sumThenReset();
+        if (samples < MIN_WINDOW_SAMPLES) {
+            return;
+        }
+
+        double avgWait = (double) waitMicros / samples;
+        double avgHold = (double) holdMicros / samples;
+        if (baselineHoldMicros == 0 || avgHold < baselineHoldMicros) {
+            baselineHoldMicros = avgHold;
+        } else {
+            // Let the baseline drift up slowly so a permanent shift in server latency is eventually accepted
+            baselineHoldMicros += (avgHold - baselineHoldMicros) / 20;
+        }
+
+        int limit = concurrencyLimit;
+        if (avgHold > baselineHoldMicros * LATENCY_INCREASE_FACTOR && limit > minConcurrency) {
+            int newLimit = Math.max(minConcurrency, (int) (limit * DECREASE_FACTOR));
+            resize(newLimit);
+            logger.info("Session pool concurrency {} -> {}: server latency {}ms above baseline {}ms",
+                    limit, newLimit, formatMillis(avgHold), formatMillis(baselineHoldMicros));
+        } else if (avgWait > avgHold * WAIT_TO_HOLD_RATIO && limit < maxConcurrency) {
+            resize(limit + 1);
+            logger.info("Session pool concurrency {} -> {}: checkout wait {}ms against server latency {}ms",
+                    limit, limit + 1, formatMillis(avgWait), formatMillis(avgHold));
+        }
+    }
+
+    /**
+     * Scales the bounds, and the current limit with them, to the given number of healthy nodes. With no
+     * healthy node the bounds of one node are kept, so callers queue here instead of failing in bulk.
+     */
+    public synchronized void setNodeCount(int healthyNodes) {
+        int count = Math.max(1, healthyNodes);
+        if (count == nodeCount) {
+            return;
+        }
+        int limit = concurrencyLimit;
+        int newLimit = Math.max(minPerNode * count, Math.min(maxPerNode * count, limit * count / nodeCount));
+        logger.info("Session pool bounds scaled from {} to {} healthy nodes: concurrency {} -> {} (max {})",
+                nodeCount, count, limit, newLimit, maxPerNode * count);
+        nodeCount = count;
+        minConcurrency = minPerNode * count;
+        maxConcurrency = maxPerNode * count;
+        resize(newLimit);
+    }
+
+    private static String formatMillis(double micros) {
+        return String.format("%.1f", micros / 1000);
+    }
+
+    private synchronized void resize(int newLimit) {
+        int delta = newLimit - concurrencyLimit;
+        if (delta > 0) {
+            permits.release(delta);
+        } else if (delta < 0) {
+            permits.reducePermits(-delta);
+        }
+        concurrencyLimit = newLimit;
+    }
+
+    public LatencyHistogram getHoldHistogram(PoolStage stage) {
+        return holdHistograms.get(stage);
+    }
+
+    public String summary() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format("limit %d/%d, in use %d, waiting %d",
+                concurrencyLimit, maxConcurrency, inUse.get(), waiting.get()));
+        for (PoolStage stage : PoolStage.values()) {
+            LatencyHistogram wait = waitHistograms.get(stage);
+            if (wait.getCount() == 0) {
+                continue;
+            }
+            LatencyHistogram hold = holdHistograms.get(stage);
+            builder.append(String.format("; %s checkouts %d wait p50/p99 %.1f/%.1fms hold p50/p99 %.1f/%.1fms",
+                    stage, wait.getCount(),
+                    wait.getPercentileMillis(0.50), wait.getPercentileMillis(0.99),
+                    hold.getPercentileMillis(0.50), hold.getPercentileMillis(0.99)));
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    @Override
+    public int getMinConcurrency() {
+        return minConcurrency;
+    }
+
+    @Override
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    @Override
+    public int getInUse() {
+        return inUse.get();
+    }
+
+    @Override
+    public int getWaiting() {
+        return waiting.get();
+    }
+
+    @Override
+    public long getCheckouts() {
+        return waitHistograms.values().stream().mapToLong(LatencyHistogram::getCount).sum();
+    }
+
+    @Override
+    public double getWriterWaitP50Millis() {
+        return waitHistograms.get(PoolStage.WRITER).getPercentileMillis(0.50);
+    }
+
+    @Override
+    public double getWriterWaitP99Millis() {
+        return waitHistograms.get(PoolStage.WRITER).getPercentileMillis(0.99);
+    }
+
+    @Override
+    public double getWriterHoldP50Millis() {
+        return holdHistograms.get(PoolStage.WRITER).getPercentileMillis(0.50);
+    }
+
+    @Override
+    public double getWriterHoldP99Millis() {
+        return holdHistograms.get(PoolStage.WRITER).getPercentileMillis(0.99);
+    }
+
+    @Override
+    public Map<String, String> getStageSummary() {
+        Map<String, String> stages = new LinkedHashMap<>();
+        for (PoolStage stage : PoolStage.values()) {
+            stages.put(stage.name(), String.format("wait %s; hold %s",
+                    waitHistograms.get(stage), holdHistograms.get(stage)));
+        }
+        return stages;
+    }
+
+    private static final class ResizableSemaphore extends Semaphore {
+        ResizableSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+}
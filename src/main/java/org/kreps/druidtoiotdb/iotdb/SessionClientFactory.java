@@ -0,0 +1,76 @@
+package org.kreps.druidtoiotdb.iotdb;
+
+import org.apache.iotdb.isession.SessionDataSet;
+import org.apache.iotdb.session.Session;
+import org.apache.iotdb.session.pool.SessionPool;
+import org.kreps.druidtoiotdb.config.IoTDBSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Clients connected to a real IoTDB server.
+ */
+class SessionClientFactory implements IoTDBClientFactory {
+    private static final Logger logger = LoggerFactory.getLogger(SessionClientFactory.class);
+
+    @Override
+    public SessionPool createSessionPool(String host, int port, IoTDBSettings settings) {
+        return new SessionPool.Builder()
+                .host(host)
+                .port(port)
+                .user(settings.getUsername())
+                .password(settings.getPassword())
+                .maxSize(settings.getSessionPoolSize())
+                .enableRedirection(settings.isEnableRedirection())
+                .build();
+    }
+
+    @Override
+    public NodeProbe createProbe(String host, int port, IoTDBSettings settings) {
+        return new SessionProbe(host, port, settings);
+    }
+
+    /**
+     * Runs {@code show databases} through a dedicated session, opened on the first check.
+     */
+    private static final class SessionProbe implements NodeProbe {
+        private final String host;
+        private final int port;
+        private final IoTDBSettings settings;
+        private Session session;
+
+        SessionProbe(String host, int port, IoTDBSettings settings) {
+            this.host = host;
+            this.port = port;
+            this.settings = settings;
+        }
+
+        @Override
+        public void check() throws Exception {
+            if (session == null) {
+                Session opened = new Session.Builder()
+                        .host(host)
+                        .port(port)
+                        .username(settings.getUsername())
+                        .password(settings.getPassword())
+                        .build();
+                opened.open(false);
+                session = opened;
+            }
+            SessionDataSet dataSet = session.executeQueryStatement("show databases");
+            dataSet.closeOperationHandle();
+        }
+
+        @Override
+        public void close() {
+            if (session != null) {
+                try {
+                    session.close();
+                } catch (Exception e) {
+                    logger.debug("Error while closing probe session: {}", e.getMessage());
+                }
+                session = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.kreps.druidtoiotdb.iotdb;
+
+import java.util.Map;
+
+/**
+ * JMX view of session checkout statistics and the adaptive concurrency limit.
+ */
+public interface SessionPoolMXBean {
+    int getConcurrencyLimit();
+
+    int getMinConcurrency();
+
+    int getMaxConcurrency();
+
+    int getInUse();
+
+    int getWaiting();
+
+    long getCheckouts();
+
+    // Percentiles for writer checkouts; other stages are listed in the stage summary
+    double getWriterWaitP50Millis();
+
+    double getWriterWaitP99Millis();
+
+    double getWriterHoldP50Millis();
+
+    double getWriterHoldP99Millis();
+
+    Map<String, String> getStageSummary();
+}
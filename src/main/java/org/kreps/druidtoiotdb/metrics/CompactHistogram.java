@@ -0,0 +1,89 @@
+package org.kreps.druidtoiotdb.metrics;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Small latency histogram for per-tag and per-device statistics, where a {@link LatencyHistogram} per key
+ * would cost several kilobytes each.
+ *
+ * Values are recorded in microseconds up to about 12 days. Every power of two is split into 4 linear
+ * sub-buckets, which keeps the relative error of reported percentiles under about 25% in about 600 bytes.
+ * Recording never allocates.
+ */
+public class CompactHistogram {
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private final AtomicIntegerArray buckets = new AtomicIntegerArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+
+    public void recordNanos(long nanos) {
+        long micros = Math.min(MAX_VALUE, Math.max(0, nanos / 1000));
+        buckets.incrementAndGet(bucketIndex(micros));
+        count.increment();
+        sumMicros.add(micros);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public double getMeanMillis() {
+        long n = count.sum();
+        return n == 0 ? 0.0 : sumMicros.sum() / (n * 1000.0);
+    }
+
+    public double getTotalMillis() {
+        return sumMicros.sum() / 1000.0;
+    }
+
+    /**
+     * Returns the upper bound, in milliseconds, of the bucket holding the given quantile (0.0 - 1.0).
+     */
+    public double getPercentileMillis(double quantile) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += buckets.get(i);
+        }
+        if (total == 0) {
+            return 0.0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return bucketUpperBound(i) / 1000.0;
+            }
+        }
+        return MAX_VALUE / 1000.0;
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index + 1 >= BUCKET_COUNT) {
+            return MAX_VALUE;
+        }
+        int next = index + 1;
+        if (next < SUB_BUCKETS) {
+            return next - 1;
+        }
+        int exponent = next / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = next % SUB_BUCKETS;
+        return ((SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
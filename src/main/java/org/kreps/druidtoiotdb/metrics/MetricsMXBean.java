@@ -0,0 +1,25 @@
+package org.kreps.druidtoiotdb.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of the transfer metrics kept in {@link MetricsRegistry}.
+ */
+public interface MetricsMXBean {
+    long getPointsFetched();
+
+    long getPointsWritten();
+
+    long getRetries();
+
+    double getDruidRequestP99Millis();
+
+    double getInsertP99Millis();
+
+    // Every counter, timer and gauge by its metric name
+    Map<String, Long> getCounters();
+
+    Map<String, String> getTimers();
+
+    Map<String, Long> getGauges();
+}
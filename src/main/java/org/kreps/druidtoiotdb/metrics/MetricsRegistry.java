@@ -0,0 +1,264 @@
+package org.kreps.druidtoiotdb.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Process-wide counters, latency timers and gauges for every stage of the transfer.
+ *
+ * Counters and timers are fixed sets indexed by enum ordinal, so recording one is a {@link LongAdder}
+ * increment or a {@link LatencyHistogram} record and never allocates. Gauges such as buffer occupancy are
+ * read only when a summary is taken. A reporter thread logs a summary with rates since the previous one,
+ * and the same data is exposed over JMX.
+ */
+public final class MetricsRegistry implements MetricsMXBean {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsRegistry.class);
+    private static final String MBEAN_NAME = "org.kreps.druidtoiotdb:type=Metrics";
+
+    public enum Counter {
+        DRUID_REQUESTS("druid.requests"),
+        DRUID_BYTES("druid.bytes"),
+        POINTS_FETCHED("points.fetched"),
+        POINTS_DECODED("points.decoded"),
+        POINTS_WRITTEN("points.written"),
+        TABLETS_WRITTEN("tablets.written"),
+        RETRIES("retries"),
+        SCHEMA_CALLS("schema.calls");
+
+        private final String metricName;
+
+        Counter(String metricName) {
+            this.metricName = metricName;
+        }
+
+        public String getMetricName() {
+            return metricName;
+        }
+    }
+
+    public enum Timer {
+        DRUID_REQUEST("druid.request"),
+        TABLET_BUILD("tablet.build"),
+        IOTDB_INSERT("iotdb.insert"),
+        SCHEMA_CALL("schema.call");
+
+        private final String metricName;
+
+        Timer(String metricName) {
+            this.metricName = metricName;
+        }
+
+        public String getMetricName() {
+            return metricName;
+        }
+    }
+
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    private final LongAdder[] counters = new LongAdder[Counter.values().length];
+    private final LatencyHistogram[] timers = new LatencyHistogram[Timer.values().length];
+    private final Map<String, LongSupplier> gauges = new ConcurrentSkipListMap<>();
+
+    // Counter values at the previous report, only touched by the reporter
+    private final long[] reported = new long[Counter.values().length];
+    private long reportedNanos = System.nanoTime();
+    private Thread reporterThread;
+
+    private MetricsRegistry() {
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        for (int i = 0; i < timers.length; i++) {
+            timers[i] = new LatencyHistogram();
+        }
+    }
+
+    public static MetricsRegistry get() {
+        return INSTANCE;
+    }
+
+    public void increment(Counter counter) {
+        counters[counter.ordinal()].increment();
+    }
+
+    public void add(Counter counter, long amount) {
+        counters[counter.ordinal()].add(amount);
+    }
+
+    public long getCount(Counter counter) {
+        return counters[counter.ordinal()].sum();
+    }
+
+    public void recordNanos(Timer timer, long nanos) {
+        timers[timer.ordinal()].recordNanos(nanos);
+    }
+
+    public LatencyHistogram timer(Timer timer) {
+        return timers[timer.ordinal()];
+    }
+
+    /**
+     * Registers a value read when a summary is taken. A gauge registered under an existing name replaces it.
+     */
+    public void registerGauge(String name, LongSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    public void removeGauge(String name) {
+        gauges.remove(name);
+    }
+
+    /**
+     * Registers the MBean and starts logging a summary every {@code intervalSeconds} at DEBUG level; the
+     * {@link ProgressReporter} logs the INFO status line. 0 disables the log.
+     */
+    public synchronized void start(int intervalSeconds) {
+        registerMBean();
+        if (intervalSeconds <= 0 || reporterThread != null) {
+            return;
+        }
+        long intervalMs = TimeUnit.SECONDS.toMillis(intervalSeconds);
+        reporterThread = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(intervalMs);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Metrics: {}", summary());
+                }
+            }
+        }, "Metrics-Reporter");
+        reporterThread.setDaemon(true);
+        reporterThread.start();
+    }
+
+    /**
+     * Stops the reporter, logs the final totals and unregisters the MBean.
+     */
+    public synchronized void close() {
+        if (reporterThread != null) {
+            reporterThread.interrupt();
+            reporterThread = null;
+        }
+        logger.info("Final metrics: {}", summary());
+        unregisterMBean();
+    }
+
+    /**
+     * Totals with rates since the previous summary, then timer percentiles and gauges.
+     */
+    public synchronized String summary() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-3, (now - reportedNanos) / 1e9);
+        StringBuilder builder = new StringBuilder();
+        for (Counter counter : Counter.values()) {
+            long value = getCount(counter);
+            builder.append(String.format("%s %d (%.1f/s), ", counter.getMetricName(), value,
+                    (value - reported[counter.ordinal()]) / seconds));
+            reported[counter.ordinal()] = value;
+        }
+        reportedNanos = now;
+        for (Timer timer : Timer.values()) {
+            LatencyHistogram histogram = timers[timer.ordinal()];
+            builder.append(String.format("%s p50/p99 %.1f/%.1fms, ", timer.getMetricName(),
+                    histogram.getPercentileMillis(0.50), histogram.getPercentileMillis(0.99)));
+        }
+        for (Map.Entry<String, Long> gauge : getGauges().entrySet()) {
+            builder.append(String.format("%s %d, ", gauge.getKey(), gauge.getValue()));
+        }
+        builder.setLength(builder.length() - 2);
+        return builder.toString();
+    }
+
+    private void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to register metrics MBean: {}", e.getMessage());
+        }
+    }
+
+    private void unregisterMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(MBEAN_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            logger.debug("Failed to unregister metrics MBean: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public long getPointsFetched() {
+        return getCount(Counter.POINTS_FETCHED);
+    }
+
+    @Override
+    public long getPointsWritten() {
+        return getCount(Counter.POINTS_WRITTEN);
+    }
+
+    @Override
+    public long getRetries() {
+        return getCount(Counter.RETRIES);
+    }
+
+    @Override
+    public double getDruidRequestP99Millis() {
+        return timer(Timer.DRUID_REQUEST).getPercentileMillis(0.99);
+    }
+
+    @Override
+    public double getInsertP99Millis() {
+        return timer(Timer.IOTDB_INSERT).getPercentileMillis(0.99);
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Counter counter : Counter.values()) {
+            values.put(counter.getMetricName(), getCount(counter));
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, String> getTimers() {
+        Map<String, String> values = new LinkedHashMap<>();
+        for (Timer timer : Timer.values()) {
+            values.put(timer.getMetricName(), timers[timer.ordinal()].toString());
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getGauges() {
+        Map<String, Long> values = new LinkedHashMap<>();
+        for (Map.Entry<String, LongSupplier> gauge : gauges.entrySet()) {
+            try {
+                values.put(gauge.getKey(), gauge.getValue().getAsLong());
+            } catch (RuntimeException e) {
+                logger.debug("Failed to read gauge {}: {}", gauge.getKey(), e.getMessage());
+            }
+        }
+        return values;
+    }
+}
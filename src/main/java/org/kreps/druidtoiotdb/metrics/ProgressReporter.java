@@ -0,0 +1,164 @@
+package org.kreps.druidtoiotdb.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Logs one status line per interval in place of a log line per interval fetched or batch written.
+ *
+ * Fetchers and writers only bump {@link LongAdder}s here; the reporter thread turns them into a line of
+ * {@code key=value} pairs with progress over the planned intervals, point rates since the previous line,
+ * error counts and an ETA, e.g.
+ * {@code Progress: units=1200/5000 pct=24.0 fetched=1234567 fetched_rate=12345/s written=1200000
+ * written_rate=12000/s retries=3 failed_units=1 failed_points=0 missing_values=12 eta=0:42:10}.
+ * The ETA assumes the average unit rate since the plan was made holds for the remaining units. In tail
+ * mode nothing is planned, so only completed units are shown and there is no ETA.
+ */
+public final class ProgressReporter {
+    private static final Logger logger = LoggerFactory.getLogger(ProgressReporter.class);
+    private static final ProgressReporter INSTANCE = new ProgressReporter();
+
+    private final LongAdder unitsPlanned = new LongAdder();
+    private final LongAdder unitsCompleted = new LongAdder();
+    private final LongAdder unitsFailed = new LongAdder();
+    private final LongAdder pointsFailed = new LongAdder();
+    private final LongAdder missingValues = new LongAdder();
+    private volatile long plannedAtNanos;
+    private volatile long unitsDoneAtPlan;
+
+    // Counter values at the previous line, only touched by the reporter
+    private long reportedNanos = System.nanoTime();
+    private long reportedFetched;
+    private long reportedWritten;
+    private Thread reporterThread;
+
+    private ProgressReporter() {
+    }
+
+    public static ProgressReporter get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Adds units to fetch to the total the ETA is computed against.
+     */
+    public synchronized void plan(long units) {
+        if (plannedAtNanos == 0) {
+            plannedAtNanos = System.nanoTime();
+            unitsDoneAtPlan = getUnitsDone();
+        }
+        unitsPlanned.add(units);
+    }
+
+    /**
+     * A unit was fetched and handed on to be written.
+     */
+    public void unitCompleted() {
+        unitsCompleted.increment();
+    }
+
+    /**
+     * A unit was given up on and recorded in {@code failed_requests/}.
+     */
+    public void unitFailed() {
+        unitsFailed.increment();
+    }
+
+    /**
+     * Points recorded in {@code failed_writes/}.
+     */
+    public void addFailedPoints(int points) {
+        pointsFailed.add(points);
+    }
+
+    /**
+     * Measurements Druid did not return a value for, left empty in their tablet.
+     */
+    public void addMissingValues(int values) {
+        missingValues.add(values);
+    }
+
+    public long getUnitsDone() {
+        return unitsCompleted.sum() + unitsFailed.sum();
+    }
+
+    /**
+     * Starts logging a status line every {@code intervalSeconds}; 0 disables it.
+     */
+    public synchronized void start(int intervalSeconds) {
+        if (intervalSeconds <= 0 || reporterThread != null) {
+            return;
+        }
+        long intervalMs = TimeUnit.SECONDS.toMillis(intervalSeconds);
+        reporterThread = new Thread(() -> {
+            while (!Thread.currentThread().isInterrupted()) {
+                try {
+                    Thread.sleep(intervalMs);
+                } catch (InterruptedException e) {
+                    break;
+                }
+                logger.info("Progress: {}", statusLine());
+            }
+        }, "Progress-Reporter");
+        reporterThread.setDaemon(true);
+        reporterThread.start();
+    }
+
+    /**
+     * Stops the reporter and logs a last status line.
+     */
+    public synchronized void close() {
+        if (reporterThread != null) {
+            reporterThread.interrupt();
+            reporterThread = null;
+        }
+        logger.info("Progress: {}", statusLine());
+    }
+
+    public synchronized String statusLine() {
+        MetricsRegistry metrics = MetricsRegistry.get();
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-3, (now - reportedNanos) / 1e9);
+        long fetched = metrics.getCount(MetricsRegistry.Counter.POINTS_FETCHED);
+        long written = metrics.getCount(MetricsRegistry.Counter.POINTS_WRITTEN);
+        long planned = unitsPlanned.sum();
+        long done = getUnitsDone();
+
+        StringBuilder line = new StringBuilder();
+        if (planned > 0) {
+            line.append(String.format("units=%d/%d pct=%.1f ", done, planned, Math.min(100.0, done * 100.0 / planned)));
+        } else {
+            line.append("units=").append(done).append(' ');
+        }
+        line.append(String.format("fetched=%d fetched_rate=%.0f/s written=%d written_rate=%.0f/s ",
+                fetched, (fetched - reportedFetched) / seconds, written, (written - reportedWritten) / seconds));
+        line.append(String.format("retries=%d failed_units=%d failed_points=%d missing_values=%d",
+                metrics.getCount(MetricsRegistry.Counter.RETRIES), unitsFailed.sum(), pointsFailed.sum(),
+                missingValues.sum()));
+        if (planned > 0) {
+            line.append(" eta=").append(eta(now, planned, done));
+        }
+
+        reportedNanos = now;
+        reportedFetched = fetched;
+        reportedWritten = written;
+        return line.toString();
+    }
+
+    private String eta(long now, long planned, long done) {
+        long remaining = planned - done;
+        if (remaining <= 0) {
+            return "0:00:00";
+        }
+        long doneSincePlan = done - unitsDoneAtPlan;
+        double elapsedSeconds = (now - plannedAtNanos) / 1e9;
+        if (doneSincePlan <= 0 || elapsedSeconds <= 0) {
+            return "unknown";
+        }
+        long etaSeconds = (long) (remaining * elapsedSeconds / doneSincePlan);
+        return String.format("%d:%02d:%02d", etaSeconds / 3600, etaSeconds / 60 % 60, etaSeconds % 60);
+    }
+}
@@ -0,0 +1,167 @@
+package org.kreps.druidtoiotdb.metrics;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * End-of-run report: totals of the {@link MetricsRegistry} and the per-tag and per-device statistics of
+ * {@link RunStats}, written as JSON to {@code <report_dir>/run_<timestamp>.json}.
+ *
+ * The slowest tags, ranked by p99 fetch latency, and the densest intervals, ranked by points per second,
+ * point at the tags worth a smaller {@code read_size} or a partition of their own in the next run.
+ */
+public class RunReport {
+    private static final Logger logger = LoggerFactory.getLogger(RunReport.class);
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final DateTimeFormatter FILE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+
+    private final String mode;
+    private final String sink;
+    private final LocalDateTime started;
+    private final int topN;
+    private final ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    public RunReport(String mode, String sink, LocalDateTime started, int topN) {
+        this.mode = mode;
+        this.sink = sink;
+        this.started = started;
+        this.topN = topN;
+    }
+
+    /**
+     * Writes the report into the directory and returns its path, or null if it could not be written.
+     */
+    public Path write(String directory, String outcome) {
+        LocalDateTime finished = LocalDateTime.now();
+        Path file = Paths.get(directory, "run_" + finished.format(FILE_FORMATTER) + ".json");
+        try {
+            Files.createDirectories(file.getParent());
+            objectMapper.writeValue(file.toFile(), build(finished, outcome));
+            return file;
+        } catch (IOException | RuntimeException e) {
+            logger.error("Failed to write the run report to {}: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    Map<String, Object> build(LocalDateTime finished, String outcome) {
+        MetricsRegistry metrics = MetricsRegistry.get();
+        RunStats stats = RunStats.get();
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("mode", mode);
+        report.put("sink", sink);
+        report.put("outcome", outcome);
+        report.put("started", started.format(FORMATTER));
+        report.put("finished", finished.format(FORMATTER));
+        report.put("duration_seconds", Duration.between(started, finished).getSeconds());
+
+        report.put("totals", metrics.getCounters());
+        Map<String, Object> timers = new LinkedHashMap<>();
+        for (MetricsRegistry.Timer timer : MetricsRegistry.Timer.values()) {
+            LatencyHistogram histogram = metrics.timer(timer);
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("count", histogram.getCount());
+            values.put("mean_ms", round(histogram.getMeanMillis()));
+            values.put("p50_ms", round(histogram.getPercentileMillis(0.50)));
+            values.put("p99_ms", round(histogram.getPercentileMillis(0.99)));
+            timers.put(timer.getMetricName(), values);
+        }
+        report.put("latency", timers);
+        report.put("gauges", metrics.getGauges());
+
+        List<Map<String, Object>> tags = new ArrayList<>();
+        List<RunStats.TagStats> tagStats = new ArrayList<>(stats.getTags());
+        tagStats.sort(Comparator.comparing(RunStats.TagStats::getTag));
+        for (RunStats.TagStats tag : tagStats) {
+            tags.add(tagEntry(tag));
+        }
+
+        List<RunStats.TagStats> slowest = new ArrayList<>(tagStats);
+        slowest.removeIf(tag -> tag.getFetchLatency().getCount() == 0);
+        slowest.sort(Comparator.comparingDouble((RunStats.TagStats tag) -> tag.getFetchLatency()
+                .getPercentileMillis(0.99))
+                .thenComparingDouble(tag -> tag.getFetchLatency().getMeanMillis())
+                .reversed());
+        List<Map<String, Object>> slowestTags = new ArrayList<>();
+        for (RunStats.TagStats tag : slowest.subList(0, Math.min(topN, slowest.size()))) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("tag", tag.getTag());
+            entry.put("fetch_p99_ms", round(tag.getFetchLatency().getPercentileMillis(0.99)));
+            entry.put("fetch_mean_ms", round(tag.getFetchLatency().getMeanMillis()));
+            entry.put("fetch_total_ms", round(tag.getFetchLatency().getTotalMillis()));
+            entry.put("points_per_request", tag.getRequests() == 0 ? 0 : tag.getPointsFetched() / tag.getRequests());
+            slowestTags.add(entry);
+        }
+        report.put("slowest_tags", slowestTags);
+
+        List<Map<String, Object>> densest = new ArrayList<>();
+        for (RunStats.DenseInterval interval : stats.getDensestIntervals()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("tag", interval.getTag());
+            entry.put("start", interval.getStart().format(FORMATTER));
+            entry.put("end", interval.getEnd().format(FORMATTER));
+            entry.put("points", interval.getPoints());
+            entry.put("points_per_second", round(interval.getPointsPerSecond()));
+            densest.add(entry);
+        }
+        report.put("densest_intervals", densest);
+        report.put("tags", tags);
+
+        List<RunStats.DeviceStats> deviceStats = new ArrayList<>(stats.getDevices());
+        deviceStats.sort(Comparator.comparing(RunStats.DeviceStats::getDevice));
+        List<Map<String, Object>> devices = new ArrayList<>();
+        for (RunStats.DeviceStats device : deviceStats) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("device", device.getDevice());
+            entry.put("tag", device.getTag());
+            entry.put("points_written", device.getPointsWritten());
+            entry.put("points_failed", device.getPointsFailed());
+            entry.put("inserts", device.getInserts());
+            entry.put("failed_inserts", device.getFailedInserts());
+            entry.put("write_mean_ms", round(device.getWriteLatency().getMeanMillis()));
+            entry.put("write_p99_ms", round(device.getWriteLatency().getPercentileMillis(0.99)));
+            devices.add(entry);
+        }
+        report.put("devices", devices);
+        return report;
+    }
+
+    private static Map<String, Object> tagEntry(RunStats.TagStats tag) {
+        Map<String, Object> entry = new LinkedHashMap<>();
+        entry.put("tag", tag.getTag());
+        entry.put("intervals", tag.getIntervals());
+        entry.put("points_fetched", tag.getPointsFetched());
+        entry.put("points_written", tag.getPointsWritten());
+        entry.put("points_failed", tag.getPointsFailed());
+        entry.put("requests", tag.getRequests());
+        entry.put("failed_requests", tag.getFailedRequests());
+        entry.put("retries", tag.getRetries());
+        entry.put("bytes", tag.getBytes());
+        entry.put("fetch_mean_ms", round(tag.getFetchLatency().getMeanMillis()));
+        entry.put("fetch_p99_ms", round(tag.getFetchLatency().getPercentileMillis(0.99)));
+        entry.put("write_mean_ms", round(tag.getWriteLatency().getMeanMillis()));
+        entry.put("write_p99_ms", round(tag.getWriteLatency().getPercentileMillis(0.99)));
+        entry.put("blocked_ms", tag.getBlockedMillis());
+        return entry;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,314 @@
+package org.kreps.druidtoiotdb.metrics;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-tag and per-device statistics of the current run, collected for the end-of-run report.
+ *
+ * Every statistic is a {@link LongAdder} or a {@link CompactHistogram}, so fetchers and writers recording
+ * the same tag or device do not contend. Entries are created on first use and looked up without locking
+ * afterwards. The densest intervals are kept in a small heap that is only locked when an interval is denser
+ * than the least dense one kept so far.
+ */
+public final class RunStats {
+    private static final RunStats INSTANCE = new RunStats();
+
+    private final ConcurrentMap<String, TagStats> tags = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, DeviceStats> devices = new ConcurrentHashMap<>();
+    private final PriorityQueue<DenseInterval> densest = new PriorityQueue<>(
+            Comparator.comparingDouble(DenseInterval::getPointsPerSecond));
+    private volatile int topN = 20;
+    // Density an interval must exceed to enter the heap once it is full
+    private volatile double densityThreshold;
+
+    private RunStats() {
+    }
+
+    public static RunStats get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Number of densest intervals kept.
+     */
+    public synchronized void setTopN(int topN) {
+        this.topN = topN;
+        while (densest.size() > topN) {
+            densest.poll();
+        }
+        densityThreshold = densest.size() < topN ? 0.0 : densest.peek().getPointsPerSecond();
+    }
+
+    public int getTopN() {
+        return topN;
+    }
+
+    public TagStats tag(String tag) {
+        String key = tag.trim();
+        TagStats stats = tags.get(key);
+        return stats != null ? stats : tags.computeIfAbsent(key, TagStats::new);
+    }
+
+    public DeviceStats device(String devicePath, String tag) {
+        DeviceStats stats = devices.get(devicePath);
+        return stats != null ? stats : devices.computeIfAbsent(devicePath, path -> new DeviceStats(path, tag.trim()));
+    }
+
+    /**
+     * Records the points Druid returned for one interval of a tag.
+     */
+    public void recordInterval(String tag, LocalDateTime start, LocalDateTime end, int points) {
+        double seconds = Math.max(1, Duration.between(start, end).getSeconds());
+        double pointsPerSecond = points / seconds;
+        if (points == 0 || pointsPerSecond <= densityThreshold) {
+            return;
+        }
+        synchronized (this) {
+            if (densest.size() >= topN && pointsPerSecond <= densest.peek().getPointsPerSecond()) {
+                return;
+            }
+            densest.add(new DenseInterval(tag.trim(), start, end, points, pointsPerSecond));
+            if (densest.size() > topN) {
+                densest.poll();
+            }
+            if (densest.size() >= topN) {
+                densityThreshold = densest.peek().getPointsPerSecond();
+            }
+        }
+    }
+
+    public Collection<TagStats> getTags() {
+        return tags.values();
+    }
+
+    public Collection<DeviceStats> getDevices() {
+        return devices.values();
+    }
+
+    /**
+     * Densest intervals, densest first.
+     */
+    public synchronized List<DenseInterval> getDensestIntervals() {
+        List<DenseInterval> intervals = new ArrayList<>(densest);
+        intervals.sort(Comparator.comparingDouble(DenseInterval::getPointsPerSecond).reversed());
+        return intervals;
+    }
+
+    public static final class TagStats {
+        private final String tag;
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder failedRequests = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+        private final LongAdder intervals = new LongAdder();
+        private final LongAdder pointsFetched = new LongAdder();
+        private final LongAdder pointsWritten = new LongAdder();
+        private final LongAdder pointsFailed = new LongAdder();
+        private final LongAdder blockedNanos = new LongAdder();
+        private final CompactHistogram fetchLatency = new CompactHistogram();
+        private final CompactHistogram writeLatency = new CompactHistogram();
+
+        private TagStats(String tag) {
+            this.tag = tag;
+        }
+
+        /**
+         * One attempt to fetch an interval, hedges included.
+         */
+        public void recordRequest(long nanos, long bytes, boolean success) {
+            requests.increment();
+            if (!success) {
+                failedRequests.increment();
+            }
+            this.bytes.add(bytes);
+            fetchLatency.recordNanos(nanos);
+        }
+
+        /**
+         * A fetch of an interval that was already attempted and failed, hedges not included.
+         */
+        public void recordRetry() {
+            retries.increment();
+        }
+
+        public void recordFetched(int points) {
+            intervals.increment();
+            pointsFetched.add(points);
+        }
+
+        public void recordWrite(long nanos) {
+            writeLatency.recordNanos(nanos);
+        }
+
+        public void addPointsWritten(int points) {
+            pointsWritten.add(points);
+        }
+
+        public void addPointsFailed(int points) {
+            pointsFailed.add(points);
+        }
+
+        /**
+         * Time a fetcher spent waiting for room in the decode buffer with this tag's data.
+         */
+        public void addBlockedNanos(long nanos) {
+            blockedNanos.add(nanos);
+        }
+
+        public String getTag() {
+            return tag;
+        }
+
+        public long getRequests() {
+            return requests.sum();
+        }
+
+        public long getFailedRequests() {
+            return failedRequests.sum();
+        }
+
+        public long getRetries() {
+            return retries.sum();
+        }
+
+        public long getBytes() {
+            return bytes.sum();
+        }
+
+        public long getIntervals() {
+            return intervals.sum();
+        }
+
+        public long getPointsFetched() {
+            return pointsFetched.sum();
+        }
+
+        public long getPointsWritten() {
+            return pointsWritten.sum();
+        }
+
+        public long getPointsFailed() {
+            return pointsFailed.sum();
+        }
+
+        public long getBlockedMillis() {
+            return blockedNanos.sum() / 1_000_000;
+        }
+
+        public CompactHistogram getFetchLatency() {
+            return fetchLatency;
+        }
+
+        public CompactHistogram getWriteLatency() {
+            return writeLatency;
+        }
+    }
+
+    public static final class DeviceStats {
+        private final String device;
+        private final String tag;
+        private final LongAdder inserts = new LongAdder();
+        private final LongAdder failedInserts = new LongAdder();
+        private final LongAdder pointsWritten = new LongAdder();
+        private final LongAdder pointsFailed = new LongAdder();
+        private final CompactHistogram writeLatency = new CompactHistogram();
+
+        private DeviceStats(String device, String tag) {
+            this.device = device;
+            this.tag = tag;
+        }
+
+        /**
+         * One insert attempt of a tablet.
+         */
+        public void recordInsert(long nanos, boolean success) {
+            inserts.increment();
+            if (!success) {
+                failedInserts.increment();
+            }
+            writeLatency.recordNanos(nanos);
+        }
+
+        public void addPointsWritten(int points) {
+            pointsWritten.add(points);
+        }
+
+        public void addPointsFailed(int points) {
+            pointsFailed.add(points);
+        }
+
+        public String getDevice() {
+            return device;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+
+        public long getInserts() {
+            return inserts.sum();
+        }
+
+        public long getFailedInserts() {
+            return failedInserts.sum();
+        }
+
+        public long getPointsWritten() {
+            return pointsWritten.sum();
+        }
+
+        public long getPointsFailed() {
+            return pointsFailed.sum();
+        }
+
+        public CompactHistogram getWriteLatency() {
+            return writeLatency;
+        }
+    }
+
+    public static final class DenseInterval {
+        private final String tag;
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+        private final int points;
+        private final double pointsPerSecond;
+
+        private DenseInterval(String tag, LocalDateTime start, LocalDateTime end, int points,
+                double pointsPerSecond) {
+            this.tag = tag;
+            this.start = start;
+            this.end = end;
+            this.points = points;
+            this.pointsPerSecond = pointsPerSecond;
+        }
+
+        public String getTag() {
+            return tag;
+        }
+
+        public LocalDateTime getStart() {
+            return start;
+        }
+
+        public LocalDateTime getEnd() {
+            return end;
+        }
+
+        public int getPoints() {
+            return points;
+        }
+
+        public double getPointsPerSecond() {
+            return pointsPerSecond;
+        }
+    }
+}
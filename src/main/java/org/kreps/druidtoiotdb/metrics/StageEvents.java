@@ -0,0 +1,122 @@
+package org.kreps.druidtoiotdb.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+
+/**
+ * Java Flight Recorder events for the pipeline stages, so a recording lines up slow tags and devices with
+ * GC pauses, lock contention and I/O.
+ *
+ * The events themselves need the JFR API of Java 11, so they live in {@code src/main/java11} and are only
+ * compiled with the {@code jfr} or {@code java21} profile. They are looked up reflectively, the same way
+ * virtual threads are; without them every call is a no-op. Each {@code begin} call returns a token for the
+ * matching {@code end} call, or {@code null} when the event is not being recorded, in which case
+ * {@code end} returns immediately.
+ */
+public abstract class StageEvents {
+    private static final Logger logger = LoggerFactory.getLogger(StageEvents.class);
+    private static final String JFR_EVENTS_CLASS = "org.kreps.druidtoiotdb.metrics.jfr.JfrStageEvents";
+
+    private static final StageEvents INSTANCE = load();
+
+    public static StageEvents get() {
+        return INSTANCE;
+    }
+
+    private static StageEvents load() {
+        try {
+            StageEvents events = (StageEvents) Class.forName(JFR_EVENTS_CLASS).getDeclaredConstructor().newInstance();
+            logger.info("JFR stage events available");
+            return events;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            logger.debug("JFR stage events not available: {}", e.toString());
+            return new NoOp();
+        }
+    }
+
+    /**
+     * One Druid HTTP exchange, hedges included, from sending the request to parsing the response.
+     */
+    public abstract Object beginFetch();
+
+    public abstract void endFetch(Object token, String tag, LocalDateTime start, LocalDateTime end, int points,
+            long bytes);
+
+    /**
+     * Decoding the records of one work unit.
+     */
+    public abstract Object beginDecode();
+
+    public abstract void endDecode(Object token, String tag, LocalDateTime start, LocalDateTime end, int points);
+
+    /**
+     * Time a stage spent blocked on a full buffer.
+     */
+    public abstract Object beginQueueWait();
+
+    public abstract void endQueueWait(Object token, String buffer, int capacity);
+
+    /**
+     * Building the tablet of one device.
+     */
+    public abstract Object beginBuild();
+
+    public abstract void endBuild(Object token, String tag, String device, int points);
+
+    /**
+     * One insert attempt of a device's tablet.
+     */
+    public abstract Object beginWrite();
+
+    public abstract void endWrite(Object token, String tag, String device, int points, boolean success);
+
+    private static final class NoOp extends StageEvents {
+        @Override
+        public Object beginFetch() {
+            return null;
+        }
+
+        @Override
+        public void endFetch(Object token, String tag, LocalDateTime start, LocalDateTime end, int points,
+                long bytes) {
+        }
+
+        @Override
+        public Object beginDecode() {
+            return null;
+        }
+
+        @Override
+        public void endDecode(Object token, String tag, LocalDateTime start, LocalDateTime end, int points) {
+        }
+
+        @Override
+        public Object beginQueueWait() {
+            return null;
+        }
+
+        @Override
+        public void endQueueWait(Object token, String buffer, int capacity) {
+        }
+
+        @Override
+        public Object beginBuild() {
+            return null;
+        }
+
+        @Override
+        public void endBuild(Object token, String tag, String device, int points) {
+        }
+
+        @Override
+        public Object beginWrite() {
+            return null;
+        }
+
+        @Override
+        public void endWrite(Object token, String tag, String device, int points, boolean success) {
+        }
+    }
+}
@@ -13,21 +13,8 @@ public class DataPoint {
     private final String orgTag;
     private final LocalDateTime oriTime;
     private final Map<String, Object> measurements;
-
-    // Static poison pill instance
-    public static final DataPoint POISON_PILL = new DataPoint(1);
-
-    // Method to check if a data point is a poison pill
-    public boolean isPoisonPill() {
-        return this == POISON_PILL;
-    }
-
-    public DataPoint(int poisonPill) {
-        this.plantCode = null;
-        this.orgTag = null;
-        this.oriTime = null;
-        this.measurements = null;
-    }
+    // Unit this point was fetched for, or null when the point is not tracked by a checkpoint
+    private UnitProgress progress;
 
     public DataPoint(Map<String, String> druidData) {
         this.plantCode = druidData.get("PlantCode");
@@ -67,6 +54,14 @@ public class DataPoint {
         return oriTime;
     }
 
+    public UnitProgress getProgress() {
+        return progress;
+    }
+
+    public void setProgress(UnitProgress progress) {
+        this.progress = progress;
+    }
+
     @Override
     public String toString() {
         return String.format("DataPoint{path=%s, time=%s, measurements=%s}",
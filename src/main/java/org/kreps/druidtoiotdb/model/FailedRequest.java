@@ -2,6 +2,8 @@ package org.kreps.druidtoiotdb.model;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 public class FailedRequest {
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
@@ -27,6 +29,20 @@ public class FailedRequest {
         this.includeFullMessage = includeFullMessage;
     }
 
+    /**
+     * Fields of the journal record, in the order they are written.
+     */
+    public Map<String, Object> toRecord() {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("tag", tag);
+        record.put("start", startTime.format(FORMATTER));
+        record.put("end", endTime.format(FORMATTER));
+        record.put("status", statusCode);
+        // For server errors, only include the status code and basic message
+        record.put("reason", includeFullMessage ? reason : String.format("HTTP %d error", statusCode));
+        return record;
+    }
+
     @Override
     public String toString() {
         if (includeFullMessage) {
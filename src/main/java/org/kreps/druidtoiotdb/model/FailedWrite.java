@@ -2,9 +2,9 @@ package org.kreps.druidtoiotdb.model;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Comparator;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 public class FailedWrite {
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
@@ -22,16 +22,37 @@ public class FailedWrite {
         this.reason = reason;
         this.pointCount = points.size();
 
-        // Sort points by timestamp first
-        List<DataPoint> sortedPoints = points.stream()
-                .sorted(Comparator.comparing(DataPoint::getTimestamp))
-                .collect(Collectors.toList());
+        // Record the range in Druid time, as used by the request that fetched the points
+        DataPoint first = points.get(0);
+        DataPoint last = first;
+        for (DataPoint point : points) {
+            if (point.getTimestamp() < first.getTimestamp()) {
+                first = point;
+            }
+            if (point.getTimestamp() > last.getTimestamp()) {
+                last = point;
+            }
+        }
+        this.startTime = first.getOriTime();
+        this.endTime = last.getOriTime();
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
 
-        // Calculate time range from sorted points
-        this.startTime = LocalDateTime.ofEpochSecond(
-                sortedPoints.get(0).getTimestamp() / 1000, 0, java.time.ZoneOffset.UTC);
-        this.endTime = LocalDateTime.ofEpochSecond(
-                sortedPoints.get(sortedPoints.size() - 1).getTimestamp() / 1000, 0, java.time.ZoneOffset.UTC);
+    /**
+     * Fields of the journal record, in the order they are written.
+     */
+    public Map<String, Object> toRecord() {
+        Map<String, Object> record = new LinkedHashMap<>();
+        record.put("tag", tag);
+        record.put("start", startTime.format(FORMATTER));
+        record.put("end", endTime.format(FORMATTER));
+        record.put("device", devicePath);
+        record.put("points", pointCount);
+        record.put("reason", reason);
+        return record;
     }
 
     @Override
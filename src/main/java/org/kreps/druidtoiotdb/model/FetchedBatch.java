@@ -0,0 +1,34 @@
+package org.kreps.druidtoiotdb.model;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Raw records returned by Druid for one work unit, before they are decoded into {@link DataPoint}s.
+ */
+public class FetchedBatch {
+    private final WorkUnit unit;
+    private final List<Map<String, String>> records;
+    private final UnitProgress progress;
+
+    public FetchedBatch(WorkUnit unit, List<Map<String, String>> records, UnitProgress progress) {
+        this.unit = unit;
+        this.records = records;
+        this.progress = progress;
+    }
+
+    public WorkUnit getUnit() {
+        return unit;
+    }
+
+    public List<Map<String, String>> getRecords() {
+        return records;
+    }
+
+    /**
+     * Progress of the unit these records belong to, or {@code null} when checkpoints are disabled.
+     */
+    public UnitProgress getProgress() {
+        return progress;
+    }
+}
@@ -0,0 +1,54 @@
+package org.kreps.druidtoiotdb.model;
+
+import org.apache.iotdb.tsfile.write.record.Tablet;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One validated write batch turned into a tablet per device, together with the points behind each tablet
+ * so failed inserts can be logged.
+ */
+public class TabletBatch {
+    private final Map<String, Tablet> tablets;
+    private final Map<String, List<DataPoint>> deviceGroups;
+    private final int pointCount;
+
+    public TabletBatch(Map<String, Tablet> tablets, Map<String, List<DataPoint>> deviceGroups, int pointCount) {
+        this.tablets = tablets;
+        this.deviceGroups = deviceGroups;
+        this.pointCount = pointCount;
+    }
+
+    public Map<String, Tablet> getTablets() {
+        return tablets;
+    }
+
+    public List<DataPoint> getPoints(String devicePath) {
+        return deviceGroups.get(devicePath);
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    /**
+     * The tablets of the given devices only, e.g. those whose write failed and has to be retried.
+     */
+    public TabletBatch subset(Collection<String> devicePaths) {
+        Map<String, Tablet> subsetTablets = new HashMap<>();
+        Map<String, List<DataPoint>> subsetGroups = new HashMap<>();
+        int subsetPoints = 0;
+        for (String devicePath : devicePaths) {
+            Tablet tablet = tablets.get(devicePath);
+            if (tablet != null) {
+                subsetTablets.put(devicePath, tablet);
+                subsetGroups.put(devicePath, deviceGroups.get(devicePath));
+                subsetPoints += deviceGroups.get(devicePath).size();
+            }
+        }
+        return new TabletBatch(subsetTablets, subsetGroups, subsetPoints);
+    }
+}
@@ -0,0 +1,29 @@
+package org.kreps.druidtoiotdb.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * A time range fetched from Druid in a single request.
+ */
+public class TimeInterval {
+    private final LocalDateTime start;
+    private final LocalDateTime end;
+
+    public TimeInterval(LocalDateTime start, LocalDateTime end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public LocalDateTime getStart() {
+        return start;
+    }
+
+    public LocalDateTime getEnd() {
+        return end;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[%s - %s]", start, end);
+    }
+}
@@ -0,0 +1,62 @@
+package org.kreps.druidtoiotdb.model;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Counts the points of one fetched work unit that have not been settled yet. A point is settled once IoTDB
+ * acknowledged its insert or it was recorded as a failed write; when the last point settles the unit is
+ * reported as complete. Checkpoints only move past a completed unit once the failure journal has forced
+ * its failed write records to disk.
+ */
+public class UnitProgress {
+    private final WorkUnit unit;
+    private final AtomicInteger pending;
+    private final Consumer<WorkUnit> onComplete;
+
+    private UnitProgress(WorkUnit unit, int points, Consumer<WorkUnit> onComplete) {
+        this.unit = unit;
+        this.pending = new AtomicInteger(points);
+        this.onComplete = onComplete;
+    }
+
+    /**
+     * Starts tracking a unit with the given number of points. A unit without points completes immediately.
+     */
+    public static UnitProgress start(WorkUnit unit, int points, Consumer<WorkUnit> onComplete) {
+        UnitProgress progress = new UnitProgress(unit, points, onComplete);
+        if (points == 0) {
+            onComplete.accept(unit);
+        }
+        return progress;
+    }
+
+    public void settle() {
+        settle(1);
+    }
+
+    /**
+     * Settles {@code points} points of this unit at once.
+     */
+    public void settle(int points) {
+        if (pending.addAndGet(-points) == 0) {
+            onComplete.accept(unit);
+        }
+    }
+
+    /**
+     * Settles every point that belongs to a tracked unit.
+     */
+    public static void settle(List<DataPoint> points) {
+        for (DataPoint point : points) {
+            if (point.getProgress() != null) {
+                point.getProgress().settle();
+            }
+        }
+    }
+
+    public WorkUnit getUnit() {
+        return unit;
+    }
+}
@@ -0,0 +1,50 @@
+package org.kreps.druidtoiotdb.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * One fetch of a single tag over a single time interval, together with the number of attempts already
+ * spent on it.
+ */
+public class WorkUnit {
+    private final String tag;
+    private final LocalDateTime start;
+    private final LocalDateTime end;
+    private final int attempt;
+
+    public WorkUnit(String tag, LocalDateTime start, LocalDateTime end) {
+        this(tag, start, end, 0);
+    }
+
+    private WorkUnit(String tag, LocalDateTime start, LocalDateTime end, int attempt) {
+        this.tag = tag;
+        this.start = start;
+        this.end = end;
+        this.attempt = attempt;
+    }
+
+    public WorkUnit nextAttempt() {
+        return new WorkUnit(tag, start, end, attempt + 1);
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public LocalDateTime getStart() {
+        return start;
+    }
+
+    public LocalDateTime getEnd() {
+        return end;
+    }
+
+    public int getAttempt() {
+        return attempt;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s [%s - %s]", tag, start, end);
+    }
+}
@@ -0,0 +1,9 @@
+package org.kreps.druidtoiotdb.pipeline;
+
+/**
+ * Hands items from a stage to the next one, blocking while the downstream buffer is full.
+ */
+@FunctionalInterface
+public interface Emitter<T> {
+    void emit(T item) throws InterruptedException;
+}
@@ -0,0 +1,74 @@
+package org.kreps.druidtoiotdb.pipeline;
+
+import org.kreps.druidtoiotdb.threading.ThreadPoolManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * A chain of {@link Stage}s connected by bounded {@link StageBuffer}s, each stage running on its own
+ * executor. Completion flows downstream by future composition: a stage closes its output buffer when all of
+ * its workers are done, which lets the next stage drain and complete in turn. The pipeline completes when
+ * every stage has completed, or exceptionally as soon as it is aborted or any stage fails.
+ */
+public class Pipeline {
+    private static final Logger logger = LoggerFactory.getLogger(Pipeline.class);
+
+    private final ThreadPoolManager threadPoolManager;
+    private final List<Stage<?, ?>> stages = new ArrayList<>();
+    private final List<ExecutorService> executors = new ArrayList<>();
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    public Pipeline(ThreadPoolManager threadPoolManager) {
+        this.threadPoolManager = threadPoolManager;
+    }
+
+    public Pipeline addStage(Stage<?, ?> stage) {
+        stages.add(stage);
+        return this;
+    }
+
+    public synchronized CompletableFuture<Void> start() {
+        CompletableFuture<?>[] stageCompletions = new CompletableFuture<?>[stages.size()];
+        for (int i = 0; i < stages.size(); i++) {
+            Stage<?, ?> stage = stages.get(i);
+            ExecutorService executor = threadPoolManager.newStageExecutor(stage.getName(), stage.getMaxParallelism());
+            executors.add(executor);
+            stageCompletions[i] = stage.start(executor);
+            stageCompletions[i].whenComplete((ignored, error) -> {
+                if (error != null) {
+                    abort(error);
+                }
+            });
+        }
+        CompletableFuture.allOf(stageCompletions).whenComplete((ignored, error) -> {
+            if (error != null) {
+                completion.completeExceptionally(error);
+            } else {
+                completion.complete(null);
+            }
+        });
+        return completion;
+    }
+
+    /**
+     * Stops every stage without draining the remaining items. Workers blocked on I/O or on a full buffer
+     * are interrupted, and the completion future fails with the given cause.
+     */
+    public synchronized void abort(Throwable cause) {
+        if (!completion.completeExceptionally(cause)) {
+            return;
+        }
+        logger.error("Aborting pipeline: {}", cause.getMessage());
+        stages.forEach(Stage::abort);
+        executors.forEach(ExecutorService::shutdownNow);
+    }
+
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+}
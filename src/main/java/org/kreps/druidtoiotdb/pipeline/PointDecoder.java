@@ -0,0 +1,67 @@
+package org.kreps.druidtoiotdb.pipeline;
+
+import org.kreps.druidtoiotdb.checkpoint.ResumePlan;
+import org.kreps.druidtoiotdb.metrics.MetricsRegistry;
+import org.kreps.druidtoiotdb.metrics.StageEvents;
+import org.kreps.druidtoiotdb.model.DataPoint;
+import org.kreps.druidtoiotdb.model.FetchedBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+
+/**
+ * Decode stage: turns the raw Druid records of a work unit into {@link DataPoint}s. Records that cannot be
+ * parsed are logged and skipped, and so are points IoTDB already held when the run was resumed.
+ */
+public class PointDecoder implements StageHandler<FetchedBatch, DataPoint> {
+    private static final Logger logger = LoggerFactory.getLogger(PointDecoder.class);
+
+    private final ResumePlan resumePlan;
+
+    public PointDecoder(ResumePlan resumePlan) {
+        this.resumePlan = resumePlan;
+    }
+
+    @Override
+    public void process(FetchedBatch batch, Emitter<DataPoint> out) throws InterruptedException {
+        Object event = StageEvents.get().beginDecode();
+        int skipped = 0;
+        int duplicates = 0;
+        int decoded = 0;
+        long lastWrittenMillis = resumePlan.getLastWrittenMillis(batch.getUnit().getTag());
+        for (Map<String, String> record : batch.getRecords()) {
+            DataPoint point;
+            try {
+                point = new DataPoint(record);
+            } catch (RuntimeException e) {
+                skipped++;
+                if (batch.getProgress() != null) {
+                    batch.getProgress().settle();
+                }
+                logger.debug("Skipping undecodable record {} of {}: {}", record, batch.getUnit(), e.getMessage());
+                continue;
+            }
+            if (point.getTimestamp() <= lastWrittenMillis) {
+                duplicates++;
+                if (batch.getProgress() != null) {
+                    batch.getProgress().settle();
+                }
+                continue;
+            }
+            point.setProgress(batch.getProgress());
+            out.emit(point);
+            decoded++;
+        }
+        MetricsRegistry.get().add(MetricsRegistry.Counter.POINTS_DECODED, decoded);
+        StageEvents.get().endDecode(event, batch.getUnit().getTag(), batch.getUnit().getStart(),
+                batch.getUnit().getEnd(), decoded);
+        if (skipped > 0) {
+            logger.warn("Skipped {} of {} records for {} that could not be decoded",
+                    skipped, batch.getRecords().size(), batch.getUnit());
+        }
+        if (duplicates > 0) {
+            logger.debug("Dropped {} points for {} that IoTDB already holds", duplicates, batch.getUnit());
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package org.kreps.druidtoiotdb.pipeline;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+
+/**
+ * One step of the pipeline: a set of workers, each with its own {@link StageHandler}, taking items from the
+ * input buffer and emitting results into the output buffer. The stage completes once every worker has
+ * drained the input and finished, and only then closes its output buffer.
+ *
+ * Workers can be added up to {@code maxParallelism} and retired while the stage runs. A retired worker
+ * finishes the item it is working on and runs {@link StageHandler#finish} before it exits, so nothing it
+ * took from the input is lost, and everything it did not take is left for the remaining workers.
+ *
+ * A worker that exits abnormally, because its handler threw or it was interrupted without the stage being
+ * aborted, fails the stage: the completion future fails with the cause and the pipeline aborts.
+ */
+public class Stage<I, O> {
+    private static final Logger logger = LoggerFactory.getLogger(Stage.class);
+    private static final long POLL_TIMEOUT_MS = 100;
+
+    private final String name;
+    private final int parallelism;
+    private final int maxParallelism;
+    private final IntFunction<StageHandler<I, O>> handlerFactory;
+    private final StageBuffer<I> input;
+    private final StageBuffer<O> output;
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+    private final Set<Worker> workers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger runningWorkers = new AtomicInteger();
+    private final AtomicInteger workerIds = new AtomicInteger();
+    private final LongAdder processed = new LongAdder();
+    private ExecutorService executor;
+    private volatile boolean aborted = false;
+
+    public Stage(String name, int parallelism, IntFunction<StageHandler<I, O>> handlerFactory,
+            StageBuffer<I> input, StageBuffer<O> output) {
+        this(name, parallelism, parallelism, handlerFactory, input, output);
+    }
+
+    /**
+     * @param handlerFactory creates the handler of each worker from its 1-based worker id
+     * @param output buffer for emitted items, or {@code null} for the final stage
+     */
+    public Stage(String name, int parallelism, int maxParallelism, IntFunction<StageHandler<I, O>> handlerFactory,
+            StageBuffer<I> input, StageBuffer<O> output) {
+        this.name = name;
+        this.parallelism = parallelism;
+        this.maxParallelism = Math.max(parallelism, maxParallelism);
+        this.handlerFactory = handlerFactory;
+        this.input = input;
+        this.output = output;
+    }
+
+    synchronized CompletableFuture<Void> start(ExecutorService executor) {
+        logger.info("Starting stage {} with {} workers", name, parallelism);
+        this.executor = executor;
+        for (int i = 0; i < parallelism; i++) {
+            startWorker();
+        }
+        return completion;
+    }
+
+    private void startWorker() {
+        Worker worker = new Worker(handlerFactory.apply(workerIds.incrementAndGet()));
+        workers.add(worker);
+        runningWorkers.incrementAndGet();
+        try {
+            executor.execute(worker);
+        } catch (RuntimeException e) {
+            workers.remove(worker);
+            workerExited(null);
+            throw e;
+        }
+    }
+
+    /**
+     * Starts one more worker. Returns false if the stage is already at its maximum parallelism or has no
+     * more input to hand out.
+     */
+    public synchronized boolean addWorker() {
+        if (executor == null || completion.isDone() || input.isDrained() || getWorkerCount() >= maxParallelism) {
+            return false;
+        }
+        startWorker();
+        return true;
+    }
+
+    /**
+     * Asks one worker to exit after its current item. Returns false if only {@code minWorkers} workers would
+     * be left.
+     */
+    public synchronized boolean retireWorker(int minWorkers) {
+        if (getWorkerCount() <= Math.max(1, minWorkers)) {
+            return false;
+        }
+        for (Worker worker : workers) {
+            if (!worker.retiring) {
+                worker.retiring = true;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void workerExited(Throwable failure) {
+        if (failure != null && completion.completeExceptionally(failure)) {
+            logger.error("Stage {} failed: {}", name, failure.getMessage());
+        }
+        if (runningWorkers.decrementAndGet() == 0) {
+            if (output != null) {
+                output.close();
+            }
+            if (completion.complete(null)) {
+                logger.info("Stage {} completed", name);
+            }
+        }
+    }
+
+    void abort() {
+        aborted = true;
+        input.abort();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public int getMaxParallelism() {
+        return maxParallelism;
+    }
+
+    /**
+     * Number of workers that are running and not retiring.
+     */
+    public int getWorkerCount() {
+        int count = 0;
+        for (Worker worker : workers) {
+            if (!worker.retiring) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public long getProcessedCount() {
+        return processed.sum();
+    }
+
+    public boolean isDone() {
+        return completion.isDone();
+    }
+
+    private final class Worker implements Runnable {
+        private final StageHandler<I, O> handler;
+        private volatile boolean retiring = false;
+
+        Worker(StageHandler<I, O> handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void run() {
+            Emitter<O> out = output != null ? output::put : item -> {
+            };
+            Throwable failure = null;
+            try {
+                while (!aborted && !retiring) {
+                    I item = input.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                    if (item == null) {
+                        if (input.isDrained()) {
+                            break;
+                        }
+                        handler.onIdle(out);
+                        continue;
+                    }
+                    // Handlers settle the items they fail on; one that escapes could not be accounted for
+                    handler.process(item, out);
+                    processed.increment();
+                }
+                if (!aborted) {
+                    handler.finish(out);
+                }
+                if (retiring) {
+                    logger.info("Stage {} worker retired", name);
+                }
+            } catch (InterruptedException e) {
+                logger.info("Stage {} worker interrupted, stopping", name);
+                if (!aborted) {
+                    failure = new IllegalStateException(String.format("Stage %s worker was interrupted", name), e);
+                }
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                logger.error("Stage {} worker failed: ", name, e);
+                failure = new IllegalStateException(
+                        String.format("Stage %s worker failed: %s", name, e.getMessage()), e);
+            } finally {
+                handler.close();
+                workers.remove(this);
+                workerExited(failure);
+            }
+        }
+    }
+}
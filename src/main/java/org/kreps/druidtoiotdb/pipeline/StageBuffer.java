@@ -0,0 +1,103 @@
+package org.kreps.druidtoiotdb.pipeline;
+
+import org.kreps.druidtoiotdb.metrics.StageEvents;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded buffer between two stages. The upstream stage closes it once all of its workers are done, and
+ * the downstream stage stops once it is closed and empty, so no sentinel items are needed. Aborting the
+ * buffer releases producers blocked on a full buffer.
+ */
+public class StageBuffer<T> {
+    private static final long OFFER_TIMEOUT_MS = 100;
+
+    private final String name;
+    private final int capacity;
+    private final BlockingQueue<T> queue;
+    private final LongAdder added = new LongAdder();
+    private final LongAdder blockedNanos = new LongAdder();
+    private volatile boolean closed = false;
+    private volatile boolean aborted = false;
+
+    public StageBuffer(String name, int capacity) {
+        this.name = name;
+        this.capacity = capacity;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public void put(T item) throws InterruptedException {
+        if (!queue.offer(item)) {
+            Object event = StageEvents.get().beginQueueWait();
+            long blockedSince = System.nanoTime();
+            try {
+                while (!queue.offer(item, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    if (aborted) {
+                        throw new InterruptedException("Pipeline aborted while emitting to " + name);
+                    }
+                }
+            } finally {
+                blockedNanos.add(System.nanoTime() - blockedSince);
+            }
+            StageEvents.get().endQueueWait(event, name, capacity);
+        }
+        added.increment();
+    }
+
+    public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return queue.poll(timeout, unit);
+    }
+
+    public void close() {
+        closed = true;
+    }
+
+    public void abort() {
+        aborted = true;
+        closed = true;
+        queue.clear();
+    }
+
+    /**
+     * Returns true once no more items will ever be returned by {@link #poll}.
+     */
+    public boolean isDrained() {
+        return closed && queue.isEmpty();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    /**
+     * Total number of items ever put into this buffer.
+     */
+    public long getAddedCount() {
+        return added.sum();
+    }
+
+    /**
+     * Total time producers spent blocked on this buffer being full.
+     */
+    public long getBlockedMillis() {
+        return blockedNanos.sum() / 1_000_000;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Fraction of the capacity currently in use, between 0 and 1.
+     */
+    public double getOccupancy() {
+        return (double) queue.size() / capacity;
+    }
+}
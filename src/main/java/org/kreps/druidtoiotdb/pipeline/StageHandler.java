@@ -0,0 +1,32 @@
+package org.kreps.druidtoiotdb.pipeline;
+
+/**
+ * Per-worker logic of a pipeline stage. Every worker thread of a stage gets its own handler instance, so
+ * handlers may keep state such as a partially filled batch without synchronization.
+ *
+ * A handler settles the items it cannot deliver itself, e.g. by logging their points as failed writes. An
+ * exception thrown from {@link #process}, {@link #onIdle} or {@link #finish} means an item could not be
+ * accounted for, so it fails the stage and aborts the pipeline.
+ */
+public interface StageHandler<I, O> {
+
+    void process(I item, Emitter<O> out) throws Exception;
+
+    /**
+     * Called when no input arrived for a short while, e.g. to flush a partial batch or run retries.
+     */
+    default void onIdle(Emitter<O> out) throws Exception {
+    }
+
+    /**
+     * Called once after the input has been drained, before the stage signals completion downstream.
+     */
+    default void finish(Emitter<O> out) throws Exception {
+    }
+
+    /**
+     * Called when the worker exits, whether it finished normally or the pipeline was aborted.
+     */
+    default void close() {
+    }
+}
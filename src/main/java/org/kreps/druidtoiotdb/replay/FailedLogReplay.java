@@ -0,0 +1,261 @@
+package org.kreps.druidtoiotdb.replay;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.kreps.druidtoiotdb.fetcher.FetchPlan;
+import org.kreps.druidtoiotdb.model.TimeInterval;
+import org.kreps.druidtoiotdb.utils.FailedRequestLogger;
+import org.kreps.druidtoiotdb.utils.FailedWriteLogger;
+import org.kreps.druidtoiotdb.utils.FailureJournal;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Re-runs everything recorded in {@code failed_requests/} and {@code failed_writes/}.
+ *
+ * The existing files are renamed to {@code *.replaying} before the run, so whatever still fails during the
+ * replay is logged into fresh files by the usual loggers. The ranges of each tag are merged where they
+ * overlap and split into {@code read_size} intervals. Once the replay has completed the renamed files are
+ * deleted; if it is aborted they are appended back to the live files so nothing is forgotten. Files left
+ * over by a replay that crashed are picked up by the next one.
+ */
+public class FailedLogReplay {
+    private static final Logger logger = LoggerFactory.getLogger(FailedLogReplay.class);
+
+    private static final String REPLAYING_SUFFIX = ".replaying";
+    private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final long JOURNAL_FLUSH_TIMEOUT_MS = 10000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final List<Path> replayingFiles = new ArrayList<>();
+    private final Map<String, List<TimeInterval>> ranges = new LinkedHashMap<>();
+    private int entries;
+    private int skipped;
+
+    /**
+     * Claims the current failure files and reads the ranges to replay from them.
+     */
+    public static FailedLogReplay prepare() throws IOException {
+        FailedLogReplay replay = new FailedLogReplay();
+        replay.claim(Paths.get(FailedRequestLogger.FAILED_REQUESTS_DIR));
+        replay.claim(Paths.get(FailedWriteLogger.FAILED_WRITES_DIR));
+        for (Path file : replay.replayingFiles) {
+            replay.read(file, file.getParent().endsWith(FailedWriteLogger.FAILED_WRITES_DIR));
+        }
+        replay.mergeRanges();
+        return replay;
+    }
+
+    private void claim(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> listing = Files.newDirectoryStream(dir,
+                "*.{txt,jsonl,txt" + REPLAYING_SUFFIX + ",jsonl" + REPLAYING_SUFFIX + "}")) {
+            listing.forEach(files::add);
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(REPLAYING_SUFFIX)) {
+                logger.info("Picking up {} left over by an earlier replay", file);
+                replayingFiles.add(file);
+                continue;
+            }
+            Path claimed = file.resolveSibling(name + REPLAYING_SUFFIX);
+            if (Files.exists(claimed)) {
+                // Fold the live file into the leftover one so the original can be restored as a whole
+                Files.write(claimed, Files.readAllBytes(file), StandardOpenOption.APPEND);
+                Files.delete(file);
+            } else {
+                Files.move(file, claimed, StandardCopyOption.ATOMIC_MOVE);
+                replayingFiles.add(claimed);
+            }
+        }
+    }
+
+    /**
+     * Reads one file. Journal records are JSON objects with {@code tag}, {@code start} and {@code end};
+     * files written before the journal hold {@code tag|start|end|...} lines. The last point of a failed
+     * write is included in its range. Failed write lines from before the journal hold UTC times rather
+     * than Druid time, and are converted to the system zone Druid times are read in.
+     */
+    private void read(Path file, boolean writes) throws IOException {
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            String tag;
+            String start;
+            String end;
+            boolean utc = false;
+            if (line.startsWith("{")) {
+                try {
+                    JsonNode record = objectMapper.readTree(line);
+                    tag = record.path("tag").asText();
+                    start = record.path("start").asText();
+                    end = record.path("end").asText();
+                } catch (IOException e) {
+                    skipped++;
+                    continue;
+                }
+            } else {
+                String[] fields = line.split("\\|", 4);
+                if (fields.length < 4) {
+                    skipped++;
+                    continue;
+                }
+                tag = fields[0];
+                start = fields[1];
+                end = fields[2];
+                utc = writes;
+            }
+            if (tag.isEmpty()) {
+                skipped++;
+                continue;
+            }
+            addRange(tag, start, end, writes, utc);
+        }
+    }
+
+    private void addRange(String tag, String startText, String endText, boolean writes, boolean utc) {
+        try {
+            LocalDateTime start = LocalDateTime.parse(startText, FORMATTER);
+            LocalDateTime end = LocalDateTime.parse(endText, FORMATTER);
+            if (utc) {
+                start = fromUtc(start);
+                end = fromUtc(end);
+            }
+            if (writes) {
+                end = end.plusSeconds(1);
+            }
+            if (!end.isAfter(start)) {
+                skipped++;
+                return;
+            }
+            ranges.computeIfAbsent(tag, t -> new ArrayList<>()).add(new TimeInterval(start, end));
+            entries++;
+        } catch (DateTimeParseException e) {
+            skipped++;
+        }
+    }
+
+    private static LocalDateTime fromUtc(LocalDateTime utcTime) {
+        return LocalDateTime.ofInstant(utcTime.toInstant(ZoneOffset.UTC), ZoneId.systemDefault());
+    }
+
+    private void mergeRanges() {
+        for (Map.Entry<String, List<TimeInterval>> entry : ranges.entrySet()) {
+            List<TimeInterval> sorted = new ArrayList<>(entry.getValue());
+            sorted.sort(Comparator.comparing(TimeInterval::getStart));
+            List<TimeInterval> merged = new ArrayList<>();
+            TimeInterval current = null;
+            for (TimeInterval range : sorted) {
+                if (current != null && !range.getStart().isAfter(current.getEnd())) {
+                    if (range.getEnd().isAfter(current.getEnd())) {
+                        current = new TimeInterval(current.getStart(), range.getEnd());
+                    }
+                    continue;
+                }
+                if (current != null) {
+                    merged.add(current);
+                }
+                current = range;
+            }
+            if (current != null) {
+                merged.add(current);
+            }
+            entry.setValue(merged);
+        }
+    }
+
+    public boolean isEmpty() {
+        return ranges.isEmpty();
+    }
+
+    /**
+     * Plan fetching the merged ranges in intervals of at most {@code intervalSeconds}.
+     */
+    public FetchPlan toFetchPlan(long intervalSeconds) {
+        Map<String, List<TimeInterval>> tagIntervals = new LinkedHashMap<>();
+        int rangeCount = 0;
+        int intervalCount = 0;
+        for (Map.Entry<String, List<TimeInterval>> entry : ranges.entrySet()) {
+            List<TimeInterval> intervals = new ArrayList<>();
+            for (TimeInterval range : entry.getValue()) {
+                intervals.addAll(FetchPlan.splitIntervals(range.getStart(), range.getEnd(), intervalSeconds));
+            }
+            tagIntervals.put(entry.getKey(), intervals);
+            rangeCount += entry.getValue().size();
+            intervalCount += intervals.size();
+        }
+        logger.info("Replaying {} failure entries from {} files: {} tags, {} merged ranges, {} intervals"
+                + " ({} unreadable lines skipped)",
+                entries, replayingFiles.size(), tagIntervals.size(), rangeCount, intervalCount, skipped);
+        return FetchPlan.ofIntervals(tagIntervals);
+    }
+
+    /**
+     * Drops the replayed files. Everything that still failed has been logged to new files by now.
+     */
+    public void complete() {
+        for (Path file : replayingFiles) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.warn("Failed to delete replayed file {}: {}", file, e.getMessage());
+            }
+        }
+        logger.info("Replay completed, {} failure files replaced by what still failed", replayingFiles.size());
+    }
+
+    /**
+     * Appends the replayed files back to the live files after an aborted replay.
+     */
+    public void restore() {
+        try {
+            // The journal may hold the same live files open
+            FailureJournal.get().flush(JOURNAL_FLUSH_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Path file : replayingFiles) {
+            String name = file.getFileName().toString();
+            Path live = file.resolveSibling(name.substring(0, name.length() - REPLAYING_SUFFIX.length()));
+            try (BufferedWriter writer = Files.newBufferedWriter(live, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                    writer.write(line);
+                    writer.newLine();
+                }
+            } catch (IOException e) {
+                logger.error("Failed to restore {}, it is kept for the next replay: {}", file, e.getMessage());
+                continue;
+            }
+            try {
+                Files.delete(file);
+            } catch (IOException e) {
+                logger.warn("Failed to delete restored file {}: {}", file, e.getMessage());
+            }
+        }
+        logger.info("Replay did not complete, {} failure files restored", replayingFiles.size());
+    }
+}
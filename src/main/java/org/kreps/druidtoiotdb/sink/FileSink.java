@@ -0,0 +1,313 @@
+package org.kreps.druidtoiotdb.sink;
+
+import org.apache.iotdb.tsfile.common.conf.TSFileConfig;
+import org.apache.iotdb.tsfile.utils.BitMap;
+import org.apache.iotdb.tsfile.write.TsFileWriter;
+import org.apache.iotdb.tsfile.write.record.Tablet;
+import org.apache.iotdb.tsfile.write.schema.MeasurementSchema;
+import org.apache.iotdb.tsfile.write.schema.Schema;
+import org.kreps.druidtoiotdb.config.FileSinkConfig;
+import org.kreps.druidtoiotdb.metrics.LatencyHistogram;
+import org.kreps.druidtoiotdb.model.DataPoint;
+import org.kreps.druidtoiotdb.model.UnitProgress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stages the tablets in local TsFiles instead of sending them to IoTDB, so extraction can run apart from
+ * loading: the files are loaded later with IoTDB's own {@code load} command or tool.
+ * <p>
+ * Every writer thread has its own files. A TsFile takes the points of a device in strictly increasing time
+ * order only, so a tablet that goes back to a time a file already holds for its device goes into another
+ * of the writer's open files, or a new one. A file is completed once it reaches {@code max_points_per_file}.
+ * It is written as {@code .tsfile.tmp} and renamed once it is complete.
+ * <p>
+ * The TsFile writer buffers up to a chunk group in memory, so points are only settled, and checkpoints only
+ * move past them, once their file has been completed and renamed. A writer also completes its files after
+ * {@value #IDLE_COMPLETE_MS}ms without a batch, so tail rounds can finish, and when it exits.
+ */
+public class FileSink extends TabletSink {
+    private static final Logger logger = LoggerFactory.getLogger(FileSink.class);
+    private static final DateTimeFormatter FILE_FORMATTER = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+    private static final String TEMPLATE_NAME = "druid";
+    private static final String TMP_SUFFIX = ".tmp";
+    // Fetchers finish the intervals of a tag out of order, so a writer keeps several files to put them in
+    private static final int MAX_OPEN_FILES_PER_WRITER = 4;
+    // A writer that received no batch for this long completes its files, settling their points
+    private static final long IDLE_COMPLETE_MS = 5000;
+    // Buffered per open file before a chunk group is flushed; the library default is 128 MB
+    private static final int CHUNK_GROUP_SIZE_BYTES = 16 * 1024 * 1024;
+
+    private final File dir;
+    private final long maxPointsPerFile;
+    private final String filePrefix = LocalDateTime.now().format(FILE_FORMATTER);
+    private final AtomicInteger fileSequence = new AtomicInteger();
+    private final Map<Thread, List<StagingFile>> openFiles = new ConcurrentHashMap<>();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+    private final LongAdder filesWritten = new LongAdder();
+    private final LongAdder pointsWritten = new LongAdder();
+
+    public FileSink(FileSinkConfig config) {
+        this.dir = new File(config.getDir());
+        this.maxPointsPerFile = config.getMaxPointsPerFile();
+    }
+
+    @Override
+    public String getName() {
+        return "file";
+    }
+
+    @Override
+    public void open() throws IOException {
+        Files.createDirectories(dir.toPath());
+        logger.info("File sink: staging TsFiles in {}", dir.getAbsolutePath());
+    }
+
+    /**
+     * Nothing to prepare: every file registers the devices it holds itself.
+     */
+    @Override
+    public void prepareDevices(List<DataPoint> points) {
+    }
+
+    @Override
+    protected void writeTablet(String devicePath, Tablet tablet, List<DataPoint> points) throws Exception {
+        long startNanos = System.nanoTime();
+        Tablet sorted = sortedByTime(tablet);
+        List<StagingFile> files = openFiles.computeIfAbsent(Thread.currentThread(), t -> new ArrayList<>());
+        StagingFile file = fileFor(files, devicePath, sorted);
+        try {
+            file.write(devicePath, sorted, points);
+        } catch (Exception e) {
+            // The writer may hold part of the tablet; keep what the file has and retry into a new one
+            files.remove(file);
+            file.completeQuietly();
+            throw e;
+        }
+        pointsWritten.add(sorted.rowSize);
+        writeLatency.recordNanos(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * The first open file of this writer that can take the tablet. Full files are completed; when none fits
+     * and the writer has too many open, its oldest one is completed.
+     */
+    private StagingFile fileFor(List<StagingFile> files, String devicePath, Tablet tablet) throws IOException {
+        Iterator<StagingFile> open = files.iterator();
+        while (open.hasNext()) {
+            StagingFile file = open.next();
+            if (file.points >= maxPointsPerFile) {
+                open.remove();
+                file.complete();
+            } else if (file.accepts(devicePath, tablet.timestamps[0])) {
+                return file;
+            }
+        }
+        if (files.size() >= MAX_OPEN_FILES_PER_WRITER) {
+            files.remove(0).complete();
+        }
+        StagingFile file = new StagingFile(new File(dir, String.format("%s-%05d.tsfile",
+                filePrefix, fileSequence.incrementAndGet())), tablet.getSchemas());
+        files.add(file);
+        return file;
+    }
+
+    /**
+     * The tablet with its rows in time order and nulls marked, as the TsFile writer expects them. Of rows
+     * with the same timestamp the last one is kept, as an insert into IoTDB would.
+     */
+    private static Tablet sortedByTime(Tablet tablet) {
+        markNulls(tablet);
+        int rows = tablet.rowSize;
+        boolean increasing = true;
+        for (int i = 1; i < rows && increasing; i++) {
+            increasing = tablet.timestamps[i] > tablet.timestamps[i - 1];
+        }
+        if (increasing) {
+            return tablet;
+        }
+
+        Integer[] order = new Integer[rows];
+        for (int i = 0; i < rows; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> tablet.timestamps[i]));
+        List<Integer> kept = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            if (i + 1 < rows && tablet.timestamps[order[i + 1]] == tablet.timestamps[order[i]]) {
+                continue;
+            }
+            kept.add(order[i]);
+        }
+
+        List<MeasurementSchema> schemas = tablet.getSchemas();
+        Tablet sorted = new Tablet(tablet.deviceId, schemas, kept.size());
+        sorted.initBitMaps();
+        for (int row = 0; row < kept.size(); row++) {
+            int source = kept.get(row);
+            sorted.timestamps[row] = tablet.timestamps[source];
+            for (int column = 0; column < schemas.size(); column++) {
+                Array.set(sorted.values[column], row, Array.get(tablet.values[column], source));
+                if (tablet.bitMaps[column].isMarked(source)) {
+                    sorted.bitMaps[column].mark(row);
+                }
+            }
+        }
+        sorted.rowSize = kept.size();
+        return sorted;
+    }
+
+    /**
+     * Marks the values the tablet builder left unset, which an insert into IoTDB skips but the TsFile
+     * writer would fail on.
+     */
+    private static void markNulls(Tablet tablet) {
+        if (tablet.bitMaps == null) {
+            tablet.initBitMaps();
+        }
+        for (int column = 0; column < tablet.values.length; column++) {
+            Object values = tablet.values[column];
+            if (values instanceof Object[]) {
+                Object[] objects = (Object[]) values;
+                for (int row = 0; row < tablet.rowSize; row++) {
+                    if (objects[row] == null) {
+                        tablet.bitMaps[column].mark(row);
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isDurableOnWrite() {
+        return false;
+    }
+
+    @Override
+    public void onWriterIdle() {
+        List<StagingFile> files = openFiles.get(Thread.currentThread());
+        if (files == null) {
+            return;
+        }
+        long idleSince = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(IDLE_COMPLETE_MS);
+        Iterator<StagingFile> open = files.iterator();
+        while (open.hasNext()) {
+            StagingFile file = open.next();
+            if (file.lastWriteNanos - idleSince < 0) {
+                open.remove();
+                file.completeQuietly();
+            }
+        }
+    }
+
+    @Override
+    public void onWriterFinished() {
+        List<StagingFile> files = openFiles.remove(Thread.currentThread());
+        if (files != null) {
+            files.forEach(StagingFile::completeQuietly);
+        }
+    }
+
+    @Override
+    public LatencyHistogram getWriteLatency() {
+        return writeLatency;
+    }
+
+    @Override
+    public void close() {
+        for (List<StagingFile> files : openFiles.values()) {
+            files.forEach(StagingFile::completeQuietly);
+        }
+        openFiles.clear();
+        logger.info("File sink wrote {} points into {} files in {}", pointsWritten.sum(), filesWritten.sum(),
+                dir.getAbsolutePath());
+    }
+
+    /**
+     * A TsFile being written by one writer thread, with the last timestamp of every device in it and the
+     * points it holds per work unit, which are settled once the file is complete.
+     */
+    private final class StagingFile {
+        private final File file;
+        private final File tmpFile;
+        private final TsFileWriter writer;
+        private final Map<String, Long> lastTimestamps = new HashMap<>();
+        private final Map<UnitProgress, Integer> unsettled = new IdentityHashMap<>();
+        private long points;
+        private long lastWriteNanos = System.nanoTime();
+
+        StagingFile(File file, List<MeasurementSchema> schemas) throws IOException {
+            this.file = file;
+            this.tmpFile = new File(file.getPath() + TMP_SUFFIX);
+            TSFileConfig tsFileConfig = new TSFileConfig();
+            tsFileConfig.setGroupSizeInByte(CHUNK_GROUP_SIZE_BYTES);
+            this.writer = new TsFileWriter(tmpFile, new Schema(), tsFileConfig);
+            Map<String, MeasurementSchema> template = new LinkedHashMap<>();
+            for (MeasurementSchema schema : schemas) {
+                template.put(schema.getMeasurementId(), schema);
+            }
+            // Aligned, like the schema template the IoTDB sink creates
+            writer.registerSchemaTemplate(TEMPLATE_NAME, template, true);
+        }
+
+        boolean accepts(String devicePath, long firstTimestamp) {
+            Long last = lastTimestamps.get(devicePath);
+            return last == null || firstTimestamp > last;
+        }
+
+        void write(String devicePath, Tablet tablet, List<DataPoint> tabletPoints) throws Exception {
+            if (!lastTimestamps.containsKey(devicePath)) {
+                writer.registerDevice(devicePath, TEMPLATE_NAME);
+            }
+            writer.writeAligned(tablet);
+            lastTimestamps.put(devicePath, tablet.timestamps[tablet.rowSize - 1]);
+            points += tablet.rowSize;
+            lastWriteNanos = System.nanoTime();
+            for (DataPoint point : tabletPoints) {
+                if (point.getProgress() != null) {
+                    unsettled.merge(point.getProgress(), 1, Integer::sum);
+                }
+            }
+        }
+
+        void complete() throws IOException {
+            writer.close();
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            filesWritten.increment();
+            unsettled.forEach(UnitProgress::settle);
+            unsettled.clear();
+            logger.debug("Staged {} points of {} devices in {}", points, lastTimestamps.size(), file);
+        }
+
+        void completeQuietly() {
+            try {
+                complete();
+            } catch (IOException e) {
+                // Leaving the points unsettled keeps their intervals for the next run to fetch again
+                logger.error("Failed to complete {}, its intervals stay open for the next run: {}", tmpFile,
+                        e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.kreps.druidtoiotdb.sink;
+
+import org.apache.iotdb.rpc.IoTDBConnectionException;
+import org.apache.iotdb.tsfile.write.record.Tablet;
+import org.kreps.druidtoiotdb.config.AppConfig;
+import org.kreps.druidtoiotdb.iotdb.IoTDBClientFactory;
+import org.kreps.druidtoiotdb.iotdb.IoTDBSessionPool;
+import org.kreps.druidtoiotdb.iotdb.PoolStage;
+import org.kreps.druidtoiotdb.metrics.LatencyHistogram;
+import org.kreps.druidtoiotdb.model.DataPoint;
+import org.kreps.druidtoiotdb.validator.DeviceRegistry;
+import org.kreps.druidtoiotdb.validator.SchemaValidator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Inserts every tablet into IoTDB through the session pool, after the schema validator has activated its
+ * device.
+ */
+public class IoTDBSink extends TabletSink {
+    private static final Logger logger = LoggerFactory.getLogger(IoTDBSink.class);
+
+    private final IoTDBSessionPool iotdbSessionPool;
+    private final SchemaValidator schemaValidator;
+
+    public IoTDBSink(AppConfig config, IoTDBClientFactory clientFactory) {
+        this.iotdbSessionPool = new IoTDBSessionPool(config, clientFactory);
+        this.schemaValidator = new SchemaValidator(
+                iotdbSessionPool,
+                config.getRetryConfig(),
+                new DeviceRegistry());
+    }
+
+    @Override
+    public String getName() {
+        return "iotdb";
+    }
+
+    @Override
+    public void open() throws Exception {
+        logger.info("Validating IoTDB schema...");
+        schemaValidator.initializeSchema();
+        logger.info("Schema validation completed");
+    }
+
+    @Override
+    public void prepareDevices(List<DataPoint> points) throws Exception {
+        schemaValidator.validateDataPoints(points);
+    }
+
+    @Override
+    protected void checkAvailable() throws Exception {
+        if (!iotdbSessionPool.isAvailable()) {
+            throw new IoTDBConnectionException("IoTDB connection is not available");
+        }
+    }
+
+    @Override
+    protected void writeTablet(String devicePath, Tablet tablet, List<DataPoint> points) throws Exception {
+        iotdbSessionPool.execute(PoolStage.WRITER, sessionPool -> {
+            sessionPool.insertTablet(tablet);
+            return null;
+        });
+    }
+
+    @Override
+    protected boolean failsRemainingTablets(Exception e) {
+        return e instanceof IoTDBConnectionException;
+    }
+
+    /**
+     * How long writers hold a session, which includes waiting for IoTDB to acknowledge the insert.
+     */
+    @Override
+    public LatencyHistogram getWriteLatency() {
+        return iotdbSessionPool.getCheckoutLimiter().getHoldHistogram(PoolStage.WRITER);
+    }
+
+    /**
+     * The session pool, for the destination scan of {@code resume_from_destination}.
+     */
+    public IoTDBSessionPool getSessionPool() {
+        return iotdbSessionPool;
+    }
+
+    @Override
+    public void close() {
+        DeviceRegistry registry = schemaValidator.getDeviceRegistry();
+        logger.info("Device registry: {} devices, {} hits, {} misses, {} coalesced, {} in flight",
+                registry.size(), registry.getHitCount(), registry.getMissCount(),
+                registry.getCoalescedCount(), registry.getInFlightCount());
+        iotdbSessionPool.close();
+    }
+}
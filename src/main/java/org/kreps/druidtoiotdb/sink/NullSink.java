@@ -0,0 +1,53 @@
+package org.kreps.druidtoiotdb.sink;
+
+import org.kreps.druidtoiotdb.metrics.LatencyHistogram;
+import org.kreps.druidtoiotdb.model.DataPoint;
+import org.kreps.druidtoiotdb.model.TabletBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Discards every batch and only counts it. A run against this sink shows the throughput ceiling of the
+ * connector's own pipeline, with no destination to wait for.
+ */
+public class NullSink implements Sink {
+    private static final Logger logger = LoggerFactory.getLogger(NullSink.class);
+
+    private final LongAdder tablets = new LongAdder();
+    private final LongAdder points = new LongAdder();
+    // Never recorded: the autoscaler sees no write latency and scales on the buffers alone
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+
+    @Override
+    public String getName() {
+        return "null";
+    }
+
+    @Override
+    public void open() {
+        logger.info("Null sink: batches are counted and discarded, nothing is written");
+    }
+
+    @Override
+    public void prepareDevices(List<DataPoint> points) {
+    }
+
+    @Override
+    public void write(TabletBatch batch) {
+        tablets.add(batch.getTablets().size());
+        points.add(batch.getPointCount());
+    }
+
+    @Override
+    public LatencyHistogram getWriteLatency() {
+        return writeLatency;
+    }
+
+    @Override
+    public void close() {
+        logger.info("Null sink discarded {} points in {} tablets", points.sum(), tablets.sum());
+    }
+}
@@ -0,0 +1,83 @@
+package org.kreps.druidtoiotdb.sink;
+
+import org.kreps.druidtoiotdb.config.AppConfig;
+import org.kreps.druidtoiotdb.config.DestinationConfig;
+import org.kreps.druidtoiotdb.iotdb.IoTDBClientFactory;
+import org.kreps.druidtoiotdb.metrics.LatencyHistogram;
+import org.kreps.druidtoiotdb.model.DataPoint;
+import org.kreps.druidtoiotdb.model.TabletBatch;
+
+import java.util.List;
+
+/**
+ * Destination of the write stage. Selected by {@code destination.sink}: IoTDB for a real transfer, local
+ * TsFiles to stage the data offline, or nothing at all to measure the pipeline on its own.
+ * <p>
+ * {@link #prepareDevices} and {@link #write} are called concurrently by the validate and write stages.
+ */
+public interface Sink {
+    /**
+     * Creates the configured sink. IoTDB is only connected to, through {@code clientFactory}, when it is
+     * the destination.
+     */
+    static Sink create(AppConfig config, IoTDBClientFactory clientFactory) {
+        DestinationConfig destination = config.getDestinationConfig();
+        switch (destination.getSink()) {
+            case DestinationConfig.SINK_FILE:
+                return new FileSink(destination.getFileSink());
+            case DestinationConfig.SINK_NULL:
+                return new NullSink();
+            default:
+                return new IoTDBSink(config, clientFactory);
+        }
+    }
+
+    /**
+     * Name of the sink in logs and the run report.
+     */
+    String getName();
+
+    /**
+     * Prepares the destination before the first batch, e.g. creates the IoTDB schema.
+     */
+    void open() throws Exception;
+
+    /**
+     * Makes sure the devices of a write batch exist before the batch is built into tablets.
+     */
+    void prepareDevices(List<DataPoint> points) throws Exception;
+
+    /**
+     * Writes every tablet of the batch. Throws {@link SinkWriteException} when only some of the tablets
+     * failed; any other exception means none of them can be assumed written.
+     */
+    void write(TabletBatch batch) throws Exception;
+
+    /**
+     * Whether the points of a successful {@link #write} are durable. If not, the writer leaves them unsettled
+     * and the sink settles them itself once they are, so checkpoints never move past data that could still
+     * be lost.
+     */
+    default boolean isDurableOnWrite() {
+        return true;
+    }
+
+    /**
+     * Called on a writer thread when no batch arrived for a short while.
+     */
+    default void onWriterIdle() {
+    }
+
+    /**
+     * Called on a writer thread once it has written its last batch, before it exits.
+     */
+    default void onWriterFinished() {
+    }
+
+    /**
+     * Latency of the writes, which the autoscaler watches before adding writers.
+     */
+    LatencyHistogram getWriteLatency();
+
+    void close();
+}
@@ -0,0 +1,33 @@
+package org.kreps.druidtoiotdb.sink;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Thrown by a {@link Sink} when only some tablets of a batch were written, so the writer retries just the
+ * failed devices.
+ */
+public class SinkWriteException extends Exception {
+    private final Map<String, Exception> failures;
+
+    /**
+     * @param failures the error of every failed device, in write order
+     */
+    public SinkWriteException(Map<String, Exception> failures) {
+        super(failures.size() + " tablets failed, first: " + failures.values().iterator().next().getMessage(),
+                failures.values().iterator().next());
+        this.failures = Collections.unmodifiableMap(failures);
+    }
+
+    public Set<String> getFailedDevices() {
+        return failures.keySet();
+    }
+
+    /**
+     * The error of the first failed device, which decides whether the write is retried.
+     */
+    public Exception getFirstFailure() {
+        return failures.values().iterator().next();
+    }
+}
@@ -0,0 +1,75 @@
+package org.kreps.druidtoiotdb.sink;
+
+import org.apache.iotdb.tsfile.write.record.Tablet;
+import org.kreps.druidtoiotdb.metrics.RunStats;
+import org.kreps.druidtoiotdb.metrics.StageEvents;
+import org.kreps.druidtoiotdb.model.DataPoint;
+import org.kreps.druidtoiotdb.model.TabletBatch;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A sink that writes a batch one device tablet at a time, recording the latency of every tablet in the
+ * device and tag statistics and as a write event.
+ */
+abstract class TabletSink implements Sink {
+
+    @Override
+    public void write(TabletBatch batch) throws Exception {
+        checkAvailable();
+        Map<String, Exception> failures = new LinkedHashMap<>();
+        Iterator<Map.Entry<String, Tablet>> tablets = batch.getTablets().entrySet().iterator();
+        while (tablets.hasNext()) {
+            Map.Entry<String, Tablet> entry = tablets.next();
+            String devicePath = entry.getKey();
+            try {
+                timedWrite(devicePath, entry.getValue(), batch.getPoints(devicePath));
+            } catch (Exception e) {
+                failures.put(devicePath, e);
+                if (failsRemainingTablets(e)) {
+                    // Trying the other tablets would only wait for the same error again
+                    tablets.forEachRemaining(remaining -> failures.put(remaining.getKey(), e));
+                }
+            }
+        }
+        if (!failures.isEmpty()) {
+            throw new SinkWriteException(failures);
+        }
+    }
+
+    private void timedWrite(String devicePath, Tablet tablet, List<DataPoint> points) throws Exception {
+        String tag = points.get(0).getOrgTag();
+        RunStats.TagStats tagStats = RunStats.get().tag(tag);
+        RunStats.DeviceStats deviceStats = RunStats.get().device(devicePath, tag);
+        Object event = StageEvents.get().beginWrite();
+        long startNanos = System.nanoTime();
+        boolean success = false;
+        try {
+            writeTablet(devicePath, tablet, points);
+            success = true;
+        } finally {
+            long elapsed = System.nanoTime() - startNanos;
+            deviceStats.recordInsert(elapsed, success);
+            tagStats.recordWrite(elapsed);
+            StageEvents.get().endWrite(event, tag, devicePath, points.size(), success);
+        }
+    }
+
+    /**
+     * Fails the whole batch up front when the destination is known to be unreachable.
+     */
+    protected void checkAvailable() throws Exception {
+    }
+
+    protected abstract void writeTablet(String devicePath, Tablet tablet, List<DataPoint> points) throws Exception;
+
+    /**
+     * Whether the error of one tablet means the remaining tablets of the batch would fail as well.
+     */
+    protected boolean failsRemainingTablets(Exception e) {
+        return false;
+    }
+}
@@ -0,0 +1,58 @@
+package org.kreps.druidtoiotdb.tail;
+
+import org.kreps.druidtoiotdb.checkpoint.CheckpointStore;
+import org.kreps.druidtoiotdb.checkpoint.ResumePlan;
+import org.kreps.druidtoiotdb.config.BatchConfig;
+import org.kreps.druidtoiotdb.fetcher.FetchPlan;
+import org.kreps.druidtoiotdb.model.TimeInterval;
+import org.kreps.druidtoiotdb.model.WorkUnit;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Fetch plan of one tail round: every tag is fetched from its watermark, less the late data allowance, up
+ * to the end of the current round. Watermarks advance as the units of a tag are committed.
+ */
+class TailPlan extends FetchPlan {
+    private final CheckpointStore watermarks;
+    private final long lateDataSeconds;
+    private final BatchConfig batchConfig;
+    private volatile LocalDateTime roundEnd;
+
+    TailPlan(List<String> tags, CheckpointStore watermarks, long lateDataSeconds, BatchConfig batchConfig) {
+        super(tags, Collections.emptyList(), Collections.emptyMap(), ResumePlan.fromCheckpoints(null));
+        this.watermarks = watermarks;
+        this.lateDataSeconds = lateDataSeconds;
+        this.batchConfig = batchConfig;
+    }
+
+    void beginRound(LocalDateTime end) {
+        this.roundEnd = end;
+    }
+
+    LocalDateTime getRoundEnd() {
+        return roundEnd;
+    }
+
+    LocalDateTime getWatermark(String tag) {
+        return watermarks.getCommittedUntil(tag);
+    }
+
+    @Override
+    public List<TimeInterval> getIntervals(String tag) {
+        LocalDateTime end = roundEnd;
+        LocalDateTime watermark = watermarks.getCommittedUntil(tag);
+        if (end == null || watermark == null || !end.isAfter(watermark)) {
+            return Collections.emptyList();
+        }
+        return splitIntervals(watermark.minusSeconds(lateDataSeconds), end, batchConfig.getReadSize());
+    }
+
+    @Override
+    public Consumer<WorkUnit> getCompletionListener() {
+        return watermarks::markCompleted;
+    }
+}
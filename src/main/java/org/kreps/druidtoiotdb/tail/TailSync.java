@@ -0,0 +1,244 @@
+package org.kreps.druidtoiotdb.tail;
+
+import org.kreps.druidtoiotdb.checkpoint.CheckpointStore;
+import org.kreps.druidtoiotdb.checkpoint.ResumePlan;
+import org.kreps.druidtoiotdb.config.AppConfig;
+import org.kreps.druidtoiotdb.config.TailConfig;
+import org.kreps.druidtoiotdb.metrics.LatencyHistogram;
+import org.kreps.druidtoiotdb.metrics.MetricsRegistry;
+import org.kreps.druidtoiotdb.pipeline.StageBuffer;
+import org.kreps.druidtoiotdb.worker.WorkerManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Keeps IoTDB current by polling Druid in rounds on a single long-running pipeline, so session pools, HTTP
+ * connections and the device registry stay warm between polls.
+ *
+ * Each tag has a watermark: the end of the data committed for it so far. A round fetches every tag from
+ * its watermark up to {@code lag_seconds} before now, re-reading {@code late_data_seconds} before the
+ * watermark for records that arrived late. The first round catches up from the configured start, or from
+ * where an earlier run stopped. Freshness, the age of the oldest watermark, is recorded after every round.
+ *
+ * A round normally ends once every watermark has reached its end. If the lagging watermarks make no
+ * progress for several poll intervals, e.g. because a unit never settles, the round logs the tags behind
+ * and the next round starts anyway; freshness keeps reporting their stale watermarks.
+ */
+public class TailSync {
+    private static final Logger logger = LoggerFactory.getLogger(TailSync.class);
+    private static final long ROUND_CHECK_MS = 200;
+    // Poll intervals without any lagging watermark moving before a round gives up on them
+    private static final int STALLED_ROUND_POLLS = 3;
+    private static final int LAGGING_TAGS_LOGGED = 10;
+
+    private final TailConfig tailConfig;
+    private final WorkerManager workerManager;
+    private final List<String> tags;
+    private final TailPlan plan;
+    private final CompletableFuture<Void> stopSignal = new CompletableFuture<>();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final LatencyHistogram freshness = new LatencyHistogram();
+    private volatile long freshnessMillis = -1;
+    private long rounds;
+
+    /**
+     * @param watermarks store the watermarks are kept in; tags it does not know yet start where the resume
+     *            plan says, or at the configured start time
+     */
+    public TailSync(AppConfig config, WorkerManager workerManager, CheckpointStore watermarks,
+            ResumePlan resumePlan) {
+        this.tailConfig = config.getProcessingConfig().getTail();
+        this.workerManager = workerManager;
+        this.tags = config.getTags();
+        LocalDateTime rangeStart = config.getSourceConfig().getTimeRange().getStartTime();
+        for (String tag : tags) {
+            if (watermarks.getCommittedUntil(tag) == null) {
+                LocalDateTime resumeFrom = resumePlan.getResumeFrom(tag);
+                watermarks.seed(tag, resumeFrom != null ? resumeFrom : rangeStart);
+            }
+        }
+        this.plan = new TailPlan(tags, watermarks, tailConfig.getLateDataSeconds(),
+                config.getProcessingConfig().getBatch());
+        MetricsRegistry.get().registerGauge("tail.freshness_ms", this::getFreshnessMillis);
+    }
+
+    /**
+     * Runs rounds until {@link #stop()} is called or the pipeline is aborted.
+     */
+    public void run() throws Exception {
+        try {
+            runRounds();
+        } finally {
+            stopped.countDown();
+        }
+    }
+
+    private void runRounds() throws Exception {
+        List<List<String>> partitions = workerManager.partitionTags(tags);
+        StageBuffer<List<String>> tagPartitions = new StageBuffer<>("tags", partitions.size());
+        CompletableFuture<Void> completion = workerManager.startPipeline(plan, tagPartitions);
+        logger.info("Tail mode started for {} tags, polling every {}ms with a lag of {}s",
+                tags.size(), tailConfig.getPollIntervalMs(), tailConfig.getLagSeconds());
+        try {
+            while (!stopSignal.isDone() && !completion.isDone()) {
+                long roundStart = System.currentTimeMillis();
+                LocalDateTime roundEnd = LocalDateTime.now().minusSeconds(tailConfig.getLagSeconds())
+                        .truncatedTo(ChronoUnit.SECONDS);
+                plan.beginRound(roundEnd);
+                for (List<String> partition : partitions) {
+                    tagPartitions.put(partition);
+                }
+                if (!awaitRound(roundEnd, completion)) {
+                    break;
+                }
+                reportRound(roundStart, roundEnd);
+                long remainingMs = tailConfig.getPollIntervalMs() - (System.currentTimeMillis() - roundStart);
+                if (remainingMs > 0) {
+                    waitFor(completion, remainingMs);
+                }
+            }
+        } finally {
+            tagPartitions.close();
+        }
+        try {
+            completion.get();
+            logger.info("Tail mode stopped after {} rounds", rounds);
+        } catch (ExecutionException e) {
+            throw new Exception("Tail sync aborted: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Waits until every tag has reached the end of the round, or until the tags still behind have not moved
+     * for {@link #STALLED_ROUND_POLLS} poll intervals. Returns false if the sync is stopping.
+     */
+    private boolean awaitRound(LocalDateTime roundEnd, CompletableFuture<Void> completion)
+            throws InterruptedException {
+        long stallCheckMs = tailConfig.getPollIntervalMs();
+        long nextStallCheck = System.currentTimeMillis() + stallCheckMs;
+        long lastProgress = laggingProgress(0, roundEnd);
+        int stalledChecks = 0;
+        int next = 0;
+        while (next < tags.size()) {
+            LocalDateTime watermark = plan.getWatermark(tags.get(next));
+            if (watermark != null && !watermark.isBefore(roundEnd)) {
+                next++;
+                continue;
+            }
+            if (System.currentTimeMillis() >= nextStallCheck) {
+                nextStallCheck += stallCheckMs;
+                long progress = laggingProgress(next, roundEnd);
+                stalledChecks = progress == lastProgress ? stalledChecks + 1 : 0;
+                lastProgress = progress;
+                if (stalledChecks >= STALLED_ROUND_POLLS) {
+                    logLaggingTags(next, roundEnd, stalledChecks * stallCheckMs);
+                    return true;
+                }
+            }
+            if (waitFor(completion, ROUND_CHECK_MS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Sum of the watermarks, in seconds, of the tags from {@code from} on that are behind the round end;
+     * it changes whenever any of them moves.
+     */
+    private long laggingProgress(int from, LocalDateTime roundEnd) {
+        long sum = 0;
+        for (int i = from; i < tags.size(); i++) {
+            LocalDateTime watermark = plan.getWatermark(tags.get(i));
+            if (watermark == null) {
+                sum--;
+            } else if (watermark.isBefore(roundEnd)) {
+                sum += watermark.atZone(ZoneId.systemDefault()).toEpochSecond();
+            }
+        }
+        return sum;
+    }
+
+    private void logLaggingTags(int from, LocalDateTime roundEnd, long stalledMs) {
+        List<String> lagging = new ArrayList<>();
+        for (int i = from; i < tags.size(); i++) {
+            LocalDateTime watermark = plan.getWatermark(tags.get(i));
+            if (watermark == null || watermark.isBefore(roundEnd)) {
+                lagging.add(tags.get(i) + "@" + watermark);
+            }
+        }
+        logger.warn("Tail round up to {}: {} tags made no progress for {}ms, starting the next round without them"
+                + " (e.g. {})", roundEnd, lagging.size(), stalledMs,
+                lagging.subList(0, Math.min(LAGGING_TAGS_LOGGED, lagging.size())));
+    }
+
+    /**
+     * Sleeps up to the given time. Returns true as soon as the sync is stopped or the pipeline has ended.
+     */
+    private boolean waitFor(CompletableFuture<Void> completion, long timeoutMs) throws InterruptedException {
+        try {
+            CompletableFuture.anyOf(completion, stopSignal).get(timeoutMs, TimeUnit.MILLISECONDS);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        }
+    }
+
+    private void reportRound(long roundStart, LocalDateTime roundEnd) {
+        rounds++;
+        LocalDateTime oldest = null;
+        for (String tag : tags) {
+            LocalDateTime watermark = plan.getWatermark(tag);
+            if (watermark != null && (oldest == null || watermark.isBefore(oldest))) {
+                oldest = watermark;
+            }
+        }
+        if (oldest != null) {
+            long oldestMillis = oldest.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            freshnessMillis = Math.max(0, System.currentTimeMillis() - oldestMillis);
+            freshness.recordMicros(TimeUnit.MILLISECONDS.toMicros(freshnessMillis));
+        }
+        logger.info("Tail round {} up to {} completed in {}ms; freshness {}s (p50/p99 {}/{}s)",
+                rounds, roundEnd, System.currentTimeMillis() - roundStart, freshnessMillis / 1000,
+                Math.round(freshness.getPercentileMillis(0.50) / 1000),
+                Math.round(freshness.getPercentileMillis(0.99) / 1000));
+    }
+
+    /**
+     * Age of the oldest tag watermark after the last completed round, or -1 before the first one.
+     */
+    public long getFreshnessMillis() {
+        return freshnessMillis;
+    }
+
+    public LatencyHistogram getFreshness() {
+        return freshness;
+    }
+
+    /**
+     * Asks the sync to finish the current round's fetches and exit.
+     */
+    public void stop() {
+        stopSignal.complete(null);
+    }
+
+    /**
+     * Waits for {@link #run()} to return after {@link #stop()}.
+     */
+    public boolean awaitStopped(long timeoutMs) throws InterruptedException {
+        return stopped.await(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+}
@@ -1,79 +1,69 @@
 package org.kreps.druidtoiotdb.threading;
 
+import org.kreps.druidtoiotdb.config.ThreadConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Owns every executor of the application: one fixed pool per pipeline stage, plus the optional virtual
+ * thread executor for fetch work units.
+ */
 public class ThreadPoolManager implements AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(ThreadPoolManager.class);
 
-    private final ExecutorService fetcherPool;
-    private final ExecutorService writerPool;
-    private final CountDownLatch fetcherCompletionLatch;
-    private final CountDownLatch writerCompletionLatch;
-
-    public ThreadPoolManager(int readerPoolSize, int writerPoolSize) {
-        this.fetcherPool = Executors.newFixedThreadPool(readerPoolSize);
-        this.writerPool = Executors.newFixedThreadPool(writerPoolSize);
-        this.fetcherCompletionLatch = new CountDownLatch(readerPoolSize);
-        this.writerCompletionLatch = new CountDownLatch(writerPoolSize);
-    }
-
-    public ExecutorService getFetcherPool() {
-        return fetcherPool;
-    }
-
-    public ExecutorService getWriterPool() {
-        return writerPool;
-    }
+    private final List<ExecutorService> stageExecutors = new ArrayList<>();
+    private final VirtualThreadUnitExecutor unitExecutor;
 
-    public CountDownLatch getFetcherLatch() {
-        return fetcherCompletionLatch;
+    public ThreadPoolManager(ThreadConfig threadConfig) {
+        this.unitExecutor = threadConfig.isVirtualThreads()
+                ? VirtualThreadUnitExecutor.createIfSupported(threadConfig.getMaxOutstandingFetches())
+                : null;
     }
 
-    public CountDownLatch getWriterLatch() {
-        return writerCompletionLatch;
+    /**
+     * Creates the executor for a pipeline stage, with threads named after the stage.
+     */
+    public synchronized ExecutorService newStageExecutor(String stageName, int parallelism) {
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                r -> new Thread(r, String.format("%s-%d", stageName, threadCounter.incrementAndGet())));
+        stageExecutors.add(executor);
+        return executor;
     }
 
-    public void waitForFetchers() throws InterruptedException {
-        logger.info("Waiting for fetchers to complete...");
-        fetcherCompletionLatch.await();
-        logger.info("All fetchers completed");
-    }
-
-    public void waitForWriters() throws InterruptedException {
-        logger.info("Waiting for writers to complete...");
-        writerCompletionLatch.await();
-        logger.info("All writers completed");
+    /**
+     * Executor for individual fetch work units, or {@code null} when fetchers run their units themselves.
+     */
+    public VirtualThreadUnitExecutor getUnitExecutor() {
+        return unitExecutor;
     }
 
     @Override
-    public void close() {
+    public synchronized void close() {
         logger.info("Shutting down thread pools...");
 
-        // Shutdown fetcher pool first
-        fetcherPool.shutdown();
-        try {
-            if (!fetcherPool.awaitTermination(30, TimeUnit.SECONDS)) {
-                fetcherPool.shutdownNow();
+        // Upstream stages first, so downstream stages can still drain what they produced
+        for (ExecutorService executor : stageExecutors) {
+            executor.shutdown();
+            try {
+                if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
             }
-        } catch (InterruptedException e) {
-            fetcherPool.shutdownNow();
-            Thread.currentThread().interrupt();
         }
 
-        // Then shutdown writer pool
-        writerPool.shutdown();
-        try {
-            if (!writerPool.awaitTermination(30, TimeUnit.SECONDS)) {
-                writerPool.shutdownNow();
-            }
-        } catch (InterruptedException e) {
-            writerPool.shutdownNow();
-            Thread.currentThread().interrupt();
+        if (unitExecutor != null) {
+            unitExecutor.close();
         }
 
         logger.info("Thread pools shutdown completed");
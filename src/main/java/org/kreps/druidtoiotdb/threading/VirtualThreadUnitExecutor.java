@@ -0,0 +1,85 @@
+package org.kreps.druidtoiotdb.threading;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs fetch work units on virtual threads, one thread per unit, with a cap on outstanding units shared by
+ * all fetchers. Virtual threads need Java 21; the executor is looked up reflectively so the same classes
+ * keep running on Java 8, where fetchers fall back to running units on their own platform thread.
+ */
+public class VirtualThreadUnitExecutor implements Executor, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadUnitExecutor.class);
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int maxOutstanding;
+
+    private VirtualThreadUnitExecutor(ExecutorService executor, int maxOutstanding) {
+        this.executor = executor;
+        this.maxOutstanding = maxOutstanding;
+        this.permits = new Semaphore(maxOutstanding);
+    }
+
+    /**
+     * Returns an executor backed by virtual threads, or {@code null} when the running JVM does not support
+     * them.
+     */
+    public static VirtualThreadUnitExecutor createIfSupported(int maxOutstanding) {
+        try {
+            ExecutorService executor = (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+            logger.info("Running fetch work units on virtual threads, at most {} outstanding", maxOutstanding);
+            return new VirtualThreadUnitExecutor(executor, maxOutstanding);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("Virtual threads require Java 21 (running {}), falling back to platform fetcher threads",
+                    System.getProperty("java.version"));
+            return null;
+        }
+    }
+
+    /**
+     * Blocks until another unit may be started. Every successful call must be paired with {@link #release()}
+     * once the unit has finished, including any retries.
+     */
+    public void acquire() throws InterruptedException {
+        permits.acquire();
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getMaxOutstanding() {
+        return maxOutstanding;
+    }
+
+    public int getOutstanding() {
+        return maxOutstanding - permits.availablePermits();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        executor.execute(command);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package org.kreps.druidtoiotdb.utils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Background writer for failed request and failed write records.
+ *
+ * Fetcher and writer threads only enqueue a record on a lock-free queue and never touch the disk. A single
+ * journal thread drains the queue, appends every record as one JSON line to the daily file of its kind
+ * through a writer that stays open, and forces each file it touched once per drained batch, so a burst of
+ * failures during an outage costs one fsync rather than one file open per record. A record that cannot be
+ * written is kept and retried with the next batch; until it is on disk {@link #flush(long)} fails.
+ */
+public final class FailureJournal {
+    private static final Logger logger = LoggerFactory.getLogger(FailureJournal.class);
+
+    public static final String FILE_EXTENSION = ".jsonl";
+    private static final DateTimeFormatter FILE_DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+    private static final LogSampler ERROR_LOG = new LogSampler(1, TimeUnit.MINUTES);
+
+    private static final FailureJournal INSTANCE = new FailureJournal();
+
+    private final ConcurrentLinkedQueue<Entry> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong appended = new AtomicLong();
+    // Number of records known to be forced to disk
+    private volatile long written;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Path, JournalFile> files = new HashMap<>();
+    // Records of earlier batches that could not be written yet; only touched by the journal thread
+    private final List<Entry> retained = new ArrayList<>();
+    private LocalDate filesDate;
+    private volatile Thread journalThread;
+
+    private FailureJournal() {
+    }
+
+    public static FailureJournal get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Queues a record for {@code <directory>/<directory>_<date>.jsonl}.
+     */
+    public void append(String directory, Map<String, Object> record) {
+        queue.offer(new Entry(directory, record));
+        appended.incrementAndGet();
+        Thread thread = journalThread;
+        if (thread == null) {
+            thread = start();
+        }
+        LockSupport.unpark(thread);
+    }
+
+    private synchronized Thread start() {
+        if (journalThread == null) {
+            Thread thread = new Thread(this::run, "Failure-Journal");
+            thread.setDaemon(true);
+            thread.start();
+            journalThread = thread;
+        }
+        return journalThread;
+    }
+
+    private void run() {
+        while (true) {
+            long target = appended.get();
+            List<Entry> batch = new ArrayList<>(retained);
+            retained.clear();
+            Entry entry;
+            while ((entry = queue.poll()) != null) {
+                batch.add(entry);
+            }
+            if (!batch.isEmpty()) {
+                writeBatch(batch);
+            }
+            if (retained.isEmpty()) {
+                written = target;
+            }
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        }
+    }
+
+    private void writeBatch(List<Entry> batch) {
+        LocalDate today = LocalDate.now();
+        if (!today.equals(filesDate)) {
+            closeFiles();
+            filesDate = today;
+        }
+        Map<Path, List<Entry>> touched = new LinkedHashMap<>();
+        for (Entry entry : batch) {
+            Path file = Paths.get(entry.directory,
+                    String.format("%s_%s%s", entry.directory, today.format(FILE_DATE_FORMAT), FILE_EXTENSION));
+            if (write(file, entry)) {
+                touched.computeIfAbsent(file, f -> new ArrayList<>()).add(entry);
+            } else {
+                retained.add(entry);
+            }
+        }
+        for (Map.Entry<Path, List<Entry>> entry : touched.entrySet()) {
+            JournalFile file = files.get(entry.getKey());
+            try {
+                file.writer.flush();
+                file.channel.force(false);
+            } catch (IOException e) {
+                logError("Failed to force failure journal {}, keeping {} records for the next attempt: {}",
+                        entry.getKey(), entry.getValue().size(), e.getMessage());
+                retained.addAll(entry.getValue());
+                closeFile(entry.getKey());
+            }
+        }
+    }
+
+    private boolean write(Path file, Entry entry) {
+        try {
+            JournalFile journalFile = files.get(file);
+            if (journalFile == null) {
+                Files.createDirectories(file.getParent());
+                FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE);
+                channel.position(channel.size());
+                journalFile = new JournalFile(channel);
+                files.put(file, journalFile);
+                if (!endsWithNewline(channel)) {
+                    // Terminate a line torn by an earlier failure so the record after it stays readable
+                    journalFile.writer.write('\n');
+                }
+            }
+            journalFile.writer.write(objectMapper.writeValueAsString(entry.record));
+            journalFile.writer.write('\n');
+            return true;
+        } catch (IOException e) {
+            logError("Failed to journal failure record to {}, keeping it for the next attempt: {}",
+                    file, e.getMessage());
+            closeFile(file);
+            return false;
+        }
+    }
+
+    private static boolean endsWithNewline(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return true;
+        }
+        ByteBuffer last = ByteBuffer.allocate(1);
+        channel.read(last, size - 1);
+        return last.get(0) == '\n';
+    }
+
+    private static void logError(String message, Object... args) {
+        long suppressed = ERROR_LOG.sample();
+        if (suppressed >= 0) {
+            logger.error(message + " ({} similar errors suppressed)", withLast(args, suppressed));
+        }
+    }
+
+    private static Object[] withLast(Object[] args, Object last) {
+        Object[] result = Arrays.copyOf(args, args.length + 1);
+        result[args.length] = last;
+        return result;
+    }
+
+    private void closeFile(Path path) {
+        JournalFile file = files.remove(path);
+        if (file != null) {
+            file.close(path);
+        }
+    }
+
+    private void closeFiles() {
+        files.forEach((path, file) -> file.close(path));
+        files.clear();
+    }
+
+    /**
+     * Waits until every record queued before this call has been written and forced to disk. Returns false on
+     * timeout, which includes the case where the journal cannot write to its files at the moment.
+     */
+    public boolean flush(long timeoutMs) throws InterruptedException {
+        long target = appended.get();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (written < target) {
+            Thread thread = journalThread;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+            if (System.nanoTime() >= deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    public long getPendingCount() {
+        return appended.get() - written;
+    }
+
+    private static final class JournalFile {
+        final FileChannel channel;
+        final Writer writer;
+
+        JournalFile(FileChannel channel) {
+            this.channel = channel;
+            this.writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), -1));
+        }
+
+        void close(Path path) {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                logger.debug("Error while closing failure journal {}: {}", path, e.getMessage());
+            }
+        }
+    }
+
+    private static final class Entry {
+        final String directory;
+        final Map<String, Object> record;
+
+        Entry(String directory, Map<String, Object> record) {
+            this.directory = directory;
+            this.record = record;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package org.kreps.druidtoiotdb.utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lets through at most one message per interval for a log statement that may fire for every row or
+ * attempt. The statement logs only when {@link #sample()} returns a count, which is the number of
+ * messages suppressed since the previous one, so the log still shows how often the event happened.
+ */
+public class LogSampler {
+    private final long intervalNanos;
+    private final AtomicLong nextNanos;
+    private final LongAdder suppressed = new LongAdder();
+
+    public LogSampler(long interval, TimeUnit unit) {
+        this.intervalNanos = unit.toNanos(interval);
+        this.nextNanos = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Returns the number of messages suppressed since the last one let through, or -1 if this one should be
+     * suppressed as well.
+     */
+    public long sample() {
+        long now = System.nanoTime();
+        long next = nextNanos.get();
+        if (now - next < 0 || !nextNanos.compareAndSet(next, now + intervalNanos)) {
+            suppressed.increment();
+            return -1;
+        }
+        return suppressed.sumThenReset();
+    }
+}
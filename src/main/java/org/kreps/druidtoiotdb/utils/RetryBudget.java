@@ -0,0 +1,44 @@
+package org.kreps.druidtoiotdb.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide token bucket that caps retries to a fraction of first attempts.
+ *
+ * Every first attempt deposits {@code ratio} tokens and every retry withdraws one, so during an outage
+ * the retry traffic cannot grow beyond that fraction of the normal request rate. The bucket starts full
+ * and holds at most {@code capacity} tokens, which bounds the burst of retries at the start of an outage.
+ */
+public class RetryBudget {
+    private static final long SCALE = 1000;
+
+    private final long depositPerRequest;
+    private final long maxTokens;
+    private final AtomicLong tokens;
+
+    public RetryBudget(double ratio, int capacity) {
+        this.depositPerRequest = Math.round(ratio * SCALE);
+        this.maxTokens = Math.max(1, capacity) * SCALE;
+        this.tokens = new AtomicLong(maxTokens);
+    }
+
+    public void recordRequest() {
+        tokens.accumulateAndGet(depositPerRequest, (current, deposit) -> Math.min(maxTokens, current + deposit));
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            long current = tokens.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (tokens.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    public double getAvailable() {
+        return (double) tokens.get() / SCALE;
+    }
+}
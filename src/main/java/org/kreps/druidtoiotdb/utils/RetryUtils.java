@@ -1,74 +1,183 @@
 package org.kreps.druidtoiotdb.utils;
 
 import org.kreps.druidtoiotdb.config.RetryConfig;
+import org.kreps.druidtoiotdb.exceptions.CircuitOpenException;
 import org.kreps.druidtoiotdb.exceptions.ClientErrorException;
 import org.kreps.druidtoiotdb.exceptions.ServerErrorException;
+import org.kreps.druidtoiotdb.metrics.MetricsRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Retry helpers shared by fetchers, writers and schema validation.
+ *
+ * Delays use full-jitter exponential backoff: each retry waits a random time between zero and
+ * {@code initial_delay_ms * backoff_multiplier^(attempt - 1)}, capped at {@code max_delay_ms}, so callers
+ * that failed together do not retry in lockstep. All retries draw from a process-wide {@link RetryBudget}
+ * per retry configuration, which stops retries from multiplying load during an outage.
+ */
 public class RetryUtils {
     private static final Logger logger = LoggerFactory.getLogger(RetryUtils.class);
 
+    private static final Map<RetryConfig, RetryBudget> BUDGETS = new ConcurrentHashMap<>();
+    // Retried attempts are counted in the metrics; during an outage only some of them are logged as warnings
+    private static final LogSampler RETRY_LOG = new LogSampler(5, TimeUnit.SECONDS);
+    private static final ScheduledExecutorService RETRY_TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Retry-Timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     @FunctionalInterface
     public interface ThrowingSupplier<T> {
         T get() throws Exception;
     }
 
+    /**
+     * Runs the operation, retrying failures on the calling thread. Intended for startup and schema calls
+     * where the caller cannot make progress without the result; hot paths use
+     * {@link #executeWithRetryAsync(ThrowingSupplier, RetryConfig, String, Executor)} instead.
+     */
     public static <T> T executeWithRetry(ThrowingSupplier<T> operation, RetryConfig config, String operationName)
             throws Exception {
-        long delay = config.getInitialDelayMs();
+        getBudget(config).recordRequest();
         int attempts = 0;
 
-        while (attempts < config.getMaxAttempts()) {
+        while (true) {
             try {
                 return operation.get();
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 throw e;
             } catch (Exception e) {
-                if (e instanceof ClientErrorException) {
-                    throw e;
-                }
-
                 attempts++;
-                boolean isLastAttempt = attempts >= config.getMaxAttempts();
+                Exception failure = evaluateFailure(e, config, operationName, attempts);
+                if (failure != null) {
+                    throw failure;
+                }
 
                 if (Thread.interrupted()) {
                     throw new InterruptedException("Operation interrupted between retries");
                 }
 
-                if (isLastAttempt && isCriticalError(e)) {
-                    logger.error(
-                            "Critical error during {}: {}. Maximum retry attempts reached, treating as server error.",
-                            operationName, e.getMessage());
-                    throw new ServerErrorException("Critical server error: " + e.getMessage(), 503);
-                }
-
-                if (isLastAttempt) {
-                    logger.error("{} failed after {} attempts. Final error: {}",
-                            operationName, attempts, e.getMessage());
-                    throw e;
-                }
-
-                logger.warn("{} failed (attempt {}/{}). Error: {}",
-                        operationName, attempts, config.getMaxAttempts(), e.getMessage());
-
                 try {
-                    Thread.sleep(delay);
+                    Thread.sleep(nextDelayMs(config, attempts));
                 } catch (InterruptedException ie) {
                     Thread.currentThread().interrupt();
                     throw ie;
                 }
+            }
+        }
+    }
 
-                delay *= 2; // Exponential backoff
+    /**
+     * Runs the first attempt immediately on the calling thread. Failed attempts are rescheduled on a shared
+     * timer and handed to {@code executor} once their backoff has elapsed, so the calling thread is free to
+     * do other work in the meantime. The returned future completes with the result or the final failure.
+     */
+    public static <T> CompletableFuture<T> executeWithRetryAsync(ThrowingSupplier<T> operation, RetryConfig config,
+            String operationName, Executor executor) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        getBudget(config).recordRequest();
+        attempt(operation, config, operationName, executor, result, 1);
+        return result;
+    }
+
+    private static <T> void attempt(ThrowingSupplier<T> operation, RetryConfig config, String operationName,
+            Executor executor, CompletableFuture<T> result, int attemptNumber) {
+        if (result.isDone()) {
+            return;
+        }
+        T value;
+        try {
+            value = operation.get();
+        } catch (Exception e) {
+            Exception failure = evaluateFailure(e, config, operationName, attemptNumber);
+            if (failure != null) {
+                result.completeExceptionally(failure);
+                return;
             }
+            try {
+                RETRY_TIMER.schedule(
+                        () -> executor.execute(
+                                () -> attempt(operation, config, operationName, executor, result, attemptNumber + 1)),
+                        nextDelayMs(config, attemptNumber), TimeUnit.MILLISECONDS);
+            } catch (RuntimeException scheduleError) {
+                result.completeExceptionally(e);
+            }
+            return;
+        }
+        result.complete(value);
+    }
+
+    /**
+     * Decides what to do with a failed attempt. Returns the exception to surface to the caller, or
+     * {@code null} when the operation should be retried.
+     */
+    private static Exception evaluateFailure(Exception e, RetryConfig config, String operationName, int attempts) {
+        // An open circuit means the caller should park the work rather than spend retries on it
+        if (e instanceof ClientErrorException || e instanceof InterruptedException
+                || e instanceof CircuitOpenException) {
+            return e;
+        }
+
+        boolean isLastAttempt = attempts >= config.getMaxAttempts();
+        if (!isLastAttempt && !getBudget(config).tryAcquire()) {
+            logger.warn("{} failed (attempt {}/{}) and the retry budget is exhausted. Error: {}",
+                    operationName, attempts, config.getMaxAttempts(), e.getMessage());
+            isLastAttempt = true;
+        }
+
+        if (isLastAttempt && isCriticalError(e)) {
+            logger.error(
+                    "Critical error during {}: {}. Maximum retry attempts reached, treating as server error.",
+                    operationName, e.getMessage());
+            return new ServerErrorException("Critical server error: " + e.getMessage(), 503);
         }
 
-        throw new Exception("Retry operation failed: max attempts reached");
+        if (isLastAttempt) {
+            logger.error("{} failed after {} attempts. Final error: {}",
+                    operationName, attempts, e.getMessage());
+            return e;
+        }
+
+        long suppressed = RETRY_LOG.sample();
+        if (suppressed >= 0) {
+            logger.warn("{} failed (attempt {}/{}). Error: {} ({} similar warnings suppressed)",
+                    operationName, attempts, config.getMaxAttempts(), e.getMessage(), suppressed);
+        } else {
+            logger.debug("{} failed (attempt {}/{}). Error: {}",
+                    operationName, attempts, config.getMaxAttempts(), e.getMessage());
+        }
+        MetricsRegistry.get().increment(MetricsRegistry.Counter.RETRIES);
+        return null;
+    }
+
+    /**
+     * Full-jitter backoff for the retry following the given number of failed attempts.
+     */
+    public static long nextDelayMs(RetryConfig config, int failedAttempts) {
+        double ceiling = config.getInitialDelayMs() * Math.pow(config.getBackoffMultiplier(), failedAttempts - 1);
+        long cappedCeiling = (long) Math.min(config.getMaxDelayMs(), ceiling);
+        return ThreadLocalRandom.current().nextLong(cappedCeiling + 1);
+    }
+
+    public static RetryBudget getBudget(RetryConfig config) {
+        return BUDGETS.computeIfAbsent(config,
+                c -> new RetryBudget(c.getRetryBudgetRatio(), c.getRetryBudgetCapacity()));
     }
 
-    private static boolean isCriticalError(Exception e) {
-        return e.getMessage().contains("Connection refused")
+    public static boolean isCriticalError(Exception e) {
+        return (e.getMessage() != null && e.getMessage().contains("Connection refused"))
                 || e instanceof ServerErrorException
                 || (e.getCause() != null && e.getCause() instanceof java.net.ConnectException);
     }
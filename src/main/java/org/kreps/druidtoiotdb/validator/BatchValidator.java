@@ -0,0 +1,97 @@
+package org.kreps.druidtoiotdb.validator;
+
+import org.apache.iotdb.rpc.IoTDBConnectionException;
+import org.kreps.druidtoiotdb.config.BatchConfig;
+import org.kreps.druidtoiotdb.model.DataPoint;
+import org.kreps.druidtoiotdb.model.UnitProgress;
+import org.kreps.druidtoiotdb.pipeline.Emitter;
+import org.kreps.druidtoiotdb.pipeline.StageHandler;
+import org.kreps.druidtoiotdb.sink.Sink;
+import org.kreps.druidtoiotdb.utils.FailedWriteLogger;
+import org.kreps.druidtoiotdb.worker.WorkerManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Validate stage: collects decoded points into write batches and has the sink prepare every device in a
+ * batch, e.g. activate it in IoTDB, before the batch moves on. A batch is emitted once it reaches {@code write_size}, or earlier
+ * when no more points arrive for a moment and it has waited {@code linger_ms}. Both are read from the
+ * configuration for every batch, so changes made at runtime apply to the next one.
+ */
+public class BatchValidator implements StageHandler<DataPoint, List<DataPoint>> {
+    private static final Logger logger = LoggerFactory.getLogger(BatchValidator.class);
+    private final String logPrefix;
+
+    private final Sink sink;
+    private final WorkerManager workerManager;
+    private final BatchConfig batchConfig;
+    private List<DataPoint> batch;
+    private long batchStartNanos;
+
+    public BatchValidator(Sink sink, WorkerManager workerManager, BatchConfig batchConfig,
+            int validatorId) {
+        this.sink = sink;
+        this.workerManager = workerManager;
+        this.batchConfig = batchConfig;
+        this.batch = new ArrayList<>(batchConfig.getWriteSize());
+        this.logPrefix = String.format("Validator-%d", validatorId);
+    }
+
+    @Override
+    public void process(DataPoint point, Emitter<List<DataPoint>> out) throws InterruptedException {
+        if (batch.isEmpty()) {
+            batchStartNanos = System.nanoTime();
+        }
+        batch.add(point);
+        long lingerMs = batchConfig.getLingerMs();
+        if (batch.size() >= batchConfig.getWriteSize() || (lingerMs > 0 && lingered(lingerMs))) {
+            flush(out);
+        }
+    }
+
+    @Override
+    public void onIdle(Emitter<List<DataPoint>> out) throws InterruptedException {
+        long lingerMs = batchConfig.getLingerMs();
+        if (lingerMs <= 0 || lingered(lingerMs)) {
+            flush(out);
+        }
+    }
+
+    private boolean lingered(long lingerMs) {
+        return System.nanoTime() - batchStartNanos >= TimeUnit.MILLISECONDS.toNanos(lingerMs);
+    }
+
+    @Override
+    public void finish(Emitter<List<DataPoint>> out) throws InterruptedException {
+        flush(out);
+    }
+
+    private void flush(Emitter<List<DataPoint>> out) throws InterruptedException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<DataPoint> ready = batch;
+        batch = new ArrayList<>(batchConfig.getWriteSize());
+
+        try {
+            sink.prepareDevices(ready);
+        } catch (Exception e) {
+            logger.error("{} Schema validation failed: {}", logPrefix, e.getMessage());
+            if (e instanceof IoTDBConnectionException) {
+                logger.error("{} Critical error encountered: {}. Initiating shutdown...", logPrefix, e.getMessage());
+                workerManager.initiateShutdown(e);
+                return;
+            }
+            ready.forEach(point -> FailedWriteLogger.logFailedWrite(point.getTimeseriesPath(),
+                    Collections.singletonList(point), "Schema validation failed: " + e.getMessage()));
+            UnitProgress.settle(ready);
+            return;
+        }
+        out.emit(ready);
+    }
+}
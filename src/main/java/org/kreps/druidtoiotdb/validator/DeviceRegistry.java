@@ -0,0 +1,400 @@
+package org.kreps.druidtoiotdb.validator;
+
+import org.apache.iotdb.isession.pool.SessionDataSetWrapper;
+import org.apache.iotdb.rpc.IoTDBConnectionException;
+import org.apache.iotdb.rpc.StatementExecutionException;
+import org.apache.iotdb.session.pool.SessionPool;
+import org.apache.iotdb.tsfile.read.common.RowRecord;
+import org.kreps.druidtoiotdb.config.RetryConfig;
+import org.kreps.druidtoiotdb.iotdb.IoTDBSessionPool;
+import org.kreps.druidtoiotdb.iotdb.PoolStage;
+import org.kreps.druidtoiotdb.utils.RetryUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Registry of devices that already have the schema template activated.
+ *
+ * The registry is warmed once at startup from a local file written by previous runs and from a single
+ * {@code SHOW DEVICES} query against IoTDB. After that, {@link #isActivated(String)} is a lock-free
+ * lookup and missing devices are activated in bulk through
+ * {@link SessionPool#createTimeseriesUsingSchemaTemplate(List)}.
+ *
+ * A single instance is shared by all writers. Activation is single-flight: the first writer to see a
+ * device performs the RPC and concurrent writers wait on the same future instead of repeating it.
+ */
+public class DeviceRegistry {
+    private static final Logger logger = LoggerFactory.getLogger(DeviceRegistry.class);
+    private static final String REGISTRY_DIR = "schema_cache";
+    private static final String REGISTRY_FILE = "activated_devices.txt";
+    private static final String ROOT_DATABASE = "root.cepco";
+    private static final int ACTIVATION_BATCH_SIZE = 500;
+
+    private static final CompletableFuture<Void> ACTIVATED = CompletableFuture.completedFuture(null);
+
+    // Device path -> activation future; completed entries are replaced by ACTIVATED
+    private final ConcurrentHashMap<String, CompletableFuture<Void>> devices = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Path registryFile;
+    private final Object fileLock = new Object();
+    // Template to set on each device before activation, when it is not set on the root database
+    private volatile String perDeviceTemplate;
+
+    public DeviceRegistry() {
+        this(Paths.get(REGISTRY_DIR, REGISTRY_FILE));
+    }
+
+    public DeviceRegistry(Path registryFile) {
+        this.registryFile = registryFile;
+    }
+
+    /**
+     * Loads the persisted device set and merges it with the devices that currently exist under the root
+     * database. The merged set is written back so the next start only needs to read the file.
+     */
+    public void warmUp(IoTDBSessionPool iotdbSessionPool) {
+        long startTime = System.currentTimeMillis();
+        int persisted = loadPersistedDevices();
+
+        try {
+            int listed = iotdbSessionPool.execute(PoolStage.SCHEMA, this::listExistingDevices);
+            logger.info("Device registry warmed in {}ms: {} devices from file, {} devices listed from IoTDB",
+                    System.currentTimeMillis() - startTime, persisted, listed);
+        } catch (Exception e) {
+            logger.warn("Failed to list existing devices under {}, continuing with {} persisted devices: {}",
+                    ROOT_DATABASE, persisted, e.getMessage());
+        }
+
+        rewriteRegistryFile();
+    }
+
+    /**
+     * Makes activation set the given template on each device first, for databases where the template
+     * was set per device by earlier versions and therefore cannot be set on the root database.
+     */
+    public void setPerDeviceTemplate(String templateName) {
+        this.perDeviceTemplate = templateName;
+    }
+
+    public boolean isActivated(String devicePath) {
+        return devices.get(devicePath) == ACTIVATED;
+    }
+
+    public int size() {
+        return devices.size();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.sum();
+    }
+
+    public int getInFlightCount() {
+        return inFlight.get();
+    }
+
+    /**
+     * Ensures the schema template is activated on every given device. Devices not yet known are claimed
+     * by this caller and activated in batches; devices already being activated by another caller are
+     * awaited instead of activated again. Every lookup counts as a registry hit or miss.
+     *
+     * @return number of devices that were not activated yet
+     */
+    public int ensureActivated(IoTDBSessionPool iotdbSessionPool, Collection<String> devicePaths,
+            RetryConfig retryConfig) throws Exception {
+        List<String> owned = new ArrayList<>();
+        List<CompletableFuture<Void>> ownedFutures = new ArrayList<>();
+        List<CompletableFuture<Void>> awaited = new ArrayList<>();
+
+        for (String devicePath : devicePaths) {
+            CompletableFuture<Void> existing = devices.get(devicePath);
+            if (existing == ACTIVATED) {
+                hits.increment();
+                continue;
+            }
+            misses.increment();
+            if (existing == null) {
+                CompletableFuture<Void> future = new CompletableFuture<>();
+                existing = devices.putIfAbsent(devicePath, future);
+                if (existing == null) {
+                    owned.add(devicePath);
+                    ownedFutures.add(future);
+                    continue;
+                }
+            }
+            coalesced.increment();
+            awaited.add(existing);
+        }
+
+        if (!owned.isEmpty()) {
+            activateOwned(iotdbSessionPool, owned, ownedFutures, retryConfig);
+        }
+        for (CompletableFuture<Void> future : awaited) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof Exception ? (Exception) cause : e;
+            }
+        }
+        return owned.size() + awaited.size();
+    }
+
+    private void activateOwned(IoTDBSessionPool iotdbSessionPool, List<String> owned,
+            List<CompletableFuture<Void>> futures, RetryConfig retryConfig) throws Exception {
+        inFlight.addAndGet(owned.size());
+        try {
+            RetryUtils.executeWithRetry(() -> iotdbSessionPool.execute(PoolStage.SCHEMA, sessionPool -> {
+                activate(sessionPool, owned);
+                return null;
+            }), retryConfig, "Schema validation");
+            for (CompletableFuture<Void> future : futures) {
+                future.complete(null);
+            }
+        } catch (Exception e) {
+            // Release the claims so a later batch can try again, then wake up any waiters
+            for (int i = 0; i < owned.size(); i++) {
+                devices.remove(owned.get(i), futures.get(i));
+                futures.get(i).completeExceptionally(e);
+            }
+            throw e;
+        } finally {
+            inFlight.addAndGet(-owned.size());
+        }
+    }
+
+    private void activate(SessionPool sessionPool, List<String> devicePaths)
+            throws IoTDBConnectionException, StatementExecutionException {
+        List<String> batch = new ArrayList<>(Math.min(devicePaths.size(), ACTIVATION_BATCH_SIZE));
+        for (String devicePath : devicePaths) {
+            if (isActivated(devicePath)) {
+                continue;
+            }
+            batch.add(devicePath);
+            if (batch.size() >= ACTIVATION_BATCH_SIZE) {
+                activateBatch(sessionPool, batch);
+                batch = new ArrayList<>(ACTIVATION_BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            activateBatch(sessionPool, batch);
+        }
+    }
+
+    private void activateBatch(SessionPool sessionPool, List<String> batch)
+            throws IoTDBConnectionException, StatementExecutionException {
+        if (perDeviceTemplate != null) {
+            setTemplateOnDevices(sessionPool, batch);
+        }
+        try {
+            sessionPool.createTimeseriesUsingSchemaTemplate(batch);
+            markActivated(batch);
+            logger.debug("Activated schema template on {} devices", batch.size());
+        } catch (StatementExecutionException e) {
+            // One already-activated device fails the whole batch, so fall back to activating one by one
+            logger.debug("Batched template activation failed, retrying {} devices individually: {}",
+                    batch.size(), e.getMessage());
+            activateIndividually(sessionPool, batch);
+        }
+    }
+
+    private void activateIndividually(SessionPool sessionPool, List<String> batch)
+            throws IoTDBConnectionException, StatementExecutionException {
+        List<String> activated = new ArrayList<>(batch.size());
+        try {
+            for (String devicePath : batch) {
+                try {
+                    sessionPool.createTimeseriesUsingSchemaTemplate(Collections.singletonList(devicePath));
+                } catch (StatementExecutionException e) {
+                    if (!isAlreadyActivated(e)) {
+                        throw e;
+                    }
+                }
+                activated.add(devicePath);
+            }
+        } finally {
+            markActivated(activated);
+        }
+    }
+
+    private void setTemplateOnDevices(SessionPool sessionPool, List<String> batch)
+            throws IoTDBConnectionException, StatementExecutionException {
+        for (String devicePath : batch) {
+            try {
+                sessionPool.setSchemaTemplate(perDeviceTemplate, devicePath);
+            } catch (StatementExecutionException e) {
+                if (e.getMessage() == null || !e.getMessage().contains("already")) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private boolean isAlreadyActivated(StatementExecutionException e) {
+        String message = e.getMessage();
+        return message != null && (message.contains("already") || message.contains("has been activated"));
+    }
+
+    private void markActivated(List<String> devicePaths) {
+        if (devicePaths.isEmpty()) {
+            return;
+        }
+        List<String> added = new ArrayList<>(devicePaths.size());
+        for (String devicePath : devicePaths) {
+            if (devices.put(devicePath, ACTIVATED) != ACTIVATED) {
+                added.add(devicePath);
+            }
+        }
+        appendToRegistryFile(added);
+    }
+
+    private int listExistingDevices(SessionPool sessionPool)
+            throws IoTDBConnectionException, StatementExecutionException {
+        int listed = 0;
+        SessionDataSetWrapper dataSet = sessionPool.executeQueryStatement("show devices " + ROOT_DATABASE + ".**");
+        try {
+            while (dataSet.hasNext()) {
+                RowRecord record = dataSet.next();
+                String devicePath = normalizeDevicePath(record.getFields().get(0).getStringValue());
+                if (devicePath != null) {
+                    devices.put(devicePath, ACTIVATED);
+                    listed++;
+                }
+            }
+        } finally {
+            sessionPool.closeResultSet(dataSet);
+        }
+        return listed;
+    }
+
+    /**
+     * Converts a device path as reported by IoTDB into the fully quoted form produced by
+     * {@code DataPoint.getTimeseriesPath()}, e.g. {@code root.cepco.P1.`T-1`} becomes
+     * {@code root.cepco.`P1`.`T-1`}. Paths that are not at device depth are ignored.
+     */
+    static String normalizeDevicePath(String path) {
+        List<String> nodes = splitPath(path);
+        if (nodes.size() != 4) {
+            return null;
+        }
+        return String.format("%s.`%s`.`%s`", ROOT_DATABASE, nodes.get(2), nodes.get(3));
+    }
+
+    /**
+     * Splits an IoTDB path into its nodes, honouring backquoted nodes that contain dots.
+     */
+    public static List<String> splitPath(String path) {
+        List<String> nodes = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < path.length(); i++) {
+            char c = path.charAt(i);
+            if (c == '`') {
+                quoted = !quoted;
+            } else if (c == '.' && !quoted) {
+                nodes.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        nodes.add(current.toString());
+        return nodes;
+    }
+
+    private int loadPersistedDevices() {
+        if (!Files.exists(registryFile)) {
+            logger.info("No persisted device registry found at {}", registryFile);
+            return 0;
+        }
+
+        int loaded = 0;
+        try (BufferedReader reader = Files.newBufferedReader(registryFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String devicePath = line.trim();
+                if (!devicePath.isEmpty()) {
+                    devices.put(devicePath, ACTIVATED);
+                    loaded++;
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("Failed to read device registry {}: {}", registryFile, e.getMessage());
+        }
+        return loaded;
+    }
+
+    private void rewriteRegistryFile() {
+        synchronized (fileLock) {
+            try {
+                createRegistryDir();
+                Path tempFile = registryFile.resolveSibling(registryFile.getFileName() + ".tmp");
+                try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+                    for (String devicePath : devices.keySet()) {
+                        writer.write(devicePath);
+                        writer.newLine();
+                    }
+                }
+                Files.move(tempFile, registryFile, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                logger.warn("Failed to persist device registry {}: {}", registryFile, e.getMessage());
+            }
+        }
+    }
+
+    private void appendToRegistryFile(List<String> devicePaths) {
+        if (devicePaths.isEmpty()) {
+            return;
+        }
+        synchronized (fileLock) {
+            try {
+                createRegistryDir();
+                try (BufferedWriter writer = Files.newBufferedWriter(registryFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                    for (String devicePath : devicePaths) {
+                        writer.write(devicePath);
+                        writer.newLine();
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("Failed to append to device registry {}: {}", registryFile, e.getMessage());
+            }
+        }
+    }
+
+    private void createRegistryDir() throws IOException {
+        Path dirPath = registryFile.getParent();
+        if (dirPath != null && !Files.exists(dirPath)) {
+            Files.createDirectories(dirPath);
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package org.kreps.druidtoiotdb.validator;
 
+import org.apache.iotdb.isession.pool.SessionDataSetWrapper;
 import org.apache.iotdb.isession.template.Template;
 import org.apache.iotdb.rpc.IoTDBConnectionException;
 import org.apache.iotdb.rpc.StatementExecutionException;
@@ -10,41 +11,44 @@ import org.apache.iotdb.tsfile.file.metadata.enums.TSDataType;
 import org.apache.iotdb.tsfile.file.metadata.enums.TSEncoding;
 import org.kreps.druidtoiotdb.config.RetryConfig;
 import org.kreps.druidtoiotdb.exceptions.IoTDBInitializationException;
+import org.kreps.druidtoiotdb.iotdb.IoTDBSessionPool;
+import org.kreps.druidtoiotdb.iotdb.PoolStage;
 import org.kreps.druidtoiotdb.model.DataPoint;
-import org.kreps.druidtoiotdb.utils.RetryUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.util.ArrayList;
 import java.util.List;
 import java.io.IOException;
 import java.util.Set;
-import java.util.stream.Collectors;
 import java.util.HashSet;
-import java.util.Collections;
-import java.util.ArrayList;
 
 public class SchemaValidator {
     private static final Logger logger = LoggerFactory.getLogger(SchemaValidator.class);
-    private final SessionPool sessionPool;
+    private final IoTDBSessionPool iotdbSessionPool;
     private static final String TEMPLATE_NAME = "druid_t";
     private static final String ROOT_DATABASE = "root.cepco";
     private final RetryConfig retryConfig;
-    // Cache of validated device paths
-    private final Set<String> validatedDevices = Collections.synchronizedSet(new HashSet<>());
+    // Devices with the template already activated
+    private final DeviceRegistry deviceRegistry;
 
-    public SchemaValidator(SessionPool sessionPool, RetryConfig retryConfig) {
-        this.sessionPool = sessionPool;
+    public SchemaValidator(IoTDBSessionPool iotdbSessionPool, RetryConfig retryConfig,
+            DeviceRegistry deviceRegistry) {
+        this.iotdbSessionPool = iotdbSessionPool;
         this.retryConfig = retryConfig;
+        this.deviceRegistry = deviceRegistry;
     }
 
     public void initializeSchema() throws IoTDBInitializationException {
         createTemplateIfNotExists();
         createRootDatabaseIfNotExists();
+        setTemplateOnRootDatabase();
+        deviceRegistry.warmUp(iotdbSessionPool);
     }
 
     private void createTemplateIfNotExists() throws IoTDBInitializationException {
         logger.info("Checking if template exists: {}", TEMPLATE_NAME);
         try {
-            List<String> templates = sessionPool.showAllTemplates();
+            List<String> templates = iotdbSessionPool.execute(PoolStage.SCHEMA, SessionPool::showAllTemplates);
             if (!templates.contains(TEMPLATE_NAME)) {
                 createTemplate();
                 logger.info("Created template: {}", TEMPLATE_NAME);
@@ -61,6 +65,8 @@ public class SchemaValidator {
                     "Failed to check template existence due to connection issues. Please verify IoTDB server is running and network is stable: "
                             + e.getMessage(),
                     e);
+        } catch (Exception e) {
+            throw new IoTDBInitializationException("Failed to check template existence: " + e.getMessage(), e);
         }
     }
 
@@ -106,7 +112,10 @@ public class SchemaValidator {
             template.addToTemplate(sensorTypeNode);
             template.addToTemplate(valNode);
 
-            sessionPool.createSchemaTemplate(template);
+            iotdbSessionPool.execute(PoolStage.SCHEMA, sessionPool -> {
+                sessionPool.createSchemaTemplate(template);
+                return null;
+            });
             logger.info("Successfully created template: {}", TEMPLATE_NAME);
         } catch (StatementExecutionException e) {
             throw new IoTDBInitializationException(
@@ -120,13 +129,18 @@ public class SchemaValidator {
         } catch (IOException e) {
             throw new IoTDBInitializationException(
                     "Failed to create template due to I/O error. Please check system resources and permissions", e);
+        } catch (Exception e) {
+            throw new IoTDBInitializationException("Failed to create template: " + e.getMessage(), e);
         }
     }
 
     private void createRootDatabaseIfNotExists() throws IoTDBInitializationException {
         logger.info("Ensuring root database exists: {}", ROOT_DATABASE);
         try {
-            sessionPool.createDatabase(ROOT_DATABASE);
+            iotdbSessionPool.execute(PoolStage.SCHEMA, sessionPool -> {
+                sessionPool.createDatabase(ROOT_DATABASE);
+                return null;
+            });
             logger.info("Successfully created database: {}", ROOT_DATABASE);
         } catch (StatementExecutionException e) {
             if (e.getMessage().contains(ROOT_DATABASE)) {
@@ -138,55 +152,104 @@ public class SchemaValidator {
             throw new IoTDBInitializationException(
                     "Failed to create database - connection error. Please check if IoTDB server is running and accessible",
                     e);
+        } catch (Exception e) {
+            throw new IoTDBInitializationException("Failed to create database: " + e.getMessage(), e);
         }
     }
 
-    public void validateDataPoints(List<DataPoint> dataPoints) throws Exception {
-        long startTime = System.currentTimeMillis();
-
+    /**
+     * Sets the template on the root database so devices only need activating. Databases created by
+     * earlier versions have the template set on each device path instead, and IoTDB refuses to set it on
+     * an ancestor of those paths; in that case new devices keep getting the template set per device.
+     */
+    private void setTemplateOnRootDatabase() throws IoTDBInitializationException {
+        logger.info("Ensuring template {} is set on {}", TEMPLATE_NAME, ROOT_DATABASE);
         try {
-            Set<String> devicePaths = dataPoints.stream()
-                    .map(DataPoint::getTimeseriesPath)
-                    .filter(path -> !validatedDevices.contains(path))
-                    .collect(Collectors.toSet());
-
-            if (devicePaths.isEmpty()) {
+            List<String> setPaths = showPathsSetTemplate();
+            if (setPaths.contains(ROOT_DATABASE)) {
+                logger.info("Template {} already set on {}", TEMPLATE_NAME, ROOT_DATABASE);
+                return;
+            }
+            if (!setPaths.isEmpty()) {
+                usePerDeviceTemplate(setPaths.size());
                 return;
             }
 
-            logger.debug("Validating schema for {} new devices", devicePaths.size());
-
-            for (List<String> batch : createBatches(devicePaths, 100)) {
-                try {
-                    RetryUtils.executeWithRetry(() -> {
-                        for (String path : batch) {
-                            try {
-                                sessionPool.setSchemaTemplate(TEMPLATE_NAME, path);
-                                validatedDevices.add(path);
-                            } catch (StatementExecutionException e) {
-                                if (e.getMessage().contains("already exists")) {
-                                    validatedDevices.add(path);
-                                } else {
-                                    throw e;
-                                }
-                            }
-                        }
-                        return null;
-                    }, retryConfig, "Schema validation");
-                } catch (Exception e) {
-                    String errorMessage = e.getMessage();
-                    if (e.getCause() != null) {
-                        errorMessage = e.getCause().getMessage();
-                    }
-                    logger.error("Schema validation failed after {}ms: {}",
-                            System.currentTimeMillis() - startTime,
-                            errorMessage.split("\n")[0]); // Take only first line of error
-                    throw e;
+            try {
+                iotdbSessionPool.execute(PoolStage.SCHEMA, sessionPool -> {
+                    sessionPool.setSchemaTemplate(TEMPLATE_NAME, ROOT_DATABASE);
+                    return null;
+                });
+                logger.info("Successfully set template {} on {}", TEMPLATE_NAME, ROOT_DATABASE);
+            } catch (StatementExecutionException e) {
+                // Another instance may have set it meanwhile; trust only what IoTDB reports afterwards
+                setPaths = showPathsSetTemplate();
+                if (setPaths.contains(ROOT_DATABASE)) {
+                    logger.info("Template {} already set on {}", TEMPLATE_NAME, ROOT_DATABASE);
+                } else if (!setPaths.isEmpty()) {
+                    usePerDeviceTemplate(setPaths.size());
+                } else {
+                    throw new IoTDBInitializationException("Failed to set template due to unexpected error", e);
+                }
+            }
+        } catch (IoTDBInitializationException e) {
+            throw e;
+        } catch (IoTDBConnectionException e) {
+            throw new IoTDBInitializationException(
+                    "Failed to set template - connection error. Please check if IoTDB server is running and accessible",
+                    e);
+        } catch (Exception e) {
+            throw new IoTDBInitializationException("Failed to set template: " + e.getMessage(), e);
+        }
+    }
+
+    private List<String> showPathsSetTemplate() throws Exception {
+        return iotdbSessionPool.execute(PoolStage.SCHEMA, sessionPool -> {
+            List<String> paths = new ArrayList<>();
+            SessionDataSetWrapper dataSet = sessionPool
+                    .executeQueryStatement("show paths set schema template " + TEMPLATE_NAME);
+            try {
+                while (dataSet.hasNext()) {
+                    paths.add(dataSet.next().getFields().get(0).getStringValue());
                 }
+            } finally {
+                sessionPool.closeResultSet(dataSet);
+            }
+            return paths;
+        });
+    }
+
+    private void usePerDeviceTemplate(int setPathCount) {
+        logger.warn("Template {} is set on {} paths below {} by an earlier version and cannot be set on the "
+                + "database itself; setting it on each new device instead. Unset it from those paths and "
+                + "set it on {} to switch to database-level templates", TEMPLATE_NAME, setPathCount,
+                ROOT_DATABASE, ROOT_DATABASE);
+        deviceRegistry.setPerDeviceTemplate(TEMPLATE_NAME);
+    }
+
+    public DeviceRegistry getDeviceRegistry() {
+        return deviceRegistry;
+    }
+
+    /**
+     * Ensures the template is activated on every device in the batch. A single validator is shared by all
+     * writers, so the per-batch check only touches the lock-free device registry.
+     */
+    public void validateDataPoints(List<DataPoint> dataPoints) throws Exception {
+        long startTime = System.currentTimeMillis();
+
+        try {
+            Set<String> devicePaths = new HashSet<>();
+            for (DataPoint point : dataPoints) {
+                devicePaths.add(point.getTimeseriesPath());
             }
 
-            logger.debug("Schema validation completed in {}ms for {} devices",
-                    System.currentTimeMillis() - startTime, devicePaths.size());
+            int activated = deviceRegistry.ensureActivated(iotdbSessionPool, devicePaths, retryConfig);
+
+            if (activated > 0) {
+                logger.debug("Schema validation completed in {}ms for {} new devices",
+                        System.currentTimeMillis() - startTime, activated);
+            }
 
         } catch (Exception e) {
             String errorMessage = e.getMessage();
@@ -199,23 +262,4 @@ public class SchemaValidator {
             throw e;
         }
     }
-
-    private List<List<String>> createBatches(Set<String> items, int batchSize) {
-        List<List<String>> batches = new ArrayList<>();
-        List<String> currentBatch = new ArrayList<>();
-
-        for (String item : items) {
-            currentBatch.add(item);
-            if (currentBatch.size() >= batchSize) {
-                batches.add(new ArrayList<>(currentBatch));
-                currentBatch.clear();
-            }
-        }
-
-        if (!currentBatch.isEmpty()) {
-            batches.add(currentBatch);
-        }
-
-        return batches;
-    }
 }
@@ -0,0 +1,205 @@
+package org.kreps.druidtoiotdb.worker;
+
+import org.kreps.druidtoiotdb.config.ThreadConfig;
+import org.kreps.druidtoiotdb.fetcher.CircuitBreaker;
+import org.kreps.druidtoiotdb.metrics.LatencyHistogram;
+import org.kreps.druidtoiotdb.pipeline.Stage;
+import org.kreps.druidtoiotdb.pipeline.StageBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds and retires fetchers and writers while the pipeline runs, within the configured pool size bounds.
+ *
+ * Every interval it samples how full the buffers in front of the validate and write stages are, the
+ * throughput of the fetch and write stages, and the Druid and sink write latency over the interval. Buffers
+ * that stay full mean the writers are behind: a writer is added, or a fetcher retired if writers are
+ * already at their maximum. Buffers that stay empty mean the fetchers are behind: a fetcher is added and an
+ * idle writer retired. No worker is added while the backend it talks to is slower than usual, since more
+ * concurrency would only make it slower. Retired workers finish their current item first.
+ */
+public class Autoscaler implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(Autoscaler.class);
+
+    private static final double HIGH_WATERMARK = 0.8;
+    private static final double LOW_WATERMARK = 0.2;
+    private static final int CONSECUTIVE_SAMPLES = 2;
+    private static final double LATENCY_INCREASE_FACTOR = 2.0;
+
+    private final ThreadConfig threads;
+    private final Stage<?, ?> fetchStage;
+    private final Stage<?, ?> writeStage;
+    private final StageBuffer<?> pointBuffer;
+    private final StageBuffer<?> tabletBuffer;
+    private final CircuitBreaker circuitBreaker;
+    private final LatencyWindow druidLatency;
+    private final LatencyWindow sinkLatency;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Autoscaler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private long lastSampleNanos = System.nanoTime();
+    private long lastDecoded;
+    private long lastWritten;
+    private int fullSamples;
+    private int emptySamples;
+
+    public Autoscaler(ThreadConfig threads, Stage<?, ?> fetchStage, Stage<?, ?> writeStage,
+            StageBuffer<?> pointBuffer, StageBuffer<?> tabletBuffer, CircuitBreaker circuitBreaker,
+            LatencyHistogram druidLatency, LatencyHistogram sinkLatency) {
+        this.threads = threads;
+        this.fetchStage = fetchStage;
+        this.writeStage = writeStage;
+        this.pointBuffer = pointBuffer;
+        this.tabletBuffer = tabletBuffer;
+        this.circuitBreaker = circuitBreaker;
+        this.druidLatency = new LatencyWindow(druidLatency);
+        this.sinkLatency = new LatencyWindow(sinkLatency);
+    }
+
+    public void start() {
+        long interval = threads.getAutoscaleIntervalMs();
+        logger.info("Autoscaler started: fetchers {}-{}, writers {}-{}, every {}ms",
+                threads.getMinReaderPoolSize(), threads.getMaxReaderPoolSize(),
+                threads.getMinWriterPoolSize(), threads.getMaxWriterPoolSize(), interval);
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                evaluate();
+            } catch (RuntimeException e) {
+                logger.error("Autoscaler evaluation failed: {}", e.getMessage());
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    private void evaluate() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-3, (now - lastSampleNanos) / 1e9);
+        long decoded = pointBuffer.getAddedCount();
+        long written = writeStage.getProcessedCount();
+        double pointRate = (decoded - lastDecoded) / seconds;
+        double writeRate = (written - lastWritten) / seconds;
+        lastSampleNanos = now;
+        lastDecoded = decoded;
+        lastWritten = written;
+
+        double pointOccupancy = pointBuffer.getOccupancy();
+        double tabletOccupancy = tabletBuffer.getOccupancy();
+        double druidMillis = druidLatency.sample();
+        double sinkMillis = sinkLatency.sample();
+        String metrics = String.format(
+                "point buffer %.0f%%, tablet buffer %.0f%%, fetched %.0f points/s, written %.1f batches/s"
+                        + ", Druid %s, sink %s",
+                pointOccupancy * 100, tabletOccupancy * 100, pointRate, writeRate,
+                druidLatency.format(druidMillis), sinkLatency.format(sinkMillis));
+
+        boolean writersBehind = pointOccupancy >= HIGH_WATERMARK || tabletOccupancy >= HIGH_WATERMARK;
+        boolean fetchersBehind = !fetchStage.isDone()
+                && pointOccupancy <= LOW_WATERMARK && tabletOccupancy <= LOW_WATERMARK;
+        fullSamples = writersBehind ? fullSamples + 1 : 0;
+        emptySamples = fetchersBehind ? emptySamples + 1 : 0;
+
+        if (fullSamples >= CONSECUTIVE_SAMPLES) {
+            fullSamples = 0;
+            scaleTowardsWriters(metrics, sinkMillis);
+        } else if (emptySamples >= CONSECUTIVE_SAMPLES) {
+            emptySamples = 0;
+            scaleTowardsFetchers(metrics, druidMillis);
+        } else {
+            logger.debug("Autoscaler: no change, fetchers {}, writers {} ({})",
+                    fetchStage.getWorkerCount(), writeStage.getWorkerCount(), metrics);
+        }
+    }
+
+    private void scaleTowardsWriters(String metrics, double sinkMillis) {
+        int writers = writeStage.getWorkerCount();
+        if (sinkLatency.isElevated(sinkMillis)) {
+            logger.info("Autoscaler: writers are behind but sink latency is {} against a baseline of {}, "
+                    + "keeping {} writers ({})", sinkLatency.format(sinkMillis),
+                    sinkLatency.format(sinkLatency.baselineMillis), writers, metrics);
+        } else if (writers < threads.getMaxWriterPoolSize() && writeStage.addWorker()) {
+            logger.info("Autoscaler: writers {} -> {}, buffers are filling up ({})", writers, writers + 1, metrics);
+        } else {
+            int fetchers = fetchStage.getWorkerCount();
+            if (fetchStage.retireWorker(threads.getMinReaderPoolSize())) {
+                logger.info("Autoscaler: fetchers {} -> {}, writers are at their maximum of {} ({})",
+                        fetchers, fetchers - 1, writers, metrics);
+            } else {
+                logger.info("Autoscaler: writers are behind, but writers are at {} and fetchers at {} ({})",
+                        writers, fetchers, metrics);
+            }
+        }
+    }
+
+    private void scaleTowardsFetchers(String metrics, double druidMillis) {
+        int fetchers = fetchStage.getWorkerCount();
+        if (circuitBreaker.getState() != CircuitBreaker.State.CLOSED) {
+            logger.info("Autoscaler: fetchers are behind but the Druid circuit breaker is {}, keeping {} fetchers ({})",
+                    circuitBreaker.getState(), fetchers, metrics);
+        } else if (druidLatency.isElevated(druidMillis)) {
+            logger.info("Autoscaler: fetchers are behind but Druid latency is {} against a baseline of {}, "
+                    + "keeping {} fetchers ({})", druidLatency.format(druidMillis),
+                    druidLatency.format(druidLatency.baselineMillis), fetchers, metrics);
+        } else if (fetchers < threads.getMaxReaderPoolSize() && fetchStage.addWorker()) {
+            logger.info("Autoscaler: fetchers {} -> {}, buffers are running empty ({})",
+                    fetchers, fetchers + 1, metrics);
+        }
+
+        int writers = writeStage.getWorkerCount();
+        if (writeStage.retireWorker(threads.getMinWriterPoolSize())) {
+            logger.info("Autoscaler: writers {} -> {}, writers are idle ({})", writers, writers - 1, metrics);
+        }
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Mean latency per sampling interval, derived from a cumulative histogram, plus a slowly drifting
+     * baseline of the best interval seen.
+     */
+    private static final class LatencyWindow {
+        private final LatencyHistogram histogram;
+        private long lastCount;
+        private double lastTotalMillis;
+        private double baselineMillis;
+
+        LatencyWindow(LatencyHistogram histogram) {
+            this.histogram = histogram;
+        }
+
+        /**
+         * Returns the mean latency since the previous call, or -1 if nothing was recorded.
+         */
+        double sample() {
+            long count = histogram.getCount();
+            double totalMillis = histogram.getMeanMillis() * count;
+            double mean = count > lastCount ? (totalMillis - lastTotalMillis) / (count - lastCount) : -1;
+            lastCount = count;
+            lastTotalMillis = totalMillis;
+            if (mean >= 0) {
+                if (baselineMillis == 0 || mean < baselineMillis) {
+                    baselineMillis = mean;
+                } else {
+                    baselineMillis += (mean - baselineMillis) / 20;
+                }
+            }
+            return mean;
+        }
+
+        boolean isElevated(double meanMillis) {
+            return meanMillis > 0 && baselineMillis > 0 && meanMillis > baselineMillis * LATENCY_INCREASE_FACTOR;
+        }
+
+        String format(double millis) {
+            return millis < 0 ? "idle" : String.format("%.1fms", millis);
+        }
+    }
+}
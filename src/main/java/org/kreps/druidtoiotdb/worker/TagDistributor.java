@@ -8,14 +8,14 @@ import java.util.ArrayList;
 public class TagDistributor {
     private static final Logger logger = LoggerFactory.getLogger(TagDistributor.class);
 
-    public static List<List<String>> distributeTags(List<String> tags, int fetcherCount) {
-        List<List<String>> distribution = new ArrayList<>(fetcherCount);
-        for (int i = 0; i < fetcherCount; i++) {
+    public static List<List<String>> distributeTags(List<String> tags, int partitionCount) {
+        List<List<String>> distribution = new ArrayList<>(partitionCount);
+        for (int i = 0; i < partitionCount; i++) {
             distribution.add(new ArrayList<>());
         }
 
         for (int i = 0; i < tags.size(); i++) {
-            distribution.get(i % fetcherCount).add(tags.get(i));
+            distribution.get(i % partitionCount).add(tags.get(i));
         }
 
         logDistribution(distribution);
@@ -24,7 +24,7 @@ public class TagDistributor {
 
     private static void logDistribution(List<List<String>> distribution) {
         for (int i = 0; i < distribution.size(); i++) {
-            logger.info("Fetcher-{} assigned {} tags", i + 1, distribution.get(i).size());
+            logger.info("Tag partition {} assigned {} tags", i + 1, distribution.get(i).size());
         }
     }
 }
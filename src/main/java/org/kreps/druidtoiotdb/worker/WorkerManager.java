@@ -1,138 +1,145 @@
 package org.kreps.druidtoiotdb.worker;
 
 import org.kreps.druidtoiotdb.config.AppConfig;
+import org.kreps.druidtoiotdb.config.ThreadConfig;
+import org.kreps.druidtoiotdb.control.TransferControl;
 import org.kreps.druidtoiotdb.model.DataPoint;
+import org.kreps.druidtoiotdb.model.FetchedBatch;
+import org.kreps.druidtoiotdb.model.TabletBatch;
+import org.kreps.druidtoiotdb.fetcher.CircuitBreaker;
 import org.kreps.druidtoiotdb.fetcher.DataFetcher;
-import org.kreps.druidtoiotdb.iotdb.IoTDBSessionPool;
-import org.kreps.druidtoiotdb.writer.IoTDBWriter;
+import org.kreps.druidtoiotdb.fetcher.FetchPlan;
+import org.kreps.druidtoiotdb.fetcher.RequestHedger;
+import org.kreps.druidtoiotdb.metrics.MetricsRegistry;
+import org.kreps.druidtoiotdb.pipeline.Pipeline;
+import org.kreps.druidtoiotdb.pipeline.PointDecoder;
+import org.kreps.druidtoiotdb.pipeline.Stage;
+import org.kreps.druidtoiotdb.pipeline.StageBuffer;
+import org.kreps.druidtoiotdb.validator.BatchValidator;
+import org.kreps.druidtoiotdb.sink.Sink;
+import org.kreps.druidtoiotdb.writer.SinkWriter;
+import org.kreps.druidtoiotdb.writer.TabletBuilder;
 import org.kreps.druidtoiotdb.threading.ThreadPoolManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 
+/**
+ * Builds and runs the transfer pipeline:
+ * fetch (Druid) -> decode -> validate (schema) -> build (tablets) -> write (sink).
+ */
 public class WorkerManager {
     private static final Logger logger = LoggerFactory.getLogger(WorkerManager.class);
 
     private final AppConfig config;
-    private final BlockingQueue<DataPoint> dataQueue;
     private final ThreadPoolManager threadPoolManager;
-    private final IoTDBSessionPool iotdbSessionPool;
-
-    // Lists to keep track of workers
-    private final List<IoTDBWriter> writers = new ArrayList<>();
-    private final List<DataFetcher> fetchers = new ArrayList<>();
-
-    private volatile boolean shutdownInProgress = false;
-
-    public WorkerManager(AppConfig config, BlockingQueue<DataPoint> dataQueue,
-            ThreadPoolManager threadPoolManager, IoTDBSessionPool iotdbSessionPool) {
+    private final Sink sink;
+    private final RequestHedger requestHedger;
+    private final CircuitBreaker circuitBreaker;
+    private final TransferControl transferControl;
+    private final Pipeline pipeline;
+    private Autoscaler autoscaler;
+
+    // Tag partitions per fetcher when autoscaling, so added fetchers find work and retired ones leave little behind
+    private static final int PARTITIONS_PER_FETCHER = 4;
+
+    public WorkerManager(AppConfig config, ThreadPoolManager threadPoolManager, Sink sink,
+            RequestHedger requestHedger, CircuitBreaker circuitBreaker, TransferControl transferControl) {
         this.config = config;
-        this.dataQueue = dataQueue;
         this.threadPoolManager = threadPoolManager;
-        this.iotdbSessionPool = iotdbSessionPool;
+        this.sink = sink;
+        this.requestHedger = requestHedger;
+        this.circuitBreaker = circuitBreaker;
+        this.transferControl = transferControl;
+        this.pipeline = new Pipeline(threadPoolManager);
     }
 
-    public void startWorkers() {
-        startWriters();
-        startFetchers();
-    }
-
-    private void startWriters() {
-        int writerPoolSize = config.getProcessingConfig().getThreads().getWriterPoolSize();
-        logger.info("Starting {} writer threads...", writerPoolSize);
-
-        for (int i = 0; i < writerPoolSize; i++) {
-            IoTDBWriter writer = new IoTDBWriter(
-                    config,
-                    dataQueue,
-                    iotdbSessionPool,
-                    threadPoolManager.getWriterLatch(),
-                    this,
-                    i + 1);
-            writers.add(writer);
-            threadPoolManager.getWriterPool().submit(writer);
+    /**
+     * Starts every stage and returns a future that completes once the last write has been acknowledged, or
+     * fails if the pipeline is aborted.
+     */
+    public CompletableFuture<Void> startPipeline(FetchPlan fetchPlan) throws InterruptedException {
+        List<List<String>> tagDistribution = partitionTags(fetchPlan.getTags());
+        StageBuffer<List<String>> tagPartitions = new StageBuffer<>("tags", tagDistribution.size());
+        for (List<String> partition : tagDistribution) {
+            tagPartitions.put(partition);
         }
+        tagPartitions.close();
+        return startPipeline(fetchPlan, tagPartitions);
     }
 
-    private void startFetchers() {
-        int readerPoolSize = config.getProcessingConfig().getThreads().getReaderPoolSize();
-        logger.info("Starting {} fetcher threads...", readerPoolSize);
-
-        List<List<String>> tagDistribution = TagDistributor.distributeTags(
-                config.getTags(),
-                readerPoolSize);
-
-        for (int i = 0; i < readerPoolSize; i++) {
-            DataFetcher fetcher = new DataFetcher(
-                    config,
-                    dataQueue,
-                    tagDistribution.get(i),
-                    i + 1,
-                    threadPoolManager.getFetcherLatch(),
-                    this);
-            fetchers.add(fetcher);
-            threadPoolManager.getFetcherPool().submit(fetcher);
-        }
+    /**
+     * Splits the tags into the partitions handed to fetchers: one per fetcher, or several per fetcher when
+     * autoscaling.
+     */
+    public List<List<String>> partitionTags(List<String> tags) {
+        ThreadConfig threads = config.getProcessingConfig().getThreads();
+        int partitionCount = threads.isAutoscale()
+                ? Math.max(1, Math.min(tags.size(), threads.getMaxReaderPoolSize() * PARTITIONS_PER_FETCHER))
+                : threads.getReaderPoolSize();
+        return TagDistributor.distributeTags(tags, partitionCount);
     }
 
     /**
-     * Initiates a graceful shutdown of the application.
-     * - Stops all fetchers and writers.
-     * - Sends poison pills to writers.
-     * - Waits for all workers to complete.
+     * Starts every stage on a buffer of tag partitions that the caller keeps feeding. The returned future
+     * completes once the caller has closed the buffer and everything taken from it has been written.
      */
-    public synchronized void initiateShutdown() {
-        if (shutdownInProgress) {
-            logger.info("Shutdown already in progress");
-            return;
+    public CompletableFuture<Void> startPipeline(FetchPlan fetchPlan, StageBuffer<List<String>> tagPartitions) {
+        ThreadConfig threads = config.getProcessingConfig().getThreads();
+        int readerPoolSize = threads.getReaderPoolSize();
+        int bufferSize = config.getProcessingConfig().getStageBufferSize();
+        boolean autoscale = threads.isAutoscale();
+        int maxReaders = autoscale ? threads.getMaxReaderPoolSize() : readerPoolSize;
+        int maxWriters = autoscale ? threads.getMaxWriterPoolSize() : threads.getWriterPoolSize();
+
+        StageBuffer<FetchedBatch> fetched = new StageBuffer<>("fetched", bufferSize);
+        StageBuffer<DataPoint> decoded = new StageBuffer<>("decoded", config.getProcessingConfig().getQueueSize());
+        StageBuffer<List<DataPoint>> validated = new StageBuffer<>("validated", bufferSize);
+        StageBuffer<TabletBatch> built = new StageBuffer<>("built", bufferSize);
+        for (StageBuffer<?> buffer : Arrays.asList(tagPartitions, fetched, decoded, validated, built)) {
+            MetricsRegistry.get().registerGauge("queue." + buffer.getName(), buffer::size);
+            MetricsRegistry.get().registerGauge("queue." + buffer.getName() + ".blocked_ms",
+                    buffer::getBlockedMillis);
         }
 
-        shutdownInProgress = true;
-        logger.info("Initiating graceful shutdown...");
-
-        // Stop all fetchers first
-        logger.info("Stopping {} fetchers...", fetchers.size());
-        fetchers.forEach(DataFetcher::stop);
-
-        // Stop all writers
-        logger.info("Sending poison pills to {} writers...", writers.size());
-        writers.forEach(writer -> dataQueue.add(DataPoint.POISON_PILL));
-
-        // Create a separate thread for shutdown to avoid deadlock
-        Thread shutdownThread = new Thread(() -> {
-            try {
-                threadPoolManager.waitForFetchers();
-                threadPoolManager.waitForWriters();
-                cleanup();
-            } catch (InterruptedException e) {
-                logger.error("Shutdown process was interrupted", e);
-                Thread.currentThread().interrupt();
-            }
-        }, "ShutdownThread");
-
-        shutdownThread.start();
-    }
-
-    private void cleanup() {
-        threadPoolManager.close();
-        logger.info("Graceful shutdown completed");
+        Stage<List<String>, FetchedBatch> fetchStage = new Stage<>("Fetch", readerPoolSize, maxReaders,
+                id -> new DataFetcher(config, id, requestHedger, circuitBreaker, threadPoolManager.getUnitExecutor(),
+                        fetchPlan, transferControl),
+                tagPartitions, fetched);
+        transferControl.attachFetchStage(fetchStage);
+        Stage<TabletBatch, Void> writeStage = new Stage<>("Write", threads.getWriterPoolSize(), maxWriters,
+                id -> new SinkWriter(config, sink, this, id),
+                built, null);
+
+        pipeline
+                .addStage(fetchStage)
+                .addStage(new Stage<>("Decode", threads.getDecodePoolSize(),
+                        id -> new PointDecoder(fetchPlan.getResumePlan()),
+                        fetched, decoded))
+                .addStage(new Stage<>("Validate", threads.getValidatePoolSize(),
+                        id -> new BatchValidator(sink, this, config.getProcessingConfig().getBatch(), id),
+                        decoded, validated))
+                .addStage(new Stage<>("Build", threads.getBuildPoolSize(),
+                        TabletBuilder::new,
+                        validated, built))
+                .addStage(writeStage);
+
+        CompletableFuture<Void> completion = pipeline.start();
+        if (autoscale) {
+            autoscaler = new Autoscaler(threads, fetchStage, writeStage, decoded, built, circuitBreaker,
+                    requestHedger.getRequestLatency(), sink.getWriteLatency());
+            autoscaler.start();
+            completion.whenComplete((ignored, error) -> autoscaler.close());
+        }
+        return completion;
     }
 
     /**
-     * Sends poison pills to all writer threads to signal them to terminate.
+     * Aborts the pipeline after an unrecoverable error. Items still buffered between stages are dropped.
      */
-    public void sendPoisonPills() {
-        logger.info("Sending poison pills to writers...");
-        int writerPoolSize = config.getProcessingConfig().getThreads().getWriterPoolSize();
-        for (int i = 0; i < writerPoolSize; i++) {
-            try {
-                dataQueue.put(DataPoint.POISON_PILL);
-            } catch (InterruptedException e) {
-                logger.error("Interrupted while sending poison pills", e);
-                Thread.currentThread().interrupt();
-            }
-        }
+    public void initiateShutdown(Throwable cause) {
+        pipeline.abort(cause);
     }
-}
\ No newline at end of file
+}
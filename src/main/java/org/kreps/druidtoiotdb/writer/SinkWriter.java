@@ -0,0 +1,179 @@
+package org.kreps.druidtoiotdb.writer;
+
+import org.apache.iotdb.rpc.IoTDBConnectionException;
+import org.kreps.druidtoiotdb.config.AppConfig;
+import org.kreps.druidtoiotdb.metrics.MetricsRegistry;
+import org.kreps.druidtoiotdb.metrics.RunStats;
+import org.kreps.druidtoiotdb.model.DataPoint;
+import org.kreps.druidtoiotdb.model.TabletBatch;
+import org.kreps.druidtoiotdb.model.UnitProgress;
+import org.kreps.druidtoiotdb.pipeline.Emitter;
+import org.kreps.druidtoiotdb.pipeline.StageHandler;
+import org.kreps.druidtoiotdb.sink.Sink;
+import org.kreps.druidtoiotdb.sink.SinkWriteException;
+import org.kreps.druidtoiotdb.utils.FailedWriteLogger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.TimeUnit;
+import org.kreps.druidtoiotdb.utils.RetryUtils;
+import org.kreps.druidtoiotdb.worker.WorkerManager;
+
+/**
+ * Write stage: writes the tablets of each batch to the configured {@link Sink}.
+ */
+public class SinkWriter implements StageHandler<TabletBatch, Void> {
+    private static final Logger logger = LoggerFactory.getLogger(SinkWriter.class);
+    private final String logPrefix;
+
+    private final AppConfig config;
+    private final Sink sink;
+    private final WorkerManager workerManager;
+
+    // Batches whose write has not resolved yet, including those waiting for a scheduled retry
+    private static final int MAX_PENDING_WRITES = 64;
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+    private final BlockingQueue<Runnable> retryTasks = new LinkedBlockingQueue<>();
+
+    public SinkWriter(AppConfig config, Sink sink, WorkerManager workerManager, int writerId) {
+        this.config = config;
+        this.sink = sink;
+        this.workerManager = workerManager;
+        this.logPrefix = String.format("Writer-%d", writerId);
+    }
+
+    @Override
+    public void process(TabletBatch batch, Emitter<Void> out) throws InterruptedException {
+        runReadyRetries();
+        // Stop taking new data until some of the scheduled retries have resolved
+        while (pendingWrites.get() >= MAX_PENDING_WRITES) {
+            Runnable retry = retryTasks.poll(1, TimeUnit.SECONDS);
+            if (retry != null) {
+                retry.run();
+            }
+        }
+
+        writeBatch(batch);
+        logger.debug("{} Wrote {} tablets with {} total points ({} batches awaiting retry)",
+                logPrefix, batch.getTablets().size(), batch.getPointCount(), pendingWrites.get());
+    }
+
+    @Override
+    public void onIdle(Emitter<Void> out) {
+        runReadyRetries();
+        sink.onWriterIdle();
+    }
+
+    @Override
+    public void finish(Emitter<Void> out) throws InterruptedException {
+        awaitPendingWrites();
+        sink.onWriterFinished();
+        logger.info("{} finished", logPrefix);
+    }
+
+    private void runReadyRetries() {
+        Runnable retry;
+        while ((retry = retryTasks.poll()) != null) {
+            retry.run();
+        }
+    }
+
+    private void awaitPendingWrites() throws InterruptedException {
+        while (pendingWrites.get() > 0) {
+            Runnable retry = retryTasks.poll(1, TimeUnit.SECONDS);
+            if (retry != null) {
+                retry.run();
+            }
+        }
+    }
+
+    /**
+     * Writes the batch to the sink. A failed write is retried after a jittered backoff on the shared retry
+     * timer and handed back to this writer through {@link #retryTasks}, so the writer keeps processing new
+     * batches instead of sleeping. When only some tablets failed, only those are retried.
+     */
+    private void writeBatch(TabletBatch batch) {
+        // The tablets not written yet
+        AtomicReference<TabletBatch> remaining = new AtomicReference<>(batch);
+        pendingWrites.incrementAndGet();
+        RetryUtils.executeWithRetryAsync(() -> {
+            TabletBatch attempt = remaining.get();
+            try {
+                sink.write(attempt);
+            } catch (SinkWriteException e) {
+                TabletBatch failed = attempt.subset(e.getFailedDevices());
+                for (String devicePath : attempt.getTablets().keySet()) {
+                    if (!e.getFailedDevices().contains(devicePath)) {
+                        recordWritten(devicePath, attempt.getPoints(devicePath));
+                    }
+                }
+                remaining.set(failed);
+                throw e.getFirstFailure();
+            }
+            for (String devicePath : attempt.getTablets().keySet()) {
+                recordWritten(devicePath, attempt.getPoints(devicePath));
+            }
+            return null;
+        }, config.getRetryConfig(), "Write " + batch.getTablets().size() + " tablets to " + sink.getName(),
+                retryTasks::add)
+                .whenComplete((result, error) -> {
+                    try {
+                        if (error != null) {
+                            TabletBatch failed = remaining.get();
+                            Exception cause = unwrap(error);
+                            for (String devicePath : failed.getTablets().keySet()) {
+                                recordFailed(devicePath, failed.getPoints(devicePath), cause);
+                            }
+                        }
+                    } finally {
+                        pendingWrites.decrementAndGet();
+                    }
+                });
+    }
+
+    private void recordWritten(String devicePath, List<DataPoint> points) {
+        String tag = points.get(0).getOrgTag();
+        MetricsRegistry.get().increment(MetricsRegistry.Counter.TABLETS_WRITTEN);
+        MetricsRegistry.get().add(MetricsRegistry.Counter.POINTS_WRITTEN, points.size());
+        RunStats.get().device(devicePath, tag).addPointsWritten(points.size());
+        RunStats.get().tag(tag).addPointsWritten(points.size());
+        if (sink.isDurableOnWrite()) {
+            UnitProgress.settle(points);
+        }
+    }
+
+    private void recordFailed(String devicePath, List<DataPoint> points, Exception e) {
+        String tag = points.get(0).getOrgTag();
+        RunStats.get().device(devicePath, tag).addPointsFailed(points.size());
+        RunStats.get().tag(tag).addPointsFailed(points.size());
+        handleWriteError(devicePath, points, e);
+    }
+
+    private static Exception unwrap(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof Exception ? (Exception) cause : new Exception(cause);
+    }
+
+    private void handleWriteError(String devicePath, List<DataPoint> points, Exception e) {
+        String errorMessage = e.getMessage();
+        FailedWriteLogger.logFailedWrite(devicePath, points, errorMessage);
+
+        if (e instanceof IoTDBConnectionException ||
+                (e.getCause() != null && e.getCause() instanceof IoTDBConnectionException)) {
+            // Leave the points unsettled so the next run fetches their intervals again
+            handleCriticalError(e);
+        } else {
+            UnitProgress.settle(points);
+        }
+    }
+
+    private void handleCriticalError(Exception e) {
+        logger.error("{} Critical error encountered: {}. Initiating shutdown...", logPrefix, e.getMessage());
+        workerManager.initiateShutdown(e);
+    }
+}
@@ -0,0 +1,151 @@
+package org.kreps.druidtoiotdb.writer;
+
+import org.apache.iotdb.tsfile.file.metadata.enums.CompressionType;
+import org.apache.iotdb.tsfile.file.metadata.enums.TSDataType;
+import org.apache.iotdb.tsfile.file.metadata.enums.TSEncoding;
+import org.apache.iotdb.tsfile.write.record.Tablet;
+import org.apache.iotdb.tsfile.write.schema.MeasurementSchema;
+import org.kreps.druidtoiotdb.metrics.MetricsRegistry;
+import org.kreps.druidtoiotdb.metrics.ProgressReporter;
+import org.kreps.druidtoiotdb.metrics.StageEvents;
+import org.kreps.druidtoiotdb.model.DataPoint;
+import org.kreps.druidtoiotdb.model.TabletBatch;
+import org.kreps.druidtoiotdb.model.UnitProgress;
+import org.kreps.druidtoiotdb.pipeline.Emitter;
+import org.kreps.druidtoiotdb.pipeline.StageHandler;
+import org.kreps.druidtoiotdb.utils.FailedWriteLogger;
+import org.kreps.druidtoiotdb.utils.LogSampler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Build stage: groups a validated batch by device and turns every group into an IoTDB {@link Tablet}.
+ * Devices whose tablet cannot be built are logged as failed writes; the rest of the batch moves on.
+ */
+public class TabletBuilder implements StageHandler<List<DataPoint>, TabletBatch> {
+    private static final Logger logger = LoggerFactory.getLogger(TabletBuilder.class);
+    // Missing values are counted by the progress reporter; the log only shows an example now and then
+    private static final LogSampler MISSING_VALUE_LOG = new LogSampler(1, TimeUnit.MINUTES);
+    private final String logPrefix;
+
+    // Measurement schemas for tablet creation
+    private static final List<MeasurementSchema> MEASUREMENT_SCHEMAS = Arrays.asList(
+            new MeasurementSchema("Qual", TSDataType.TEXT, TSEncoding.PLAIN, CompressionType.SNAPPY),
+            new MeasurementSchema("ColTime", TSDataType.TEXT, TSEncoding.PLAIN, CompressionType.SNAPPY),
+            new MeasurementSchema("std_tag", TSDataType.TEXT, TSEncoding.PLAIN, CompressionType.SNAPPY),
+            new MeasurementSchema("SensorType", TSDataType.TEXT, TSEncoding.PLAIN, CompressionType.SNAPPY),
+            new MeasurementSchema("Val", TSDataType.TEXT, TSEncoding.PLAIN, CompressionType.SNAPPY));
+
+    public TabletBuilder(int builderId) {
+        this.logPrefix = String.format("Builder-%d", builderId);
+    }
+
+    @Override
+    public void process(List<DataPoint> batch, Emitter<TabletBatch> out) throws InterruptedException {
+        long startNanos = System.nanoTime();
+        Map<String, List<DataPoint>> deviceGroups = groupByDevice(batch);
+        Map<String, Tablet> tablets = createTablets(deviceGroups);
+        MetricsRegistry.get().recordNanos(MetricsRegistry.Timer.TABLET_BUILD, System.nanoTime() - startNanos);
+        if (!tablets.isEmpty()) {
+            out.emit(new TabletBatch(tablets, deviceGroups, batch.size()));
+        }
+    }
+
+    private Map<String, List<DataPoint>> groupByDevice(List<DataPoint> batch) {
+        Map<String, List<DataPoint>> deviceGroups = new HashMap<>();
+
+        for (DataPoint point : batch) {
+            String devicePath = point.getTimeseriesPath();
+            deviceGroups.computeIfAbsent(devicePath, k -> new ArrayList<>()).add(point);
+        }
+
+        return deviceGroups;
+    }
+
+    private Map<String, Tablet> createTablets(Map<String, List<DataPoint>> deviceGroups) {
+        Map<String, Tablet> tablets = new HashMap<>();
+        int failed = 0;
+
+        for (Map.Entry<String, List<DataPoint>> entry : deviceGroups.entrySet()) {
+            String devicePath = entry.getKey();
+            List<DataPoint> points = entry.getValue();
+
+            Object event = StageEvents.get().beginBuild();
+            try {
+                Tablet tablet = createTablet(devicePath, points);
+                if (tablet.rowSize > 0) { // Only add if tablet has data
+                    tablets.put(devicePath, tablet);
+                } else {
+                    logger.warn("{} Skipping empty tablet for device {}", logPrefix, devicePath);
+                }
+            } catch (Exception e) {
+                failed++;
+                logger.error("{} Failed to create tablet for device {}: {}", logPrefix, devicePath, e.getMessage());
+                FailedWriteLogger.logFailedWrite(devicePath, points, e.getMessage());
+                UnitProgress.settle(points);
+            } finally {
+                StageEvents.get().endBuild(event, points.get(0).getOrgTag(), devicePath, points.size());
+            }
+        }
+
+        if (failed > 0) {
+            logger.error("{} Failed to create {} tablets", logPrefix, failed);
+        }
+        return tablets;
+    }
+
+    private Tablet createTablet(String devicePath, List<DataPoint> points) throws Exception {
+        Tablet tablet = new Tablet(devicePath, MEASUREMENT_SCHEMAS, points.size());
+        List<Exception> errors = new ArrayList<>();
+        int missing = 0;
+
+        for (int i = 0; i < points.size(); i++) {
+            DataPoint point = points.get(i);
+            tablet.addTimestamp(i, point.getTimestamp());
+
+            for (MeasurementSchema schema : MEASUREMENT_SCHEMAS) {
+                String measurementName = schema.getMeasurementId();
+                Object value = point.getMeasurements().get(measurementName);
+
+                if (value != null) {
+                    try {
+                        tablet.addValue(measurementName, i, value);
+                    } catch (Exception e) {
+                        String error = String.format("Failed to add value for measurement %s: %s",
+                                measurementName, e.getMessage());
+                        errors.add(new RuntimeException(error, e));
+                    }
+                } else {
+                    missing++;
+                    logger.debug("{} missing value for measurement {} in row {} for device {}",
+                            logPrefix, measurementName, i, devicePath);
+                }
+            }
+        }
+
+        if (missing > 0) {
+            ProgressReporter.get().addMissingValues(missing);
+            long suppressed = MISSING_VALUE_LOG.sample();
+            if (suppressed >= 0) {
+                logger.warn("{} {} missing values in {} rows for device {} ({} similar warnings suppressed)",
+                        logPrefix, missing, points.size(), devicePath, suppressed);
+            }
+        }
+
+        if (!errors.isEmpty()) {
+            Exception firstError = errors.get(0);
+            logger.error("{} Failed to add {} values to tablet", logPrefix, errors.size());
+            throw new RuntimeException("Failed to create tablet values", firstError);
+        }
+
+        tablet.rowSize = points.size();
+        return tablet;
+    }
+}
@@ -0,0 +1,19 @@
+package org.kreps.druidtoiotdb.metrics.jfr;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+@Name("org.kreps.druidtoiotdb.Build")
+@Label("Tablet Build")
+@Threshold("1 ms")
+class BuildEvent extends StageEvent {
+    @Label("Tag")
+    String tag;
+
+    @Label("Device")
+    String device;
+
+    @Label("Points")
+    int points;
+}
@@ -0,0 +1,22 @@
+package org.kreps.druidtoiotdb.metrics.jfr;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+@Name("org.kreps.druidtoiotdb.Decode")
+@Label("Decode")
+@Threshold("1 ms")
+class DecodeEvent extends StageEvent {
+    @Label("Tag")
+    String tag;
+
+    @Label("Interval Start")
+    String intervalStart;
+
+    @Label("Interval End")
+    String intervalEnd;
+
+    @Label("Points")
+    int points;
+}
@@ -0,0 +1,25 @@
+package org.kreps.druidtoiotdb.metrics.jfr;
+
+import jdk.jfr.DataAmount;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.kreps.druidtoiotdb.Fetch")
+@Label("Druid Fetch")
+class FetchEvent extends StageEvent {
+    @Label("Tag")
+    String tag;
+
+    @Label("Interval Start")
+    String intervalStart;
+
+    @Label("Interval End")
+    String intervalEnd;
+
+    @Label("Points")
+    int points;
+
+    @Label("Bytes")
+    @DataAmount
+    long bytes;
+}
@@ -0,0 +1,125 @@
+package org.kreps.druidtoiotdb.metrics.jfr;
+
+import org.kreps.druidtoiotdb.metrics.StageEvents;
+
+import java.time.LocalDateTime;
+
+/**
+ * {@link StageEvents} backed by JFR events. When an event type is not enabled in the running recording,
+ * {@code begin} returns {@code null} and nothing else is done; the event object does not escape and is
+ * normally removed by the JIT.
+ */
+public class JfrStageEvents extends StageEvents {
+
+    private static <E extends StageEvent> E begin(E event) {
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    private static boolean end(StageEvent event) {
+        event.end();
+        return event.shouldCommit();
+    }
+
+    @Override
+    public Object beginFetch() {
+        return begin(new FetchEvent());
+    }
+
+    @Override
+    public void endFetch(Object token, String tag, LocalDateTime start, LocalDateTime end, int points,
+            long bytes) {
+        if (token == null) {
+            return;
+        }
+        FetchEvent event = (FetchEvent) token;
+        if (end(event)) {
+            event.tag = tag;
+            event.intervalStart = start.toString();
+            event.intervalEnd = end.toString();
+            event.points = points;
+            event.bytes = bytes;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginDecode() {
+        return begin(new DecodeEvent());
+    }
+
+    @Override
+    public void endDecode(Object token, String tag, LocalDateTime start, LocalDateTime end, int points) {
+        if (token == null) {
+            return;
+        }
+        DecodeEvent event = (DecodeEvent) token;
+        if (end(event)) {
+            event.tag = tag;
+            event.intervalStart = start.toString();
+            event.intervalEnd = end.toString();
+            event.points = points;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginQueueWait() {
+        return begin(new QueueWaitEvent());
+    }
+
+    @Override
+    public void endQueueWait(Object token, String buffer, int capacity) {
+        if (token == null) {
+            return;
+        }
+        QueueWaitEvent event = (QueueWaitEvent) token;
+        if (end(event)) {
+            event.buffer = buffer;
+            event.capacity = capacity;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginBuild() {
+        return begin(new BuildEvent());
+    }
+
+    @Override
+    public void endBuild(Object token, String tag, String device, int points) {
+        if (token == null) {
+            return;
+        }
+        BuildEvent event = (BuildEvent) token;
+        if (end(event)) {
+            event.tag = tag;
+            event.device = device;
+            event.points = points;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginWrite() {
+        return begin(new WriteEvent());
+    }
+
+    @Override
+    public void endWrite(Object token, String tag, String device, int points, boolean success) {
+        if (token == null) {
+            return;
+        }
+        WriteEvent event = (WriteEvent) token;
+        if (end(event)) {
+            event.tag = tag;
+            event.device = device;
+            event.points = points;
+            event.success = success;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.kreps.druidtoiotdb.metrics.jfr;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Threshold;
+
+@Name("org.kreps.druidtoiotdb.QueueWait")
+@Label("Stage Buffer Full")
+@Threshold("1 ms")
+class QueueWaitEvent extends StageEvent {
+    @Label("Buffer")
+    String buffer;
+
+    @Label("Capacity")
+    int capacity;
+}
@@ -0,0 +1,15 @@
+package org.kreps.druidtoiotdb.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.StackTrace;
+
+/**
+ * Common base of the pipeline stage events. Stack traces are left out; the tag or device identifies the
+ * work and the duration is the event's own. Events that occur per batch or per device only record
+ * occurrences above a small threshold by default; a custom {@code .jfc} can lower it.
+ */
+@Category({"Druid to IoTDB", "Pipeline"})
+@StackTrace(false)
+abstract class StageEvent extends Event {
+}
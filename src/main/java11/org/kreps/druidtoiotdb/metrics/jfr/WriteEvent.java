@@ -0,0 +1,20 @@
+package org.kreps.druidtoiotdb.metrics.jfr;
+
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("org.kreps.druidtoiotdb.Write")
+@Label("IoTDB Insert")
+class WriteEvent extends StageEvent {
+    @Label("Tag")
+    String tag;
+
+    @Label("Device")
+    String device;
+
+    @Label("Points")
+    int points;
+
+    @Label("Success")
+    boolean success;
+}